@@ -0,0 +1,59 @@
+package application;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai de {@link ServiceBanquaire#crediterDebiter(String, float)}
+ * sous contention : plusieurs threads crditent des comptes tirs au hasard
+ * parmi un nombre de comptes variable. Avec un seul compte, tous les threads
+ * entrent en conflit ; avec beaucoup de comptes, presque aucun.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class BancServiceBanquaire {
+
+  @Param({ "1", "64", "100000" })
+  public int comptes;
+
+  private ServiceBanquaire service;
+  private String[] noms;
+
+  @Setup
+  public void preparer() {
+    service = new ServiceBanquaire(false);
+    noms = new String[comptes];
+    for (int i = 0; i < comptes; i++) {
+      noms[i] = "C" + i;
+      service.ouvrirCompte(noms[i], 0.0f);
+    }
+  }
+
+  @Benchmark
+  public float crediterDebiter() {
+    String c = noms[ThreadLocalRandom.current().nextInt(noms.length)];
+    return service.crediterDebiter(c, 1.0f);
+  }
+
+}
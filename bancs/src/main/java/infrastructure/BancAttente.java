@@ -0,0 +1,81 @@
+package infrastructure;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai de la remise d'un message  un calculateur synchrone bloqu
+ * dans {@link Calculateur#attendre()} : dure d'un aller-retour avec un
+ * calculateur qui renvoie chaque message reu, en temps rel et avec une
+ * latence rseau nulle. L'aller-retour comprend deux planifications, un
+ * rveil du calculateur synchrone, et une livraison asynchrone.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BancAttente {
+
+  /**
+   * Calculateur synchrone renvoyant chaque message reu  son metteur.
+   */
+  static class Echo extends Calculateur {
+
+    Echo(String n) {
+      super(n);
+    }
+
+    @Override
+    public void programme() throws InterruptedException {
+      while (true) {
+        Message m = attendre();
+        envoyer(m.getEmetteur(), new Message(m.getContenu()));
+      }
+    }
+  }
+
+  private BancLivraison.Compteur emetteur;
+  private Echo echo;
+
+  @Setup(Level.Trial)
+  public void preparer() {
+    Trace.setNiveau(Niveau.AUCUN);
+    Calculateur.setModeleReseau(new ModeleSphere(0.0f, Gigues.aucune()));
+    emetteur = new BancLivraison.Compteur("C");
+    emetteur.demarrer();
+    echo = new Echo("E");
+    echo.demarrer();
+  }
+
+  @TearDown(Level.Trial)
+  public void terminer() {
+    echo.interrompre();
+  }
+
+  @Benchmark
+  public void allerRetour() {
+    long cible = emetteur.recus.get() + 1;
+    emetteur.envoyer("E", new Message("x"));
+    while (emetteur.recus.get() < cible) {
+      Thread.onSpinWait();
+    }
+  }
+
+}
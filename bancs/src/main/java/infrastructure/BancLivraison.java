@@ -0,0 +1,145 @@
+package infrastructure;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai du dbit de livraison des messages, de
+ * {@link Calculateur#envoyer(String, Message)}  la rception par le
+ * destinataire, en temps rel et avec une latence rseau nulle, selon le
+ * motif de communication : un metteur vers un destinataire (1-1), n
+ * metteurs vers un destinataire (n-1), chacun envoyant depuis son propre
+ * thread pour que les envois soient concurrents, ou diffusion  un groupe
+ * de n membres. Les affichages des calculateurs sont supprims pendant les
+ * mesures.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BancLivraison {
+
+  private static final int MESSAGES = 1000; // par invocation
+
+  /**
+   * Calculateur asynchrone comptant les messages reus.
+   */
+  static class Compteur extends Calculateur {
+
+    final AtomicLong recus = new AtomicLong();
+
+    Compteur(String n) {
+      super(n, true);
+    }
+
+    @Override
+    public void programme() {
+    }
+
+    @Override
+    public void recevoir(Message m) {
+      recus.incrementAndGet();
+    }
+  }
+
+  @Param({ "1-1", "n-1", "diffusion" })
+  public String motif;
+
+  @Param({ "16" })
+  public int n;
+
+  private Compteur[] noeuds;
+  private Compteur destinataire;
+  private ExecutorService producteurs; // un thread par metteur (n-1)
+  private Runnable[] envois;
+
+  @Setup(Level.Trial)
+  public void preparer() throws InterruptedException {
+    Trace.setNiveau(Niveau.AUCUN);
+    Calculateur.setModeleReseau(new ModeleSphere(0.0f, Gigues.aucune()));
+    noeuds = new Compteur[n];
+    new Groupe("G");
+    for (int i = 0; i < n; i++) {
+      noeuds[i] = new Compteur("N" + i);
+      Groupe.toGroupe("G").ajouter(noeuds[i].getNom());
+      noeuds[i].demarrer();
+    }
+    destinataire = new Compteur("D");
+    destinataire.demarrer();
+    producteurs = Executors.newFixedThreadPool(n);
+    envois = new Runnable[n];
+    for (int i = 0; i < n; i++) {
+      final Compteur e = noeuds[i];
+      final int k = MESSAGES / n + (i < MESSAGES % n ? 1 : 0);
+      envois[i] = new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < k; j++) {
+            e.envoyer("D", new Message("x"));
+          }
+        }
+      };
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void terminer() {
+    producteurs.shutdownNow();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public void livrer() {
+    if ("diffusion".equals(motif)) {
+      long[] cibles = new long[n];
+      for (int i = 0; i < n; i++) {
+        cibles[i] = noeuds[i].recus.get() + MESSAGES / n;
+      }
+      for (int i = 0; i < MESSAGES / n; i++) {
+        noeuds[0].diffuser("G", new Message("x"));
+      }
+      for (int i = 0; i < n; i++) {
+        while (noeuds[i].recus.get() < cibles[i]) {
+          Thread.onSpinWait();
+        }
+      }
+    } else {
+      long cible = destinataire.recus.get() + MESSAGES;
+      if ("n-1".equals(motif)) {
+        for (int i = 0; i < n; i++) {
+          producteurs.execute(envois[i]);
+        }
+      } else {
+        for (int i = 0; i < MESSAGES; i++) {
+          noeuds[0].envoyer("D", new Message("x"));
+        }
+      }
+      while (destinataire.recus.get() < cible) {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+}
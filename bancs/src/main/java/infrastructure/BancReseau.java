@@ -0,0 +1,69 @@
+package infrastructure;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai du calcul des latences du {@link Reseau} : distance entre deux
+ * positions, latence de base, et tirage de la latence d'un envoi. Les
+ * positions sont parcourues par paires, pour que le rsultat ne soit pas
+ * connu du compilateur.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BancReseau {
+
+  private static final int POSITIONS = 1024; // puissance de 2
+
+  private Position[] positions;
+  private Random aleatoire;
+  private int i;
+
+  @Setup
+  public void preparer() {
+    aleatoire = new Random(42);
+    positions = new Position[POSITIONS];
+    for (int j = 0; j < POSITIONS; j++) {
+      positions[j] = new Position(aleatoire);
+    }
+  }
+
+  @Benchmark
+  public float distance() {
+    i = (i + 1) & (POSITIONS - 1);
+    return positions[i].distance(positions[(i * 7) & (POSITIONS - 1)]);
+  }
+
+  @Benchmark
+  public float latenceBase() {
+    i = (i + 1) & (POSITIONS - 1);
+    return Reseau.latenceBase(positions[i], positions[(i * 7)
+            & (POSITIONS - 1)]);
+  }
+
+  @Benchmark
+  public long latence() {
+    i = (i + 1) & (POSITIONS - 1);
+    return Reseau.latence(positions[i], positions[(i * 7) & (POSITIONS - 1)],
+            aleatoire);
+  }
+
+}
@@ -0,0 +1,92 @@
+package infrastructure;
+
+import application.Requete;
+import application.RequeteGroupee;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai de la {@link Serialisation} des messages : encodage, et copie
+ * par dcodage d'une reprsentation, selon le type du contenu.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BancSerialisation {
+
+  /**
+   * Contenu sans codec, srialis par la srialisation Java.
+   */
+  static class Java implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String compte;
+    final float montant;
+
+    Java(String c, float m) {
+      compte = c;
+      montant = m;
+    }
+  }
+
+  @Param({ "chaine", "requete", "lot", "java" })
+  public String contenu;
+
+  private Message message;
+  private Serialisation serialisation;
+
+  @Setup
+  public void preparer() {
+    Serializable c;
+    if ("chaine".equals(contenu)) {
+      c = "Durand";
+    } else if ("requete".equals(contenu)) {
+      c = new Requete("Durand", 10.0f);
+    } else if ("lot".equals(contenu)) {
+      List<Requete> l = new ArrayList<Requete>();
+      for (int i = 0; i < 16; i++) {
+        l.add(new Requete("Durand", i));
+      }
+      c = new RequeteGroupee(l);
+    } else {
+      c = new Java("Durand", 10.0f);
+    }
+    message = new Message(c);
+    message.setEmetteur("C1");
+    message.setDestinataire("S1");
+    serialisation = new Serialisation(message);
+  }
+
+  @Benchmark
+  public Serialisation encoder() {
+    return new Serialisation(message);
+  }
+
+  @Benchmark
+  public Object copier() {
+    return serialisation.copie();
+  }
+
+}
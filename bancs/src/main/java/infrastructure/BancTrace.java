@@ -0,0 +1,90 @@
+package infrastructure;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Formatter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai des affichages des calculateurs, par plusieurs threads, vers
+ * /dev/null :
+ * <ul>
+ * <li>afficher : dpt dans la {@link Trace} asynchrone ;
+ * <li>desactive : affichage d'un niveau dsactiv, texte non construit ;
+ * <li>println : affichage synchrone sur un PrintStream, avec formatage de la
+ * date  chaque ligne, comme avant l'introduction de la trace.
+ * </ul>
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class BancTrace {
+
+  private static final File NUL = new File("/dev/null");
+
+  private Calculateur calculateur;
+  private Message message;
+  private PrintStream sortie;
+
+  @Setup
+  public void preparer() throws FileNotFoundException {
+    Trace.setFichier(NUL);
+    Trace.setNiveau(Niveau.INFO);
+    calculateur = new BancLivraison.Compteur("T");
+    message = new Message("Durand");
+    message.setEmetteur("C1");
+    message.setDestinataire("S1");
+    sortie = new PrintStream(new FileOutputStream(NUL));
+  }
+
+  @TearDown
+  public void terminer() {
+    Trace.vider();
+    sortie.close();
+  }
+
+  @Benchmark
+  public void afficher() {
+    calculateur.afficher("envoi     " + message + " (latence=12ms)");
+  }
+
+  @Benchmark
+  public void desactive() {
+    if (Trace.estActif(Niveau.TRACE)) {
+      calculateur.afficher(Niveau.TRACE, "envoi     " + message
+              + " (latence=12ms)");
+    }
+  }
+
+  @Benchmark
+  public void println() {
+    long d = Calculateur.getOrdonnanceur().maintenant();
+    String t = new Formatter().format("%02d.%03d", d / 1000, d % 1000)
+            .toString();
+    sortie.println(t + " - " + calculateur + " : " + "envoi     " + message
+            + " (latence=12ms)");
+  }
+
+}
@@ -0,0 +1,228 @@
+package application;
+
+import infrastructure.Codec;
+import infrastructure.Codecs;
+import infrastructure.Entree;
+import infrastructure.Partageable;
+import infrastructure.Simulation;
+import infrastructure.Sortie;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Anneau de hachage cohrent rpartissant les comptes entre les serveurs
+ * d'une partition (voir {@link ServeurPartition}). Chaque serveur occupe
+ * {@link #POINTS} points de l'anneau ; un compte appartient au serveur du
+ * premier point qui suit le hachage de son nom. L'ajout d'un serveur ne
+ * dplace ainsi que les comptes qu'il reoit, soit en moyenne 1/n des
+ * comptes.
+ * <p>
+ * Un anneau est immuable, et peut donc tre livr sans copie. Il porte une
+ * poque, incrmente  chaque ajout de serveur. Les anneaux sont publis
+ * sous le nom de leur partition, dans l'annuaire de la {@link Simulation}
+ * courante, consult par les clients pour router leurs requtes.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Anneau implements Partageable {
+
+  private static final long serialVersionUID = 1L;
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class CodecAnneau implements Codec<Anneau> {
+
+    @Override
+    public void encoder(Anneau a, Sortie s) throws IOException {
+      s.ecrireEntier(a.epoque);
+      s.ecrireEntier(a.serveurs.length);
+      for (String n : a.serveurs) {
+        s.ecrireNom(n);
+      }
+    }
+
+    @Override
+    public Anneau decoder(Entree e) throws IOException {
+      int ep = e.lireEntier();
+      String[] s = new String[e.lireEntier()];
+      for (int i = 0; i < s.length; i++) {
+        s[i] = e.lireNom();
+      }
+      return new Anneau(ep, s);
+    }
+  }
+
+  static {
+    Codecs.enregistrer(Anneau.class, new CodecAnneau());
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  static final int POINTS = 128; // par serveur
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final int epoque;
+  private final String[] serveurs;
+
+  // points de l'anneau, tris, et indice du serveur de chaque point
+  private final int[] positions;
+  private final int[] proprietaires;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Construit l'anneau initial d'une partition, d'poque 1.
+   *
+   * @param s
+   *          noms des serveurs de la partition
+   */
+  public Anneau(String... s) {
+    this(1, s.clone());
+  }
+
+  private Anneau(int e, String[] s) {
+    if (s.length == 0) {
+      throw new IllegalArgumentException("s");
+    }
+    epoque = e;
+    serveurs = s;
+
+    // trier les points par position, puis par serveur en cas de collision
+    long[] t = new long[s.length * POINTS];
+    for (int i = 0; i < s.length; i++) {
+      for (int j = 0; j < POINTS; j++) {
+        long h = hachage(s[i] + "#" + j);
+        t[i * POINTS + j] = (h << 32) | i;
+      }
+    }
+    Arrays.sort(t);
+    positions = new int[t.length];
+    proprietaires = new int[t.length];
+    for (int i = 0; i < t.length; i++) {
+      positions[i] = (int) (t[i] >> 32);
+      proprietaires[i] = (int) t[i];
+    }
+  }
+
+  public int getEpoque() {
+    return epoque;
+  }
+
+  public List<String> getServeurs() {
+    return Collections.unmodifiableList(Arrays.asList(serveurs));
+  }
+
+  @Override
+  public String toString() {
+    return "Anneau [epoque=" + epoque + ", serveurs="
+            + Arrays.toString(serveurs) + "]";
+  }
+
+  //
+  // ANNUAIRE DES PARTITIONS
+  //
+  /**
+   * Publie l'anneau d'une partition dans la simulation courante, s'il est
+   * plus rcent que l'anneau dj publi.
+   *
+   * @param n
+   *          nom de la partition
+   * @param a
+   *          anneau  publier
+   */
+  public static void publier(String n, Anneau a) {
+    Map<String, Anneau> m = Simulation.courante().getAnnuaire(Anneau.class);
+    synchronized (m) {
+      Anneau p = m.get(n);
+      if (p == null || p.epoque < a.epoque) {
+        m.put(n, a);
+      }
+    }
+  }
+
+  /**
+   * Retourne l'anneau publi d'une partition dans la simulation courante.
+   *
+   * @param n
+   *          nom de la partition
+   * @return le dernier anneau publi, null si n n'est pas une partition
+   */
+  public static Anneau consulter(String n) {
+    return Simulation.courante().getAnnuaire(Anneau.class).get(n);
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Retourne le serveur propritaire du compte spcifi.
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @return le nom du serveur auquel appartient le compte
+   */
+  public String proprietaire(String c) {
+    int i = Arrays.binarySearch(positions, hachage(c));
+    if (i < 0) {
+      i = -i - 1;
+    }
+    if (i == positions.length) {
+      i = 0;
+    }
+    return serveurs[proprietaires[i]];
+  }
+
+  /**
+   * Indique si le serveur spcifi fait partie de cet anneau.
+   *
+   * @param s
+   *          nom du serveur
+   * @return vrai si le serveur fait partie de l'anneau
+   */
+  public boolean contient(String s) {
+    return Arrays.asList(serveurs).contains(s);
+  }
+
+  /**
+   * Retourne l'anneau de l'poque suivante, obtenu en ajoutant un serveur 
+   * cet anneau.
+   *
+   * @param s
+   *          nom du serveur  ajouter
+   * @return le nouvel anneau
+   * @throws IllegalArgumentException
+   *           si le serveur fait dj partie de l'anneau
+   */
+  public Anneau ajouter(String s) {
+    if (contient(s)) {
+      throw new IllegalArgumentException("s=" + s);
+    }
+    String[] t = Arrays.copyOf(serveurs, serveurs.length + 1);
+    t[serveurs.length] = s;
+    return new Anneau(epoque + 1, t);
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private static int hachage(String c) {
+    // finalisation de MurmurHash3 : des noms voisins sont bien disperss
+    int h = c.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    return h ^ (h >>> 16);
+  }
+
+}
@@ -0,0 +1,67 @@
+package application;
+
+import infrastructure.Codec;
+import infrastructure.Codecs;
+import infrastructure.Entree;
+import infrastructure.Partageable;
+import infrastructure.Sortie;
+
+import java.io.IOException;
+
+/**
+ * Avancement chang entre le serveur primaire d'un groupe de
+ * {@link ServeurReplique}s et ses serveurs secondaires. Envoy par un
+ * secondaire, il acquitte les {@link MiseAJour}s appliques jusqu' sa
+ * version ; envoy par le primaire, c'est un signe de vie, qui porte sa
+ * version, et auquel le secondaire rpond par son avancement. Un avancement
+ * est immuable, et peut donc tre livr sans copie.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class Avancement implements Partageable {
+
+  private static final long serialVersionUID = 1L;
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class CodecAvancement implements Codec<Avancement> {
+
+    @Override
+    public void encoder(Avancement a, Sortie s) throws IOException {
+      s.ecrireLong(a.version);
+    }
+
+    @Override
+    public Avancement decoder(Entree e) throws IOException {
+      return new Avancement(e.lireLong());
+    }
+  }
+
+  static {
+    Codecs.enregistrer(Avancement.class, new CodecAvancement());
+  }
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final long version;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  public Avancement(long v) {
+    this.version = v;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  @Override
+  public String toString() {
+    return "Avancement [version=" + version + "]";
+  }
+
+}
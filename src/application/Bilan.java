@@ -0,0 +1,101 @@
+package application;
+
+import infrastructure.Histogramme;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bilan de la phase de mesure d'une {@link Charge} : nombre de requtes
+ * mises, russies et choues, dbit, et histogramme des latences. Une
+ * requte est mesure si sa date d'arrive (boucle ouverte) ou d'mission
+ * (boucle ferme) tombe dans la phase de mesure ; sa rponse peut arriver
+ * aprs la fin de la phase. Une requte choue si sa rponse porte une
+ * exception, par exemple pour un dbit non approvisionn.
+ * <p>
+ * Le bilan est aliment sans verrou par les threads de rception de tous
+ * les clients de la charge.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Bilan {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Charge charge;
+  private final LongAdder emises;
+  private final LongAdder reussies;
+  private final LongAdder echecs;
+  private final Histogramme latences;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  Bilan(Charge c) {
+    charge = c;
+    emises = new LongAdder();
+    reussies = new LongAdder();
+    echecs = new LongAdder();
+    latences = new Histogramme();
+  }
+
+  public long getEmises() {
+    return emises.sum();
+  }
+
+  public long getReussies() {
+    return reussies.sum();
+  }
+
+  public long getEchecs() {
+    return echecs.sum();
+  }
+
+  /**
+   * Retourne l'histogramme des latences des requtes mesures, russies ou
+   * non.
+   *
+   * @return l'histogramme des latences, en millisecondes
+   */
+  public Histogramme getLatences() {
+    return latences;
+  }
+
+  /**
+   * Retourne le dbit de la phase de mesure : nombre de requtes mesures
+   * ayant reu une rponse, rapport  la dure de la phase.
+   *
+   * @return le dbit, en requtes par seconde
+   */
+  public double getDebit() {
+    return latences.getNombre() * 1000.0 / charge.getMesure();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s%ndebit : %.1f requetes/s (%d emises, %d "
+            + "reussies, %d echecs)%nlatence (ms) : moyenne=%.1f, p50=%d, "
+            + "p99=%d, p99.9=%d, max=%d", charge, getDebit(), getEmises(),
+            getReussies(), getEchecs(), latences.getMoyenne(), latences
+                    .getCentile(50.0), latences.getCentile(99.0), latences
+                    .getCentile(99.9), latences.getMax());
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  void compterEmission() {
+    emises.increment();
+  }
+
+  void compterReponse(Reponse rp, long l) {
+    if (rp.getException() == null) {
+      reussies.increment();
+    } else {
+      echecs.increment();
+    }
+    latences.enregistrer(l);
+  }
+
+}
@@ -0,0 +1,446 @@
+package application;
+
+import infrastructure.Calculateur;
+import infrastructure.Ordonnanceur;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Description et excution d'une charge de travail applique  un serveur ou
+ *  un groupe de serveurs bancaires : n clients ({@link Injecteur}s) y
+ * soumettent des consultations, crdits et dbits sur un grand ensemble de
+ * comptes, pendant une phase d'chauffement puis une phase de mesure. Le
+ * {@link Bilan} de la phase de mesure donne le dbit obtenu et les centiles
+ * de la latence des requtes.
+ * <p>
+ * La charge peut tre :
+ * <ul>
+ * <li>en boucle ouverte : les requtes arrivent selon un processus de
+ * Poisson de dbit fix, quel que soit le temps de rponse des serveurs ; la
+ * latence d'une requte est compte  partir de sa date d'arrive prvue,
+ * mme si le client l'met en retard. C'est le mode qui rvle le point de
+ * saturation des serveurs ;
+ * <li>en boucle ferme : chaque client maintient un nombre fix de requtes
+ * en cours, et en soumet une nouvelle ds qu'il reoit une rponse. Le dbit
+ * s'ajuste alors au temps de rponse des serveurs.
+ * </ul>
+ * Les comptes viss sont tirs selon une loi uniforme, une loi de Zipf (le
+ * compte de rang k est vis avec une probabilit proportionnelle 
+ * 1/k^s), ou une loi  point chaud (une fraction des requtes vise une
+ * petite fraction des comptes). Les tirages sont faits dans le flux
+ * alatoire de chaque client, ce qui prserve la reproductibilit des
+ * simulations.
+ * <p>
+ * Les dures et les dates sont en millisecondes de la simulation.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Charge {
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Lois de tirage des comptes viss par les requtes.
+   */
+  private enum Loi {
+    UNIFORME, ZIPF, POINT_CHAUD
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final float SOLDE = 1000000.0f;
+  private static final int MONTANT_MAX = 100;
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final int clients;
+  private final int comptes;
+  private double debit; // requtes/s, 0 en boucle ferme
+  private int enCours; // par client, en boucle ferme
+  private double consultations;
+  private double credits;
+  private Loi loi;
+  private double exposant; // Zipf
+  private double fractionComptes; // point chaud
+  private double fractionRequetes; // point chaud
+  private long echauffement;
+  private long mesure;
+
+  // tirage de Zipf par rejet-inversion (W. Hrmann, G. Derflinger, 1996)
+  private double hX1;
+  private double hN;
+  private double seuil;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre une charge de n clients, sur un ensemble de comptes donn. Par
+   * dfaut, la charge est en boucle ferme avec une requte en cours par
+   * client, compose de 50% de consultations, 25% de crdits et 25% de
+   * dbits, sur des comptes tirs uniformment, avec 1 s d'chauffement et
+   * 10 s de mesure.
+   *
+   * @param n
+   *          nombre de clients
+   * @param c
+   *          nombre de comptes
+   */
+  public Charge(int n, int c) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("n=" + n);
+    }
+    if (c <= 0) {
+      throw new IllegalArgumentException("c=" + c);
+    }
+    clients = n;
+    comptes = c;
+    setBoucleFermee(1);
+    setMelange(0.5, 0.25, 0.25);
+    setUniforme();
+    setPhases(1000, 10000);
+  }
+
+  public int getClients() {
+    return clients;
+  }
+
+  public int getComptes() {
+    return comptes;
+  }
+
+  public long getEchauffement() {
+    return echauffement;
+  }
+
+  public long getMesure() {
+    return mesure;
+  }
+
+  /**
+   * Indique si la charge est en boucle ouverte.
+   *
+   * @return vrai en boucle ouverte, faux en boucle ferme
+   */
+  public boolean estOuverte() {
+    return debit > 0.0;
+  }
+
+  /**
+   * Retourne le dbit d'arrive des requtes d'un client, en boucle
+   * ouverte.
+   *
+   * @return le dbit d'un client, en requtes par milliseconde
+   */
+  double getDebitClient() {
+    return debit / clients / 1000.0;
+  }
+
+  /**
+   * Retourne le nombre de requtes en cours de chaque client.
+   *
+   * @return le nombre de requtes en cours, illimit en boucle ouverte
+   */
+  int getEnCours() {
+    return estOuverte() ? Integer.MAX_VALUE : enCours;
+  }
+
+  /**
+   * Met la charge en boucle ouverte.
+   *
+   * @param d
+   *          dbit d'arrive total des requtes, en requtes par seconde,
+   *          rparti galement entre les clients
+   */
+  public void setBoucleOuverte(double d) {
+    if (d <= 0.0) {
+      throw new IllegalArgumentException("d=" + d);
+    }
+    debit = d;
+  }
+
+  /**
+   * Met la charge en boucle ferme.
+   *
+   * @param e
+   *          nombre de requtes en cours de chaque client
+   */
+  public void setBoucleFermee(int e) {
+    if (e <= 0) {
+      throw new IllegalArgumentException("e=" + e);
+    }
+    debit = 0.0;
+    enCours = e;
+  }
+
+  /**
+   * Fixe la composition de la charge. Les proportions sont normalises.
+   *
+   * @param co
+   *          proportion de consultations
+   * @param cr
+   *          proportion de crdits
+   * @param de
+   *          proportion de dbits
+   */
+  public void setMelange(double co, double cr, double de) {
+    double t = co + cr + de;
+    if (co < 0.0 || cr < 0.0 || de < 0.0 || t <= 0.0) {
+      throw new IllegalArgumentException("co=" + co + ", cr=" + cr + ", de="
+              + de);
+    }
+    consultations = co / t;
+    credits = cr / t;
+  }
+
+  /**
+   * Tire les comptes selon une loi uniforme.
+   */
+  public void setUniforme() {
+    loi = Loi.UNIFORME;
+  }
+
+  /**
+   * Tire les comptes selon une loi de Zipf : le compte de rang k ( partir
+   * de 1) est vis avec une probabilit proportionnelle  1/k^s.
+   *
+   * @param s
+   *          exposant de la loi, strictement positif (typiquement 0.99)
+   */
+  public void setZipf(double s) {
+    if (s <= 0.0) {
+      throw new IllegalArgumentException("s=" + s);
+    }
+    loi = Loi.ZIPF;
+    exposant = s;
+    hX1 = hIntegrale(1.5) - 1.0;
+    hN = hIntegrale(comptes + 0.5);
+    seuil = 2.0 - hIntegraleInverse(hIntegrale(2.5) - h(2.0));
+  }
+
+  /**
+   * Tire les comptes selon une loi  point chaud : une fraction des
+   * requtes vise uniformment une fraction des comptes, les autres
+   * requtes visent uniformment les autres comptes.
+   *
+   * @param c
+   *          fraction des comptes formant le point chaud, entre 0 et 1
+   * @param r
+   *          fraction des requtes visant le point chaud, entre 0 et 1
+   */
+  public void setPointChaud(double c, double r) {
+    if (c <= 0.0 || c >= 1.0 || r < 0.0 || r > 1.0
+            || (int) (c * comptes) == 0) {
+      throw new IllegalArgumentException("c=" + c + ", r=" + r);
+    }
+    loi = Loi.POINT_CHAUD;
+    fractionComptes = c;
+    fractionRequetes = r;
+  }
+
+  /**
+   * Fixe la dure des phases de la charge.
+   *
+   * @param e
+   *          dure de la phase d'chauffement, dont les requtes ne sont pas
+   *          mesures
+   * @param m
+   *          dure de la phase de mesure, strictement positive
+   */
+  public void setPhases(long e, long m) {
+    if (e < 0 || m <= 0) {
+      throw new IllegalArgumentException("e=" + e + ", m=" + m);
+    }
+    echauffement = e;
+    mesure = m;
+  }
+
+  @Override
+  public String toString() {
+    String l;
+    switch (loi) {
+    case ZIPF:
+      l = "zipf(" + exposant + ")";
+      break;
+    case POINT_CHAUD:
+      l = "point chaud(" + fractionComptes + ", " + fractionRequetes + ")";
+      break;
+    default:
+      l = "uniforme";
+    }
+    return String.format("Charge [clients=%d, %s, comptes=%d, loi=%s, "
+            + "consultations=%.0f%%, credits=%.0f%%, debits=%.0f%%, "
+            + "echauffement=%dms, mesure=%dms]", clients, estOuverte()
+            ? "ouverte, debit=" + debit + "/s" : "fermee, enCours=" + enCours,
+            comptes, l, 100 * consultations, 100 * credits, 100
+                    * (1.0 - consultations - credits), echauffement, mesure);
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Retourne le nom du compte d'indice spcifi. Dans une loi de Zipf, le
+   * compte d'indice i est de rang i + 1.
+   *
+   * @param i
+   *          indice du compte, entre 0 et le nombre de comptes exclu
+   * @return le nom du compte
+   */
+  public static String nomCompte(int i) {
+    return "compte" + i;
+  }
+
+  /**
+   * Ouvre les comptes de cette charge dans un service bancaire, avec un
+   * solde suffisant pour que les dbits n'chouent pas.
+   *
+   * @param s
+   *          service bancaire
+   */
+  public void ouvrirComptes(ServiceBanquaire s) {
+    for (int i = 0; i < comptes; i++) {
+      s.ouvrirCompte(nomCompte(i), SOLDE);
+    }
+  }
+
+  /**
+   * Excute cette charge : cre et lance les clients C1  Cn, attend leur
+   * fin, et retourne le bilan de la phase de mesure. Les comptes doivent
+   * avoir t ouverts au pralable (voir
+   * {@link #ouvrirComptes(ServiceBanquaire)}).
+   *
+   * @param d
+   *          nom du serveur ou groupe de serveurs  charger
+   * @return le bilan de la phase de mesure
+   * @throws InterruptedException
+   *           si le thread appelant est interrompu
+   */
+  public Bilan executer(String d) throws InterruptedException {
+    Bilan b = new Bilan(this);
+    List<Injecteur> l = new ArrayList<Injecteur>(clients);
+
+    // retenir l'horloge pendant le lancement des clients, pour qu'ils
+    // dmarrent tous  la mme date en temps virtuel
+    Ordonnanceur o = Calculateur.getOrdonnanceur();
+    o.activer();
+    try {
+      long debut = o.maintenant() + echauffement;
+      for (int i = 1; i <= clients; i++) {
+        Injecteur c = new Injecteur("C" + i, d, this, b, debut);
+        c.demarrer();
+        l.add(c);
+      }
+    } finally {
+      o.desactiver();
+    }
+    for (Injecteur c : l) {
+      c.joindre();
+    }
+    return b;
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Tire une requte de cette charge.
+   *
+   * @param r
+   *          flux alatoire du client
+   * @return la requte tire
+   */
+  Requete tirer(Random r) {
+    String c = nomCompte(tirerCompte(r));
+    double u = r.nextDouble();
+    if (u < consultations) {
+      return new Requete(c);
+    }
+    float m = 1 + r.nextInt(MONTANT_MAX);
+    return new Requete(c, u < consultations + credits ? m : -m);
+  }
+
+  /**
+   * Tire l'intervalle jusqu' la prochaine arrive d'un processus de
+   * Poisson, en boucle ouverte.
+   *
+   * @param r
+   *          flux alatoire du client
+   * @return l'intervalle, en millisecondes
+   */
+  double tirerIntervalle(Random r) {
+    return -Math.log(1.0 - r.nextDouble()) / getDebitClient();
+  }
+
+  private int tirerCompte(Random r) {
+    switch (loi) {
+    case ZIPF:
+      return (int) tirerZipf(r) - 1;
+    case POINT_CHAUD:
+      int c = (int) (fractionComptes * comptes);
+      if (r.nextDouble() < fractionRequetes) {
+        return r.nextInt(c);
+      }
+      return c + r.nextInt(comptes - c);
+    default:
+      return r.nextInt(comptes);
+    }
+  }
+
+  /*
+   * Le tirage par rejet-inversion se fait en temps constant en moyenne, sans
+   * table de probabilits : une valeur relle est tire par inversion d'une
+   * fonction majorant la loi discrte, puis arrondie au rang le plus proche,
+   * et accepte ou rejete.
+   */
+  private long tirerZipf(Random r) {
+    while (true) {
+      double u = hN + r.nextDouble() * (hX1 - hN);
+      double x = hIntegraleInverse(u);
+      long k = Math.max(1, Math.min(comptes, (long) (x + 0.5)));
+      if (k - x <= seuil || u >= hIntegrale(k + 0.5) - h(k)) {
+        return k;
+      }
+    }
+  }
+
+  private double h(double x) {
+    return Math.exp(-exposant * Math.log(x));
+  }
+
+  private double hIntegrale(double x) {
+    double l = Math.log(x);
+    return auxiliaire2((1.0 - exposant) * l) * l;
+  }
+
+  private double hIntegraleInverse(double x) {
+    double t = x * (1.0 - exposant);
+    if (t < -1.0) {
+      t = -1.0; // erreurs d'arrondi
+    }
+    return Math.exp(auxiliaire1(t) * x);
+  }
+
+  // log(1 + x) / x, prolonge par continuit en 0
+  private static double auxiliaire1(double x) {
+    if (Math.abs(x) > 1e-8) {
+      return Math.log1p(x) / x;
+    }
+    return 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+  }
+
+  // (exp(x) - 1) / x, prolonge par continuit en 0
+  private static double auxiliaire2(double x) {
+    if (Math.abs(x) > 1e-8) {
+      return Math.expm1(x) / x;
+    }
+    return 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+  }
+
+}
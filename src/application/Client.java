@@ -2,12 +2,22 @@ package application;
 
 import infrastructure.Calculateur;
 import infrastructure.Message;
+import infrastructure.Niveau;
+import infrastructure.Trace;
 
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Un {@link Calculateur} client de l'application. Il envoie des {@link Requete}
  * s aux {@link Serveur}s, et attend de faon synchrone leurs {@link Reponse}.
+ * <p>
+ * Le client peut regrouper ses requtes en lots ({@link RequeteGroupee}) : un
+ * lot part ds qu'il atteint sa taille maximale, ou  l'expiration de la
+ * fentre de regroupement ouverte par la premire requte du lot, mme si le
+ * programme ne soumet plus de requte. Le client n'a qu'un lot en cours : il
+ * attend les rponses d'un lot parti avant de soumettre la requte suivante.
  *
  * @author Jean-Michel Busca
  *
@@ -15,14 +25,34 @@ import java.util.Random;
 public class Client extends Calculateur {
 
   //
-  // ATTRIBUTS DE CLASSE
+  // CLASSES INTERNES
   //
-  private static final Random random = new Random(System.currentTimeMillis());
+  /**
+   * Minuterie de la fentre de regroupement d'un lot.
+   */
+  private final class Expiration implements Runnable {
+
+    private final int numero;
+
+    Expiration(int n) {
+      numero = n;
+    }
+
+    @Override
+    public void run() {
+      expirer(numero);
+    }
+  }
 
   //
   // ATTRIBUTS D'OBJET
   //
-  private final String destinataire; // serveur ou groupe de serveurs
+  private final Routeur routeur;
+  private final int tailleLot;
+  private final long fenetre; // ms, 0 si aucune
+  private final List<Requete> lot; // verrou du lot
+  private int numeroLot;
+  private int attendues; // rponses aux lots partis
 
   //
   // CONSTRUCTEURS ET ACCESSEURS
@@ -37,8 +67,32 @@ public class Client extends Calculateur {
    *          nom du serveur ou groupe de serveurs  contacter
    */
   public Client(String n, String d) {
+    this(n, d, 1, 0);
+  }
+
+  /**
+   * Construit un calculateur client s'adressant  un destinataire donn, et
+   * regroupant ses requtes en lots.
+   *
+   * @param n
+   *          nom du client
+   * @param d
+   *          nom du serveur ou groupe de serveurs  contacter
+   * @param t
+   *          nombre maximal de requtes par lot
+   * @param f
+   *          fentre de regroupement en ms, 0 pour n'envoyer que des lots
+   *          complets
+   */
+  public Client(String n, String d, int t, long f) {
     super(n, false);
-    destinataire = d;
+    if (t <= 0) {
+      throw new IllegalArgumentException("t=" + t);
+    }
+    routeur = new Routeur(getSimulation(), getNumero(), d, getAleatoire());
+    tailleLot = t;
+    fenetre = f;
+    lot = new ArrayList<Requete>(t);
   }
 
   //
@@ -56,26 +110,159 @@ public class Client extends Calculateur {
       // requte de crdit/dbit :
       // - compte Durand
       // - montant alatoire dans [-50, +50[
-      float v = random.nextInt(100) - 50;
+      float v = getAleatoire().nextInt(100) - 50;
       Requete rq = new Requete("Durand", v);
-      envoyer(destinataire, new Message(rq));
-
-      // attendre et afficher la rponse
-      Message m = attendre();
-      Reponse rp = (Reponse) m.getContenu();
-      afficher(rp + "");
+      soumettre(rq);
 
       // attendre entre deux requtes, si ncessaire
-      Thread.sleep(500);
+      dormir(500);
 
     }
+    vider();
     afficher("fin emission");
 
     // attendre que les serveurs terminent leurs traitements
-    Thread.sleep(3000);
+    dormir(3000);
 
     // fin du programme client
     afficher("arret");
   }
 
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Ajoute une requte au lot courant, aprs avoir attendu les rponses au
+   * lot prcdent, et envoie le lot s'il est complet. La premire requte
+   * d'un lot arme la minuterie de sa fentre de regroupement.
+   *
+   * @param rq
+   *          requte  envoyer
+   * @throws InterruptedException
+   *           si le client est interrompu
+   */
+  private void soumettre(Requete rq) throws InterruptedException {
+    recueillir();
+    boolean premiere;
+    int n;
+    List<Requete> l = null;
+    synchronized (lot) {
+      premiere = lot.isEmpty();
+      n = numeroLot;
+      lot.add(routeur.preparer(rq));
+      if (lot.size() >= tailleLot) {
+        l = retirer();
+      }
+    }
+    if (l != null) {
+      expedier(l);
+      recueillir();
+    } else if (premiere && fenetre > 0) {
+      armer(fenetre, new Expiration(n));
+    }
+  }
+
+  /**
+   * Envoie le lot courant, s'il n'est pas vide, puis attend et affiche la ou
+   * les rponses.
+   *
+   * @throws InterruptedException
+   *           si le client est interrompu
+   */
+  private void vider() throws InterruptedException {
+    List<Requete> l;
+    synchronized (lot) {
+      l = retirer();
+    }
+    if (l != null) {
+      expedier(l);
+    }
+    recueillir();
+  }
+
+  /*
+   * Excute par la minuterie avec le verrou du calculateur, que prend aussi
+   * envoyerFiable : le lot est donc retir avec le verrou du lot, et envoy
+   * hors de ce verrou, par le programme comme par la minuterie. La minuterie
+   * d'un lot dj parti, complet ou vid, est sans effet.
+   */
+  private void expirer(int n) {
+    List<Requete> l = null;
+    synchronized (lot) {
+      if (n == numeroLot) {
+        l = retirer();
+      }
+    }
+    if (l != null) {
+      expedier(l);
+    }
+  }
+
+  /*
+   * Appele avec le verrou du lot : retire le lot courant, et compte ses
+   * rponses comme attendues.
+   */
+  private List<Requete> retirer() {
+    if (lot.isEmpty()) {
+      return null;
+    }
+    List<Requete> l = new ArrayList<Requete>(lot);
+    lot.clear();
+    numeroLot++;
+    attendues += l.size();
+    return l;
+  }
+
+  private void expedier(List<Requete> lr) {
+    // une requte seule est envoye telle quelle ; un lot adress  une
+    // partition est rparti entre ses serveurs
+    for (Map.Entry<String, List<Requete>> e : routeur.repartir(lr)
+            .entrySet()) {
+      List<Requete> l = e.getValue();
+      if (l.size() == 1) {
+        envoyerFiable(e.getKey(), new Message(l.get(0)));
+      } else {
+        envoyerFiable(e.getKey(), new Message(new RequeteGroupee(l)));
+      }
+    }
+  }
+
+  /**
+   * Attend et affiche les rponses aux lots partis, qui peuvent arriver en
+   * plusieurs messages.
+   *
+   * @throws InterruptedException
+   *           si le client est interrompu
+   */
+  private void recueillir() throws InterruptedException {
+    while (true) {
+      synchronized (lot) {
+        if (attendues == 0) {
+          return;
+        }
+      }
+      Message m = attendre();
+      int n;
+      if (m.getContenu() instanceof ReponseGroupee) {
+        List<Reponse> l = ((ReponseGroupee) m.getContenu()).getReponses();
+        for (Reponse rp : l) {
+          routeur.observer(rp);
+          if (Trace.estActif(Niveau.INFO)) {
+            afficher(rp + "");
+          }
+        }
+        n = l.size();
+      } else {
+        routeur.observer((Reponse) m.getContenu());
+        if (Trace.estActif(Niveau.INFO)) {
+          afficher(m.getContenu() + "");
+        }
+        n = 1;
+      }
+      synchronized (lot) {
+        attendues -= n;
+      }
+    }
+  }
+
 }
@@ -0,0 +1,223 @@
+package application;
+
+import infrastructure.Calculateur;
+import infrastructure.Groupe;
+import infrastructure.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Un {@link Calculateur} client de l'application fonctionnant en mode
+ * asynchrone. Contrairement au {@link Client}, il n'attend pas la
+ * {@link Reponse}  une {@link Requete} pour envoyer la suivante : chaque
+ * requte soumise retourne immdiatement un {@link CompletableFuture},
+ * complt  la rception de la rponse portant son identifiant, que les
+ * rponses arrivent dans l'ordre ou non.
+ * <p>
+ * Le nombre de requtes en cours est limit : une soumission au-del de la
+ * limite bloque jusqu' la rception d'une rponse. Les attentes passent par
+ * {@link #patienter(long)}, et fonctionnent donc aussi en temps virtuel.
+ * <p>
+ * Une minuterie de priode {@link #DELAI_REEMISSION} rmet les requtes en
+ * cours adresses  un serveur exclu de son {@link Groupe}, au serveur que
+ * le routeur choisit  leur place : le nouveau primaire d'un groupe de
+ * {@link ServeurReplique}s, qui ne rexcute pas une requte dj excute.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class ClientAsynchrone extends Calculateur {
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Requte en cours, et serveur auquel elle a t adresse.
+   */
+  private static final class Envoi {
+
+    private final Requete requete;
+    private final CompletableFuture<Reponse> futur;
+    private volatile String serveur;
+
+    Envoi(Requete rq, String s) {
+      requete = rq;
+      futur = new CompletableFuture<Reponse>();
+      serveur = s;
+    }
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  static final long DELAI_REEMISSION = 500; // ms
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Routeur routeur;
+  private final int maximum; // requtes en cours
+  private final Map<Long, Envoi> enCours;
+  private final AtomicBoolean surveillance; // minuterie arme
+  private final Runnable reemission;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Construit un calculateur client asynchrone s'adressant  un destinataire
+   * donn, qu'il soit serveur simple ou groupe de serveurs.
+   *
+   * @param n
+   *          nom du client
+   * @param d
+   *          nom du serveur ou groupe de serveurs  contacter
+   * @param e
+   *          nombre maximal de requtes en cours
+   */
+  public ClientAsynchrone(String n, String d, int e) {
+    super(n, true);
+    if (e <= 0) {
+      throw new IllegalArgumentException("e=" + e);
+    }
+    routeur = new Routeur(getSimulation(), getNumero(), d, getAleatoire());
+    maximum = e;
+    enCours = new ConcurrentHashMap<Long, Envoi>();
+    surveillance = new AtomicBoolean();
+    reemission = new Runnable() {
+      @Override
+      public void run() {
+        reemettre();
+      }
+    };
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  @Override
+  public void programme() throws InterruptedException {
+
+    // dbut du programme du client
+    afficher("demarrage");
+
+    // envoyer 5 requtes au serveur, sans attendre les rponses
+    List<CompletableFuture<Reponse>> l;
+    l = new ArrayList<CompletableFuture<Reponse>>();
+    for (int i = 0; i < 5; i++) {
+      float v = getAleatoire().nextInt(100) - 50;
+      l.add(soumettre(new Requete("Durand", v)));
+    }
+    afficher("fin emission");
+
+    // attendre et afficher les rponses
+    for (CompletableFuture<Reponse> f : l) {
+      while (!f.isDone()) {
+        patienter(0);
+      }
+      try {
+        afficher(f.get() + "");
+      } catch (ExecutionException e) {
+        afficher("erreur " + e.getCause());
+      }
+    }
+
+    // fin du programme client
+    afficher("arret");
+  }
+
+  /**
+   * Soumet une requte au destinataire de ce client. Si le nombre maximal de
+   * requtes en cours est atteint, cette mthode bloque jusqu' la rception
+   * d'une rponse. Elle ne doit tre appele que par le programme principal
+   * du client.
+   * <p>
+   * Le futur retourn est complt par le thread de rception du client : les
+   * actions qui lui sont enchanes ne doivent pas bloquer.
+   *
+   * @param rq
+   *          requte  soumettre
+   * @return le futur de la rponse  la requte
+   * @throws InterruptedException
+   *           si le client est interrompu pendant l'attente
+   */
+  public CompletableFuture<Reponse> soumettre(Requete rq)
+          throws InterruptedException {
+    while (enCours.size() >= maximum) {
+      patienter(0);
+    }
+    Requete r = routeur.preparer(rq);
+    Envoi e = new Envoi(r, routeur.choisir(r));
+    enCours.put(r.getIdentifiant(), e);
+    envoyerFiable(e.serveur, new Message(r));
+    if (surveillance.compareAndSet(false, true)) {
+      armer(DELAI_REEMISSION, reemission);
+    }
+    return e.futur;
+  }
+
+  /**
+   * Retourne le nombre de requtes en cours, c'est--dire envoyes et sans
+   * rponse.
+   *
+   * @return le nombre de requtes en cours
+   */
+  public int getNombreEnCours() {
+    return enCours.size();
+  }
+
+  @Override
+  public void recevoir(Message m) {
+    if (m.getContenu() instanceof ReponseGroupee) {
+      for (Reponse rp : ((ReponseGroupee) m.getContenu()).getReponses()) {
+        completer(rp);
+      }
+    } else {
+      completer((Reponse) m.getContenu());
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private void completer(Reponse rp) {
+    routeur.observer(rp);
+    Envoi e = enCours.remove(rp.getIdentifiant());
+    if (e == null) {
+      afficher("reponse inattendue " + rp);
+      return;
+    }
+    e.futur.complete(rp);
+    signaler();
+  }
+
+  /*
+   * Excute par la minuterie, qui n'est rarme que s'il reste des requtes
+   * en cours : une soumission concurrente de son dsarmement la rarme.
+   */
+  private void reemettre() {
+    for (Envoi e : enCours.values()) {
+      if (!routeur.estValide(e.serveur)) {
+        e.serveur = routeur.choisir(e.requete);
+        afficher("reemission de " + e.requete.getIdentifiant() + " a "
+                + e.serveur);
+        envoyerFiable(e.serveur, new Message(e.requete));
+      }
+    }
+    if (!enCours.isEmpty()) {
+      armer(DELAI_REEMISSION, reemission);
+      return;
+    }
+    surveillance.set(false);
+    if (!enCours.isEmpty() && surveillance.compareAndSet(false, true)) {
+      armer(DELAI_REEMISSION, reemission);
+    }
+  }
+
+}
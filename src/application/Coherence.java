@@ -0,0 +1,27 @@
+package application;
+
+/**
+ * Niveau de cohrence d'une consultation adresse  un groupe de
+ * {@link ServeurReplique}s.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public enum Coherence {
+
+  /**
+   * La consultation est servie par le serveur primaire du groupe : elle voit
+   * toutes les critures acquittes avant elle, quels que soient leurs
+   * clients.
+   */
+  LINEARISABLE,
+
+  /**
+   * La consultation est servie par n'importe quel serveur du groupe, ds que
+   * celui-ci a appliqu les critures dj soumises par le client : le client
+   * voit ses propres critures, mais pas ncessairement les plus rcentes
+   * critures des autres clients.
+   */
+  LECTURE_ECRITURES
+
+}
@@ -0,0 +1,184 @@
+package application;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Table des comptes d'un {@link ServiceBanquaire}. Chaque compte reoit  son
+ * ouverture un identifiant entier ; son solde est rang, sous forme de float,
+ * dans un tableau d'entiers index par cet identifiant, et mis  jour par
+ * compare-and-set : les oprations sur des comptes diffrents n'entrent jamais
+ * en conflit, et aucune opration n'alloue de mmoire.
+ * <p>
+ * L'index des noms est une table de hachage  adressage ouvert, lue sans
+ * verrou. Seule l'ouverture d'un compte est exclusive. Hors chanes de
+ * caractres des noms, un compte occupe ainsi de 16  20 octets : 4 pour le
+ * solde, 4 ou 8 pour la rfrence du nom, et 8  16 pour l'index (facteur de
+ * charge compris entre 1/4 et 1/2).
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+final class Comptes {
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final int BITS_PAGE = 14;
+  private static final int TAILLE_PAGE = 1 << BITS_PAGE;
+  private static final int MASQUE_PAGE = TAILLE_PAGE - 1;
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  // les pages ne sont jamais dplaces : seul le tableau de pages est recopi
+  // lorsqu'il faut en ajouter une
+  private volatile AtomicIntegerArray[] soldes;
+  private volatile String[][] noms;
+  private volatile AtomicIntegerArray index; // identifiant + 1, 0 si libre
+  private int nombre;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  Comptes() {
+    soldes = new AtomicIntegerArray[0];
+    noms = new String[0][];
+    index = new AtomicIntegerArray(16);
+    nombre = 0;
+  }
+
+  synchronized int getNombre() {
+    return nombre;
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Retourne l'identifiant du compte spcifi.
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @return l'identifiant du compte, ou -1 s'il n'existe pas
+   */
+  int identifiant(String c) {
+    AtomicIntegerArray t = index;
+    int m = t.length() - 1;
+    for (int i = hachage(c) & m;; i = (i + 1) & m) {
+      int v = t.get(i);
+      if (v == 0) {
+        return -1;
+      }
+      if (nom(v - 1).equals(c)) {
+        return v - 1;
+      }
+    }
+  }
+
+  /**
+   * Ouvre un compte.
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @param s
+   *          solde initial du compte
+   * @return l'identifiant du compte
+   * @throws IllegalArgumentException
+   *           si le compte existe dj
+   */
+  synchronized int ouvrir(String c, float s) {
+    if (identifiant(c) >= 0) {
+      throw new IllegalArgumentException("c");
+    }
+    int id = nombre;
+    int p = id >>> BITS_PAGE;
+    if (p == soldes.length) {
+      AtomicIntegerArray[] ts = Arrays.copyOf(soldes, p + 1);
+      ts[p] = new AtomicIntegerArray(TAILLE_PAGE);
+      String[][] tn = Arrays.copyOf(noms, p + 1);
+      tn[p] = new String[TAILLE_PAGE];
+      soldes = ts;
+      noms = tn;
+    }
+    noms[p][id & MASQUE_PAGE] = c;
+    soldes[p].set(id & MASQUE_PAGE, Float.floatToRawIntBits(s));
+    nombre++;
+    if (2 * nombre > index.length()) {
+      index = reindexer(2 * index.length());
+    } else {
+      inserer(index, c, id);
+    }
+    return id;
+  }
+
+  float solde(int id) {
+    return Float.intBitsToFloat(soldes[id >>> BITS_PAGE].get(id & MASQUE_PAGE));
+  }
+
+  /**
+   * Crdite ou dbite un compte, sans verrou.
+   *
+   * @param id
+   *          identifiant du compte
+   * @param m
+   *          montant  crditer (si > 0) ou dbiter (si < 0)
+   * @return le nouveau solde du compte
+   * @throws IllegalStateException
+   *           si un dbit est demand et le solde du compte est insuffisant
+   */
+  float crediterDebiter(int id, float m) {
+    AtomicIntegerArray p = soldes[id >>> BITS_PAGE];
+    int i = id & MASQUE_PAGE;
+    while (true) {
+      int v = p.get(i);
+      float s = Float.intBitsToFloat(v);
+      if (m < 0 && (s + m) < 0) {
+        throw new IllegalStateException();
+      }
+      s += m;
+      if (p.compareAndSet(i, v, Float.floatToRawIntBits(s))) {
+        return s;
+      }
+    }
+  }
+
+  /**
+   * Fixe le solde d'un compte, sans verrou.
+   *
+   * @param id
+   *          identifiant du compte
+   * @param s
+   *          nouveau solde du compte
+   */
+  void fixer(int id, float s) {
+    soldes[id >>> BITS_PAGE].set(id & MASQUE_PAGE, Float.floatToRawIntBits(s));
+  }
+
+  String nom(int id) {
+    return noms[id >>> BITS_PAGE][id & MASQUE_PAGE];
+  }
+
+  private AtomicIntegerArray reindexer(int taille) {
+    AtomicIntegerArray t = new AtomicIntegerArray(taille);
+    for (int id = 0; id < nombre; id++) {
+      inserer(t, nom(id), id);
+    }
+    return t;
+  }
+
+  private static void inserer(AtomicIntegerArray t, String c, int id) {
+    int m = t.length() - 1;
+    int i = hachage(c) & m;
+    while (t.get(i) != 0) {
+      i = (i + 1) & m;
+    }
+    t.set(i, id + 1);
+  }
+
+  private static int hachage(String c) {
+    int h = c.hashCode() * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+}
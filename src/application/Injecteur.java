@@ -0,0 +1,133 @@
+package application;
+
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Un client d'une {@link Charge} : un {@link ClientAsynchrone} qui soumet
+ * les requtes tires par la charge, en boucle ouverte ou ferme, jusqu' la
+ * fin de la phase de mesure, puis attend ses dernires rponses. Les
+ * requtes mesures sont comptes dans le {@link Bilan} de la charge.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+class Injecteur extends ClientAsynchrone {
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Enregistrement de la rponse  une requte mesure,  la compltion de
+   * son futur par le thread de rception du client.
+   */
+  private class Mesure implements Consumer<Reponse> {
+
+    private final long debut;
+
+    Mesure(long d) {
+      debut = d;
+    }
+
+    @Override
+    public void accept(Reponse rp) {
+      bilan.compterReponse(rp, maintenant() - debut);
+    }
+  }
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Charge charge;
+  private final Bilan bilan;
+  private final long debutMesure;
+  private final long finMesure;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Construit un client d'une charge.
+   *
+   * @param n
+   *          nom du client
+   * @param d
+   *          nom du serveur ou groupe de serveurs  charger
+   * @param c
+   *          charge  appliquer
+   * @param b
+   *          bilan de la charge
+   * @param m
+   *          date de dbut de la phase de mesure
+   */
+  Injecteur(String n, String d, Charge c, Bilan b, long m) {
+    super(n, d, c.getEnCours());
+    charge = c;
+    bilan = b;
+    debutMesure = m;
+    finMesure = m + c.getMesure();
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  @Override
+  public void programme() throws InterruptedException {
+    if (charge.estOuverte()) {
+      boucleOuverte();
+    } else {
+      boucleFermee();
+    }
+    while (getNombreEnCours() > 0) {
+      patienter(0);
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /*
+   * Les dates d'arrive sont tires  l'avance, en rel : plusieurs requtes
+   * peuvent arriver dans la mme milliseconde. Une requte en retard sur sa
+   * date d'arrive est mise aussitt, et sa latence comprend son retard.
+   */
+  private void boucleOuverte() throws InterruptedException {
+    Random r = getAleatoire();
+    double t = maintenant();
+    while (true) {
+      t += charge.tirerIntervalle(r);
+      long a = (long) Math.ceil(t);
+      if (a >= finMesure) {
+        return;
+      }
+      long d = a - maintenant();
+      if (d > 0) {
+        dormir(d);
+      }
+      soumettre(charge.tirer(r), a);
+    }
+  }
+
+  private void boucleFermee() throws InterruptedException {
+    Random r = getAleatoire();
+    while (maintenant() < finMesure) {
+      Requete rq = charge.tirer(r);
+
+      // attendre une place libre avant de dater la requte
+      while (getNombreEnCours() >= charge.getEnCours()) {
+        patienter(0);
+      }
+      soumettre(rq, maintenant());
+    }
+  }
+
+  private void soumettre(Requete rq, long a) throws InterruptedException {
+    if (a >= debutMesure && a < finMesure) {
+      bilan.compterEmission();
+      soumettre(rq).thenAccept(new Mesure(a));
+    } else {
+      soumettre(rq);
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Instantan de la table des comptes d'un {@link ServiceBanquaire} durable.
+ * Un instantan est flou : il est pris sans arrter les critures, et les
+ * soldes qu'il contient peuvent reflter des modifications postrieures 
+ * son dbut. Il porte le numro du segment de {@link Journal} ouvert juste
+ * avant son dbut ; le rejeu des enregistrements de ce segment et des
+ * suivants, qui fixent des soldes, le rend exact.
+ * <p>
+ * L'instantan est crit dans un fichier temporaire par un
+ * {@link FileChannel}, forc sur disque, puis renomm atomiquement : le
+ * fichier instantane est toujours complet. Le rpertoire est ensuite forc
+ * sur disque, pour que le renommage soit durable avant la suppression des
+ * segments du journal que couvre l'instantan. L'instantan est relu par
+ * projection en mmoire.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+final class Instantane {
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final String NOM = "instantane";
+  private static final int MAGIQUE = 0x42414e4b; // "BANK"
+  private static final int TAILLE_TAMPON = 64 * 1024;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  private Instantane() {
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * crit l'instantan d'une table de comptes.
+   *
+   * @param r
+   *          rpertoire du service
+   * @param cs
+   *          table des comptes
+   * @param s
+   *          numro du premier segment du journal  rejouer
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  static void ecrire(File r, Comptes cs, long s) throws IOException {
+    File t = new File(r, NOM + ".tmp");
+    FileChannel c = FileChannel.open(t.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    try {
+      // en-tte : nombre magique, segment, nombre de comptes ; la somme de
+      // contrle des comptes est crite en fin de fichier
+      int n = cs.getNombre();
+      ByteBuffer b = ByteBuffer.allocate(TAILLE_TAMPON);
+      b.putInt(MAGIQUE);
+      b.putLong(s);
+      b.putInt(n);
+      CRC32 crc = new CRC32();
+      for (int id = 0; id < n; id++) {
+        byte[] nom = cs.nom(id).getBytes(StandardCharsets.UTF_8);
+        if (b.remaining() < 2 + nom.length + 4) {
+          vider(b, c, crc);
+        }
+        b.putShort((short) nom.length);
+        b.put(nom);
+        b.putFloat(cs.solde(id));
+      }
+      vider(b, c, crc);
+      b.putInt((int) crc.getValue());
+      b.flip();
+      while (b.hasRemaining()) {
+        c.write(b);
+      }
+      c.force(true);
+    } finally {
+      c.close();
+    }
+    Files.move(t.toPath(), new File(r, NOM).toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+    Journal.forcerRepertoire(r);
+  }
+
+  /**
+   * Charge le dernier instantan dans une table de comptes vide.
+   *
+   * @param r
+   *          rpertoire du service
+   * @param cs
+   *          table des comptes, vide
+   * @return le numro du premier segment du journal  rejouer, 0 s'il n'y a
+   *         pas d'instantan
+   * @throws IOException
+   *           en cas d'erreur de lecture, ou si l'instantan est corrompu
+   */
+  static long charger(File r, Comptes cs) throws IOException {
+    File f = new File(r, NOM);
+    if (!f.exists()) {
+      return 0;
+    }
+    FileChannel c = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+    try {
+      MappedByteBuffer b = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+      if (b.getInt() != MAGIQUE) {
+        throw new IOException("instantane invalide : " + f);
+      }
+      long s = b.getLong();
+      int n = b.getInt();
+      int debut = b.position();
+      byte[] nom = new byte[256];
+      for (int i = 0; i < n; i++) {
+        int l = b.getShort() & 0xffff;
+        if (l > nom.length) {
+          nom = new byte[l];
+        }
+        b.get(nom, 0, l);
+        cs.ouvrir(new String(nom, 0, l, StandardCharsets.UTF_8), b.getFloat());
+      }
+      CRC32 crc = new CRC32();
+      ByteBuffer d = b.duplicate();
+      d.position(debut);
+      d.limit(b.position());
+      crc.update(d);
+      if (b.getInt() != (int) crc.getValue()) {
+        throw new IOException("instantane corrompu : " + f);
+      }
+      return s;
+    } finally {
+      c.close();
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private static void vider(ByteBuffer b, FileChannel c, CRC32 crc)
+          throws IOException {
+    // la somme de contrle couvre les comptes, pas l'en-tte
+    b.flip();
+    ByteBuffer d = b.duplicate();
+    if (c.position() == 0) {
+      d.position(16);
+    }
+    crc.update(d);
+    while (b.hasRemaining()) {
+      c.write(b);
+    }
+    b.clear();
+  }
+
+}
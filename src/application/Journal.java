@@ -0,0 +1,471 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Journal d'criture anticipe d'un {@link ServiceBanquaire} durable. Chaque
+ * modification d'un compte y est enregistre sous la forme du nouveau solde
+ * du compte : le rejeu d'un enregistrement est idempotent, et le journal peut
+ * tre rejou sur un instantan flou (voir {@link Instantane}).
+ * <p>
+ * Les enregistrements sont ajouts en mmoire, puis crits et forcs sur
+ * disque par {@link #synchroniser(long)}, selon le principe de la validation
+ * groupe : le premier appelant force sur disque tous les enregistrements
+ * ajouts jusque-l, et les appelants concurrents attendent la fin de son
+ * forage au lieu de forcer chacun le leur. Un seul forage rend ainsi
+ * durables les critures de tous les threads qui l'ont attendu.
+ * <p>
+ * L'ajout ne prend aucun verrou : l'enregistrement est numrot par un
+ * compteur atomique, encod par le thread appelant, puis dpos dans une
+ * file concurrente, que le thread qui force le journal vide dans son tampon.
+ * Deux enregistrements peuvent ainsi tre crits dans un autre ordre que
+ * celui de leurs numros ; l'appelant qui doit garder l'ordre des
+ * enregistrements d'un mme compte les ajoute sous un verrou du compte (voir
+ * {@link ServiceBanquaire}). Le journal est durable jusqu'au plus grand
+ * numro dont tous les enregistrements prcdents ont t forcs.
+ * <p>
+ * Le journal est dcoup en segments numrots (fichiers journal.n) : la
+ * prise d'un instantan ouvre un nouveau segment, et les segments antrieurs
+ *  l'instantan sont ensuite supprims. Chaque enregistrement porte sa
+ * taille et sa somme de contrle ;  la rcupration, le rejeu s'arrte au
+ * premier enregistrement incomplet ou corrompu, et le segment est tronqu 
+ * cet endroit.
+ * <p>
+ * Une erreur d'criture ou de forage est dfinitive : les enregistrements
+ * en cours d'criture sont perdus, et tous les appels suivants de
+ * {@link #synchroniser(long)} et de {@link #basculer()} chouent, pour
+ * qu'aucun enregistrement postrieur ne soit dclar durable  leur place.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+final class Journal {
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final String PREFIXE = "journal.";
+  private static final int TAILLE_TAMPON = 64 * 1024;
+  private static final int ENTETE = 8; // taille, somme de contrle
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Enregistrement ajout et pas encore crit, encod avec son en-tte.
+   */
+  private static final class Enregistrement {
+
+    private final long numero;
+    private final byte[] octets;
+
+    Enregistrement(long n, byte[] o) {
+      numero = n;
+      octets = o;
+    }
+  }
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final File repertoire;
+
+  // ajouts, sans verrou
+  private final AtomicLong ajoutes; // numro du dernier enregistrement
+  private final Queue<Enregistrement> file; // en attente d'criture
+  private final AtomicLong tailleSegment; // octets crits ou en attente
+
+  // tat protg par le verrou du journal ; le tampon appartient au thread
+  // qui force le journal
+  private FileChannel canal;
+  private long segment;
+  private ByteBuffer tampon;
+  private final PriorityQueue<Long> ecrits; // forcs, hors du prfixe
+  private long durables; // prfixe des enregistrements forcs
+  private boolean forcage; // un thread crit et force le journal
+  private IOException echec; // erreur d'criture, dfinitive
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  private Journal(File r, long s, FileChannel c) throws IOException {
+    repertoire = r;
+    segment = s;
+    canal = c;
+    ajoutes = new AtomicLong();
+    file = new ConcurrentLinkedQueue<Enregistrement>();
+    tailleSegment = new AtomicLong(c.size());
+    tampon = ByteBuffer.allocate(TAILLE_TAMPON);
+    ecrits = new PriorityQueue<Long>();
+    durables = 0;
+    forcage = false;
+  }
+
+  /**
+   * Retourne la taille du segment courant, enregistrements en attente
+   * compris.
+   *
+   * @return la taille du segment courant, en octets
+   */
+  long getTailleSegment() {
+    return tailleSegment.get();
+  }
+
+  //
+  // RECUPERATION
+  //
+  /**
+   * Rejoue dans une table de comptes les segments du journal postrieurs 
+   * un instantan, et ouvre le journal en criture  la suite du dernier
+   * segment.
+   *
+   * @param r
+   *          rpertoire du journal
+   * @param s
+   *          premier segment  rejouer, celui de l'instantan charg dans la
+   *          table, 0 s'il n'y a pas d'instantan
+   * @param cs
+   *          table des comptes
+   * @return le journal ouvert en criture
+   * @throws IOException
+   *           en cas d'erreur de lecture ou d'criture
+   */
+  static Journal recuperer(File r, long s, Comptes cs) throws IOException {
+    List<Long> l = segments(r);
+    long dernier = s;
+    for (long n : l) {
+      if (n >= s) {
+        rejouer(fichier(r, n), cs);
+        dernier = n;
+      }
+    }
+    FileChannel c = FileChannel.open(fichier(r, dernier).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    c.position(c.size());
+    forcerRepertoire(r);
+    return new Journal(r, dernier, c);
+  }
+
+  private static void rejouer(File f, Comptes cs) throws IOException {
+    FileChannel c = FileChannel.open(f.toPath(), StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    try {
+      ByteBuffer b = ByteBuffer.allocate(TAILLE_TAMPON);
+      CRC32 crc = new CRC32();
+      long valide = 0; // fin du dernier enregistrement valide
+      c.read(b);
+      b.flip();
+      while (true) {
+        // vrifier la taille de l'enregistrement suivant avant tout usage,
+        // puis complter le tampon s'il n'y tient pas
+        if (b.remaining() >= ENTETE) {
+          int t = b.getInt(b.position());
+          if (t < 6 || t > b.capacity() - ENTETE) {
+            break; // taille corrompue
+          }
+        }
+        if (b.remaining() < ENTETE
+                || b.remaining() < ENTETE + b.getInt(b.position())) {
+          b.compact();
+          int n = c.read(b);
+          b.flip();
+          if (n <= 0) {
+            break;
+          }
+          continue;
+        }
+        int t = b.getInt();
+        int somme = b.getInt();
+        crc.reset();
+        crc.update(b.array(), b.position(), t);
+        if ((int) crc.getValue() != somme) {
+          break;
+        }
+        byte[] nom = new byte[b.getShort() & 0xffff];
+        b.get(nom);
+        float solde = b.getFloat();
+        String compte = new String(nom, StandardCharsets.UTF_8);
+        int id = cs.identifiant(compte);
+        if (id < 0) {
+          cs.ouvrir(compte, solde);
+        } else {
+          cs.fixer(id, solde);
+        }
+        valide += ENTETE + t;
+      }
+
+      // supprimer la fin incomplte ou corrompue du segment
+      if (c.size() > valide) {
+        c.truncate(valide);
+        c.force(true);
+      }
+    } finally {
+      c.close();
+    }
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Ajoute au journal le nouveau solde d'un compte, sans verrou.
+   * L'enregistrement n'est durable qu'aprs l'appel de
+   * {@link #synchroniser(long)}.
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @param s
+   *          nouveau solde du compte
+   * @return le numro de l'enregistrement
+   */
+  long ajouter(String c, float s) {
+    byte[] nom = c.getBytes(StandardCharsets.UTF_8);
+    int t = 2 + nom.length + 4;
+    ByteBuffer b = ByteBuffer.allocate(ENTETE + t);
+    b.putInt(t);
+    b.putInt(0); // somme de contrle, calcule ci-dessous
+    b.putShort((short) nom.length);
+    b.put(nom);
+    b.putFloat(s);
+    CRC32 crc = new CRC32();
+    crc.update(b.array(), ENTETE, t);
+    b.putInt(4, (int) crc.getValue());
+    tailleSegment.addAndGet(ENTETE + t);
+    long n = ajoutes.incrementAndGet();
+    file.add(new Enregistrement(n, b.array()));
+    return n;
+  }
+
+  /**
+   * Retourne le numro du dernier enregistrement ajout au journal.
+   *
+   * @return le numro du dernier enregistrement
+   */
+  long getDernier() {
+    return ajoutes.get();
+  }
+
+  /**
+   * Rend durables les enregistrements du journal jusqu'au numro spcifi,
+   * par validation groupe.
+   *
+   * @param n
+   *          numro du dernier enregistrement  rendre durable
+   * @throws IOException
+   *           en cas d'erreur d'criture, lors de ce forage ou d'un
+   *           prcdent
+   */
+  void synchroniser(long n) throws IOException {
+    // un enregistrement numrot peut tre dpos dans la file aprs le
+    // passage d'un forage : il faut alors un forage de plus
+    while (true) {
+      FileChannel c;
+      synchronized (this) {
+        // attendre la fin du forage en cours, qui suffit peut-tre
+        while (durables < n && forcage) {
+          attendre();
+        }
+        if (durables >= n) {
+          return;
+        }
+        verifier();
+        forcage = true;
+        c = canal;
+      }
+
+      // vider la file, crire et forcer, sans bloquer les ajouts
+      List<Long> l = new ArrayList<Long>();
+      IOException erreur = new IOException("forcage interrompu");
+      try {
+        vider(l);
+        tampon.flip();
+        while (tampon.hasRemaining()) {
+          c.write(tampon);
+        }
+        c.force(false);
+        erreur = null;
+      } catch (IOException e) {
+        erreur = e;
+        throw e;
+      } finally {
+        tampon.clear();
+        synchronized (this) {
+          forcage = false;
+          if (erreur == null) {
+            avancer(l);
+          } else {
+            echec = erreur;
+          }
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Rend durable le segment courant, et ouvre le segment suivant.
+   *
+   * @return le numro du nouveau segment
+   * @throws IOException
+   *           en cas d'erreur d'criture, lors de cette bascule ou d'un
+   *           forage prcdent
+   */
+  synchronized long basculer() throws IOException {
+    while (forcage) {
+      attendre();
+    }
+    verifier();
+    try {
+      List<Long> l = new ArrayList<Long>();
+      vider(l);
+      tampon.flip();
+      while (tampon.hasRemaining()) {
+        canal.write(tampon);
+      }
+      tampon.clear();
+      canal.force(false);
+      canal.close();
+      avancer(l);
+      notifyAll();
+      segment++;
+      canal = FileChannel.open(fichier(repertoire, segment).toPath(),
+              StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      forcerRepertoire(repertoire);
+    } catch (IOException e) {
+      echec = e;
+      throw e;
+    }
+    tailleSegment.set(0);
+    return segment;
+  }
+
+  /**
+   * Supprime les segments antrieurs au segment spcifi, couverts par un
+   * instantan.
+   *
+   * @param s
+   *          premier segment  conserver
+   */
+  void purger(long s) {
+    for (long n : segments(repertoire)) {
+      if (n < s) {
+        fichier(repertoire, n).delete();
+      }
+    }
+  }
+
+  /**
+   * Rend durables tous les enregistrements, et ferme le journal.
+   *
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  void fermer() throws IOException {
+    synchroniser(getDernier());
+    synchronized (this) {
+      canal.close();
+    }
+  }
+
+  /**
+   * Force sur disque un rpertoire, pour rendre durables les crations, les
+   * renommages et les suppressions de fichiers qui y ont t faits.
+   *
+   * @param r
+   *          rpertoire  forcer
+   * @throws IOException
+   *           en cas d'erreur de forage
+   */
+  static void forcerRepertoire(File r) throws IOException {
+    FileChannel c = FileChannel.open(r.toPath(), StandardOpenOption.READ);
+    try {
+      c.force(true);
+    } finally {
+      c.close();
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /*
+   * Appele par le thread qui force le journal : vide la file dans le
+   * tampon, et relve les numros des enregistrements vids.
+   */
+  private void vider(List<Long> l) {
+    Enregistrement e;
+    while ((e = file.poll()) != null) {
+      if (tampon.remaining() < e.octets.length) {
+        ByteBuffer b = ByteBuffer.allocate(Math.max(2 * tampon.capacity(),
+                tampon.position() + e.octets.length));
+        tampon.flip();
+        b.put(tampon);
+        tampon = b;
+      }
+      tampon.put(e.octets);
+      l.add(e.numero);
+    }
+  }
+
+  /*
+   * Appele avec le verrou du journal, aprs le forage des enregistrements
+   * spcifis : tend le prfixe durable.
+   */
+  private void avancer(List<Long> l) {
+    ecrits.addAll(l);
+    while (!ecrits.isEmpty() && ecrits.peek() == durables + 1) {
+      ecrits.poll();
+      durables++;
+    }
+  }
+
+  private void verifier() throws IOException {
+    if (echec != null) {
+      throw new IOException("journal en echec", echec);
+    }
+  }
+
+  private void attendre() throws InterruptedIOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private static File fichier(File r, long n) {
+    return new File(r, PREFIXE + n);
+  }
+
+  private static List<Long> segments(File r) {
+    List<Long> l = new ArrayList<Long>();
+    String[] noms = r.list();
+    for (int i = 0; noms != null && i < noms.length; i++) {
+      if (noms[i].startsWith(PREFIXE)) {
+        try {
+          l.add(Long.parseLong(noms[i].substring(PREFIXE.length())));
+        } catch (NumberFormatException e) {
+          // fichier tranger au journal
+        }
+      }
+    }
+    Collections.sort(l);
+    return l;
+  }
+
+}
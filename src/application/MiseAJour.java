@@ -0,0 +1,119 @@
+package application;
+
+import infrastructure.Codec;
+import infrastructure.Codecs;
+import infrastructure.Entree;
+import infrastructure.Partageable;
+import infrastructure.Sortie;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Lot de mises  jour propag par le serveur primaire d'un groupe de
+ * {@link ServeurReplique}s  ses serveurs secondaires. La i-me mise  jour
+ * du lot fixe le solde d'un compte, et fait passer l'tat du service  la
+ * version premiere + i ; elle porte l'identifiant de la {@link Requete} qui
+ * l'a produite, pour que le serveur qui succde au primaire reconnaisse les
+ * requtes dj excutes. Un lot est immuable, et peut donc tre livr sans
+ * copie.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class MiseAJour implements Partageable {
+
+  private static final long serialVersionUID = 1L;
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class CodecMiseAJour implements Codec<MiseAJour> {
+
+    @Override
+    public void encoder(MiseAJour mj, Sortie s) throws IOException {
+      s.ecrireLong(mj.premiere);
+      s.ecrireEntier(mj.comptes.length);
+      for (int i = 0; i < mj.comptes.length; i++) {
+        s.ecrireLong(mj.identifiants[i]);
+        s.ecrireChaine(mj.comptes[i]);
+        s.ecrireFlottant(mj.soldes[i]);
+      }
+    }
+
+    @Override
+    public MiseAJour decoder(Entree e) throws IOException {
+      long p = e.lireLong();
+      String[] c = new String[e.lireEntier()];
+      long[] id = new long[c.length];
+      float[] s = new float[c.length];
+      for (int i = 0; i < c.length; i++) {
+        id[i] = e.lireLong();
+        c[i] = e.lireChaine();
+        s[i] = e.lireFlottant();
+      }
+      return new MiseAJour(p, id, c, s);
+    }
+  }
+
+  static {
+    Codecs.enregistrer(MiseAJour.class, new CodecMiseAJour());
+  }
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final long premiere;
+  private final long[] identifiants;
+  private final String[] comptes;
+  private final float[] soldes;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  public MiseAJour(long p, List<Long> id, List<String> c, List<Float> s) {
+    this(p, new long[id.size()], c.toArray(new String[c.size()]),
+            new float[s.size()]);
+    for (int i = 0; i < soldes.length; i++) {
+      identifiants[i] = id.get(i);
+      soldes[i] = s.get(i);
+    }
+  }
+
+  private MiseAJour(long p, long[] id, String[] c, float[] s) {
+    this.premiere = p;
+    this.identifiants = id;
+    this.comptes = c;
+    this.soldes = s;
+  }
+
+  public long getPremiere() {
+    return premiere;
+  }
+
+  public long getDerniere() {
+    return premiere + comptes.length - 1;
+  }
+
+  public int getNombre() {
+    return comptes.length;
+  }
+
+  public long getIdentifiant(int i) {
+    return identifiants[i];
+  }
+
+  public String getCompte(int i) {
+    return comptes[i];
+  }
+
+  public float getSolde(int i) {
+    return soldes[i];
+  }
+
+  @Override
+  public String toString() {
+    return "MiseAJour [versions=" + premiere + ".." + getDerniere() + "]";
+  }
+
+}
@@ -1,34 +1,97 @@
 package application;
 
-import java.io.Serializable;
+import infrastructure.Codec;
+import infrastructure.Codecs;
+import infrastructure.Entree;
+import infrastructure.Partageable;
+import infrastructure.Sortie;
+
+import java.io.IOException;
 
 /**
- * Une rponse du {@link ServiceBancaire}.
+ * Une rponse du {@link ServiceBancaire}. Une rponse est immuable, et peut
+ * donc tre livre sans copie. Elle porte l'identifiant de la {@link Requete}
+ *  laquelle elle rpond, ce qui permet  un client d'avoir plusieurs
+ * requtes en cours, et la version de l'tat du service qu'elle reflte
+ * (voir {@link ServeurReplique}), 0 si le service n'est pas rpliqu.
  *
  * @author Jean-Michel Busca
  *
  */
-public class Reponse implements Serializable {
+public class Reponse implements Partageable {
 
   private static final long serialVersionUID = 1L;
 
+  //
+  // CLASSES INTERNES
+  //
+  private static final class CodecReponse implements Codec<Reponse> {
+
+    @Override
+    public void encoder(Reponse rp, Sortie s) throws IOException {
+      s.ecrireLong(rp.identifiant);
+      s.ecrireFlottant(rp.solde);
+      s.ecrireObjet(rp.exception);
+      s.ecrireLong(rp.version);
+    }
+
+    @Override
+    public Reponse decoder(Entree e) throws IOException {
+      long id = e.lireLong();
+      float s = e.lireFlottant();
+      Exception ex = (Exception) e.lireObjet();
+      long v = e.lireLong();
+      return ex == null ? new Reponse(id, s, v) : new Reponse(id, ex, v);
+    }
+  }
+
+  static {
+    Codecs.enregistrer(Reponse.class, new CodecReponse());
+  }
+
   //
   // ATTRIBUTS D'OBJET
   //
+  private final long identifiant;
   private final float solde;
   private final Exception exception;
+  private final long version;
 
   //
   // CONSTRUCTEURS ET ACCESSEURS
   //
   public Reponse(float s) {
+    this(0, s);
+  }
+
+  public Reponse(Exception e) {
+    this(0, e);
+  }
+
+  public Reponse(long id, float s) {
+    this(id, s, 0);
+  }
+
+  public Reponse(long id, Exception e) {
+    this(id, e, 0);
+  }
+
+  public Reponse(long id, float s, long v) {
+    this.identifiant = id;
     this.solde = s;
     this.exception = null;
+    this.version = v;
   }
 
-  public Reponse(Exception e) {
+  public Reponse(long id, Exception e, long v) {
+    this.identifiant = id;
     this.solde = -1.0f;
     this.exception = e;
+    this.version = v;
+  }
+
+  public long getIdentifiant() {
+    return identifiant;
   }
 
   public float getSolde() {
@@ -39,12 +102,16 @@ public class Reponse implements Serializable {
     return exception;
   }
 
+  public long getVersion() {
+    return version;
+  }
+
   @Override
   public String toString() {
     if (exception == null) {
-      return "Reponse [solde=" + solde + "]";
+      return "Reponse [id=" + identifiant + ", solde=" + solde + "]";
     } else {
-      return "Reponse [exception=" + exception + "]";
+      return "Reponse [id=" + identifiant + ", exception=" + exception + "]";
     }
   }
 
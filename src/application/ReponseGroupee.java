@@ -0,0 +1,84 @@
+package application;
+
+import infrastructure.Codec;
+import infrastructure.Codecs;
+import infrastructure.Entree;
+import infrastructure.Partageable;
+import infrastructure.Sortie;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Les {@link Reponse}s du {@link ServiceBancaire}  une
+ * {@link RequeteGroupee}, dans l'ordre de ses requtes : chacune porte un
+ * solde ou une exception. Un lot de rponses est immuable, et peut donc tre
+ * livr sans copie.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class ReponseGroupee implements Partageable {
+
+  private static final long serialVersionUID = 1L;
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class CodecReponseGroupee implements
+          Codec<ReponseGroupee> {
+
+    @Override
+    public void encoder(ReponseGroupee rg, Sortie s) throws IOException {
+      s.ecrireEntier(rg.reponses.length);
+      for (Reponse rp : rg.reponses) {
+        s.ecrireObjet(rp);
+      }
+    }
+
+    @Override
+    public ReponseGroupee decoder(Entree e) throws IOException {
+      Reponse[] t = new Reponse[e.lireEntier()];
+      for (int i = 0; i < t.length; i++) {
+        t[i] = (Reponse) e.lireObjet();
+      }
+      return new ReponseGroupee(t);
+    }
+  }
+
+  static {
+    Codecs.enregistrer(ReponseGroupee.class, new CodecReponseGroupee());
+  }
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Reponse[] reponses;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  public ReponseGroupee(List<Reponse> l) {
+    this(l.toArray(new Reponse[l.size()]));
+  }
+
+  private ReponseGroupee(Reponse[] t) {
+    this.reponses = t;
+  }
+
+  public List<Reponse> getReponses() {
+    return Collections.unmodifiableList(Arrays.asList(reponses));
+  }
+
+  public int getNombre() {
+    return reponses.length;
+  }
+
+  @Override
+  public String toString() {
+    return "ReponseGroupee [nombre=" + reponses.length + "]";
+  }
+
+}
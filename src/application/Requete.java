@@ -1,60 +1,197 @@
 package application;
 
-import java.io.Serializable;
+import infrastructure.Codec;
+import infrastructure.Codecs;
+import infrastructure.Entree;
+import infrastructure.Partageable;
+import infrastructure.Sortie;
+
+import java.io.IOException;
 
 /**
- * Une requte au {@link ServiceBancaire}.
+ * Une requte au {@link ServiceBancaire}. Une requte est immuable, et peut
+ * donc tre livre sans copie. Chaque requte reoit  sa soumission un
+ * identifiant, attribu par le client qui la soumet et repris par la
+ * {@link Reponse} correspondante : le numro du client dans sa simulation
+ * suivi d'un numro de squence propre au client. Les identifiants sont
+ * ainsi uniques dans la simulation, et reproductibles d'une excution 
+ * l'autre.
+ * <p>
+ * Une requte est une consultation, un crdit/dbit, ou un virement d'un
+ * compte vers un autre. Une consultation porte un niveau de
+ * {@link Coherence}, et la version minimale de l'tat du service qu'elle doit
+ * observer ; ces informations ne servent qu'aux groupes de
+ * {@link ServeurReplique}s.
  *
  * @author Jean-Michel Busca
  *
  */
-public class Requete implements Serializable {
+public class Requete implements Partageable {
 
   private static final long serialVersionUID = 1L;
 
+  //
+  // CLASSES INTERNES
+  //
+  private static final class CodecRequete implements Codec<Requete> {
+
+    @Override
+    public void encoder(Requete rq, Sortie s) throws IOException {
+      s.ecrireLong(rq.identifiant);
+      s.ecrireBooleen(rq.estConsultation);
+      s.ecrireChaine(rq.compte);
+      s.ecrireChaine(rq.beneficiaire);
+      s.ecrireFlottant(rq.montant);
+      s.ecrireEntier(rq.coherence.ordinal());
+      s.ecrireLong(rq.version);
+    }
+
+    @Override
+    public Requete decoder(Entree e) throws IOException {
+      long id = e.lireLong();
+      boolean ec = e.lireBooleen();
+      String c = e.lireChaine();
+      String b = e.lireChaine();
+      float m = e.lireFlottant();
+      Coherence co = Coherence.values()[e.lireEntier()];
+      return new Requete(id, ec, c, b, m, co, e.lireLong());
+    }
+  }
+
+  static {
+    Codecs.enregistrer(Requete.class, new CodecRequete());
+  }
+
   //
   // ATTRIBUTS D'OBJET
   //
+  private final long identifiant; // 0 : pas encore soumise
   private final boolean estConsultation;
   private final String compte;
+  private final String beneficiaire; // virements seulement
   private final float montant;
+  private final Coherence coherence;
+  private final long version;
 
   //
   // CONSTRUCTEURS ET ACCESSEURS
   //
   public Requete(String c) {
-    this(true, c, 0.0f);
+    this(c, Coherence.LINEARISABLE);
+  }
+
+  public Requete(String c, Coherence co) {
+    this(0, true, c, null, 0.0f, co, 0);
   }
 
   public Requete(String c, float m) {
-    this(false, c, m);
+    this(0, false, c, null, m, Coherence.LINEARISABLE, 0);
+  }
+
+  /**
+   * Construit une requte de virement d'un compte vers un autre.
+   *
+   * @param c
+   *          compte  dbiter
+   * @param b
+   *          compte  crditer
+   * @param m
+   *          montant du virement, strictement positif
+   */
+  public Requete(String c, String b, float m) {
+    this(0, false, c, b, m, Coherence.LINEARISABLE, 0);
+    if (b == null || m <= 0) {
+      throw new IllegalArgumentException("b=" + b + ", m=" + m);
+    }
   }
 
-  private Requete(boolean ec, String c, float m) {
+  private Requete(long id, boolean ec, String c, String b, float m,
+          Coherence co, long v) {
+    if (co == null) {
+      throw new IllegalArgumentException("co");
+    }
+    this.identifiant = id;
     this.estConsultation = ec;
     this.compte = c;
+    this.beneficiaire = b;
     this.montant = m;
+    this.coherence = co;
+    this.version = v;
+  }
+
+  public long getIdentifiant() {
+    return identifiant;
   }
 
   public boolean estConsultation() {
     return estConsultation;
   }
 
+  public boolean estVirement() {
+    return beneficiaire != null;
+  }
+
   public String getCompte() {
     return compte;
   }
 
+  public String getBeneficiaire() {
+    return beneficiaire;
+  }
+
   public float getMontant() {
     return montant;
   }
 
+  public Coherence getCoherence() {
+    return coherence;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Retourne une copie de cette requte, de mme identifiant, exigeant au
+   * moins la version spcifie de l'tat du service.
+   *
+   * @param v
+   *          version minimale  observer
+   * @return cette requte si elle exige dj cette version, sa copie sinon
+   */
+  public Requete exiger(long v) {
+    if (v <= version) {
+      return this;
+    }
+    return new Requete(identifiant, estConsultation, compte, beneficiaire,
+            montant, coherence, v);
+  }
+
+  /**
+   * Retourne la copie de cette requte portant l'identifiant spcifi,
+   * attribu  la soumission par le {@link Routeur} du client.
+   *
+   * @param id
+   *          identifiant de la requte
+   * @return la copie identifie de cette requte
+   */
+  Requete identifier(long id) {
+    return new Requete(id, estConsultation, compte, beneficiaire, montant,
+            coherence, version);
+  }
+
   @Override
   public String toString() {
     if (estConsultation) {
-      return "Requete [consultation compte=" + compte + "]";
+      return "Requete [id=" + identifiant + ", consultation compte=" + compte
+              + (coherence == Coherence.LINEARISABLE ? "" : ", coherence="
+                      + coherence + ", version=" + version) + "]";
+    } else if (beneficiaire != null) {
+      return "Requete [id=" + identifiant + ", virement compte=" + compte
+              + ", beneficiaire=" + beneficiaire + ", montant=" + montant + "]";
     } else {
-      return "Requete [credit/debit compte=" + compte + ", montant=" + montant
-              + "]";
+      return "Requete [id=" + identifiant + ", credit/debit compte=" + compte
+              + ", montant=" + montant + "]";
     }
   }
 
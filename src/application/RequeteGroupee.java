@@ -0,0 +1,83 @@
+package application;
+
+import infrastructure.Codec;
+import infrastructure.Codecs;
+import infrastructure.Entree;
+import infrastructure.Partageable;
+import infrastructure.Sortie;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Un lot de {@link Requete}s au {@link ServiceBancaire}, traites en une
+ * seule passe par le {@link Serveur}, qui renvoie une {@link ReponseGroupee}.
+ * Un lot est immuable, et peut donc tre livr sans copie.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class RequeteGroupee implements Partageable {
+
+  private static final long serialVersionUID = 1L;
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class CodecRequeteGroupee implements
+          Codec<RequeteGroupee> {
+
+    @Override
+    public void encoder(RequeteGroupee rg, Sortie s) throws IOException {
+      s.ecrireEntier(rg.requetes.length);
+      for (Requete rq : rg.requetes) {
+        s.ecrireObjet(rq);
+      }
+    }
+
+    @Override
+    public RequeteGroupee decoder(Entree e) throws IOException {
+      Requete[] t = new Requete[e.lireEntier()];
+      for (int i = 0; i < t.length; i++) {
+        t[i] = (Requete) e.lireObjet();
+      }
+      return new RequeteGroupee(t);
+    }
+  }
+
+  static {
+    Codecs.enregistrer(RequeteGroupee.class, new CodecRequeteGroupee());
+  }
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Requete[] requetes;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  public RequeteGroupee(List<Requete> l) {
+    this(l.toArray(new Requete[l.size()]));
+  }
+
+  private RequeteGroupee(Requete[] t) {
+    this.requetes = t;
+  }
+
+  public List<Requete> getRequetes() {
+    return Collections.unmodifiableList(Arrays.asList(requetes));
+  }
+
+  public int getNombre() {
+    return requetes.length;
+  }
+
+  @Override
+  public String toString() {
+    return "RequeteGroupee [nombre=" + requetes.length + "]";
+  }
+
+}
@@ -0,0 +1,177 @@
+package application;
+
+import infrastructure.Groupe;
+import infrastructure.Simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Routeur des {@link Requete}s d'un client vers son destinataire. Si le
+ * destinataire est un serveur simple, toutes les requtes lui sont adresses.
+ * Si c'est un {@link Groupe} de {@link ServeurReplique}s, les crdits/dbits
+ * et les consultations linarisables sont adresss au primaire du groupe, et
+ * les consultations {@link Coherence#LECTURE_ECRITURES}  un serveur tir au
+ * hasard. Si c'est une partition de {@link ServeurPartition}s, chaque requte
+ * est adresse au serveur propritaire de son compte, selon l'{@link Anneau}
+ * publi de la partition.
+ * <p>
+ * Pour garantir au client la lecture de ses propres critures, le routeur
+ * estampille chaque consultation avec la plus grande version observe dans
+ * les rponses du client, et adresse au primaire les consultations soumises
+ * pendant qu'une criture du client est sans rponse.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+final class Routeur {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Simulation simulation;
+  private final long client; // numro du client, en poids forts
+  private final String destinataire;
+  private final Random aleatoire;
+  private final Set<Long> ecritures; // identifiants sans rponse
+  private long versionVue;
+  private int sequence;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  Routeur(Simulation s, int c, String d, Random r) {
+    simulation = s;
+    client = (long) c << 32;
+    destinataire = d;
+    aleatoire = r;
+    ecritures = new HashSet<Long>();
+    versionVue = 0;
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Prpare une requte  l'envoi : elle reoit l'identifiant suivant du
+   * client, puis une consultation est estampille avec la version que sa
+   * rponse doit reflter, et une criture est enregistre comme tant sans
+   * rponse.
+   *
+   * @param rq
+   *          requte  envoyer
+   * @return la requte  envoyer  la place de rq
+   */
+  synchronized Requete preparer(Requete rq) {
+    rq = rq.identifier(client | ++sequence);
+    if (!rq.estConsultation()) {
+      ecritures.add(rq.getIdentifiant());
+      return rq;
+    }
+    if (rq.getCoherence() == Coherence.LECTURE_ECRITURES) {
+      return rq.exiger(versionVue);
+    }
+    return rq;
+  }
+
+  /**
+   * Rpartit un lot de requtes prpares entre les serveurs auxquels les
+   * adresser.
+   *
+   * @param l
+   *          requtes du lot
+   * @return les sous-lots du lot, non vides, indexs par le nom de leur
+   *         serveur destinataire
+   */
+  synchronized Map<String, List<Requete>> repartir(List<Requete> l) {
+    Map<String, List<Requete>> r = new LinkedHashMap<String, List<Requete>>();
+    Anneau a = Anneau.consulter(destinataire);
+    if (a == null) {
+      r.put(choisir(l), new ArrayList<Requete>(l));
+      return r;
+    }
+    for (Requete rq : l) {
+      String s = a.proprietaire(rq.getCompte());
+      List<Requete> sl = r.get(s);
+      if (sl == null) {
+        sl = new ArrayList<Requete>();
+        r.put(s, sl);
+      }
+      sl.add(rq);
+    }
+    return r;
+  }
+
+  /**
+   * Choisit le serveur auquel adresser une requte prpare.
+   *
+   * @param rq
+   *          requte  envoyer
+   * @return le nom du serveur destinataire de la requte
+   */
+  synchronized String choisir(Requete rq) {
+    Anneau a = Anneau.consulter(destinataire);
+    if (a != null) {
+      return a.proprietaire(rq.getCompte());
+    }
+    return choisir(Collections.singletonList(rq));
+  }
+
+  /**
+   * Choisit le serveur ou le serveur du groupe auquel adresser un lot de
+   * requtes prpares.
+   *
+   * @param l
+   *          requtes du lot
+   * @return le nom du serveur destinataire du lot
+   */
+  synchronized String choisir(List<Requete> l) {
+    if (!simulation.existeGroupe(destinataire)) {
+      return destinataire;
+    }
+    List<String> membres = simulation.toGroupe(destinataire).getMembres();
+    if (!ecritures.isEmpty()) {
+      return membres.get(0);
+    }
+    for (Requete rq : l) {
+      if (!rq.estConsultation()
+              || rq.getCoherence() != Coherence.LECTURE_ECRITURES) {
+        return membres.get(0);
+      }
+    }
+    return membres.get(aleatoire.nextInt(membres.size()));
+  }
+
+  /**
+   * Indique si un serveur choisi pour une requte peut encore y rpondre :
+   * c'est le cas, sauf s'il a t exclu du groupe destinataire.
+   *
+   * @param s
+   *          nom du serveur
+   * @return vrai si le serveur peut rpondre
+   */
+  boolean estValide(String s) {
+    return !simulation.existeGroupe(destinataire)
+            || simulation.toGroupe(destinataire).getMembres().contains(s);
+  }
+
+  /**
+   * Prend en compte la rponse  une requte du client.
+   *
+   * @param rp
+   *          rponse reue
+   */
+  synchronized void observer(Reponse rp) {
+    ecritures.remove(rp.getIdentifiant());
+    if (rp.getVersion() > versionVue) {
+      versionVue = rp.getVersion();
+    }
+  }
+
+}
@@ -2,11 +2,17 @@ package application;
 
 import infrastructure.Calculateur;
 import infrastructure.Message;
+import infrastructure.Niveau;
+import infrastructure.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Un {@link Calculateur} serveur de l'application, implmentant un
  * {@link ServiceBanquaire}. Il reoit de faon asynchrone les {@link Requete}s
- * venant des {@link Client}s, et leur renvoie des {@link Reponse}.
+ * venant des {@link Client}s, et leur renvoie des {@link Reponse}. Les
+ * requtes peuvent aussi tre reues par lots ({@link RequeteGroupee}).
  *
  * @author Jean-Michel Busca
  *
@@ -29,8 +35,23 @@ public class Serveur extends Calculateur {
    *          nom du serveur
    */
   public Serveur(String n) {
+    this(n, new ServiceBanquaire());
+  }
+
+  /**
+   * Construit un calculateur serveur excutant le service bancaire spcifi,
+   * par exemple un service durable (voir
+   * {@link ServiceBanquaire#ouvrir(java.io.File, long)}), et fonctionnant en
+   * mode asynchrone.
+   *
+   * @param n
+   *          nom du serveur
+   * @param s
+   *          service bancaire  excuter
+   */
+  public Serveur(String n, ServiceBanquaire s) {
     super(n, true);
-    service = new ServiceBanquaire();
+    service = s;
   }
 
   //
@@ -46,14 +67,20 @@ public class Serveur extends Calculateur {
 
     // extraire la requete du message
     String e = m.getEmetteur();
-    Requete rq = (Requete) m.getContenu();
 
-    // delivrer la requte au service bancaire
-    delivrer(e, rq);
+    // delivrer la requte ou le lot de requtes au service bancaire
+    if (m.getContenu() instanceof RequeteGroupee) {
+      delivrer(e, (RequeteGroupee) m.getContenu());
+    } else {
+      delivrer(e, (Requete) m.getContenu());
+    }
   }
 
   /**
-   * Dlivre la requte spcifie au service bancaire.
+   * Dlivre la requte spcifie au service bancaire. La dure de
+   * traitement, synchronisation et envoi compris, est enregistre dans
+   * l'histogramme des temps de service du serveur (voir
+   * {@link infrastructure.Mesures#getService()}).
    *
    * @param e
    *          emetteur de la requte
@@ -62,6 +89,45 @@ public class Serveur extends Calculateur {
    */
   public void delivrer(String e, Requete rq) {
 
+    // traiter la requte, la rendre durable, et envoyer la rponse
+    long d = System.nanoTime();
+    Reponse rp = traiter(rq);
+    service.synchroniser();
+    envoyerFiable(e, new Message(rp));
+    getMesures().getService().enregistrer((System.nanoTime() - d) / 1000);
+  }
+
+  /**
+   * Dlivre en une seule passe le lot de requtes spcifi au service
+   * bancaire, et renvoie toutes les rponses dans un seul message. La dure
+   * de traitement du lot est enregistre comme un seul temps de service.
+   *
+   * @param e
+   *          emetteur du lot de requtes
+   * @param rg
+   *          lot de requtes extrait du message reu
+   */
+  public void delivrer(String e, RequeteGroupee rg) {
+
+    // traiter les requtes dans l'ordre du lot
+    long d = System.nanoTime();
+    List<Reponse> l = new ArrayList<Reponse>(rg.getNombre());
+    for (Requete rq : rg.getRequetes()) {
+      l.add(traiter(rq));
+    }
+
+    // rendre le lot durable en une seule synchronisation, puis envoyer les
+    // rponses
+    service.synchroniser();
+    envoyerFiable(e, new Message(new ReponseGroupee(l)));
+    getMesures().getService().enregistrer((System.nanoTime() - d) / 1000);
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private Reponse traiter(Requete rq) {
+
     // dcoder et traiter la requete
     Reponse rp = null;
     String c = rq.getCompte();
@@ -72,23 +138,26 @@ public class Serveur extends Calculateur {
       float s;
       if (rq.estConsultation()) {
         s = service.consulterSolde(c);
+      } else if (rq.estVirement()) {
+        s = service.virer(c, rq.getBeneficiaire(), rq.getMontant());
       } else {
         s = service.crediterDebiter(c, rq.getMontant());
       }
 
-      afficher("compte : " + c + ", nouveau solde = " + s);
-      rp = new Reponse(s);
+      if (Trace.estActif(Niveau.INFO)) {
+        afficher("compte : " + c + ", nouveau solde = " + s);
+      }
+      rp = new Reponse(rq.getIdentifiant(), s);
 
     } catch (IllegalArgumentException ex) {
       afficher("compte " + c + " inexistant");
-      rp = new Reponse(ex);
+      rp = new Reponse(rq.getIdentifiant(), ex);
     } catch (IllegalStateException ex) {
       afficher("compte " + c + " non approvisionn");
-      rp = new Reponse(ex);
+      rp = new Reponse(rq.getIdentifiant(), ex);
     }
 
-    // envoyer la rponse
-    envoyer(e, new Message(rp));
+    return rp;
   }
 
 }
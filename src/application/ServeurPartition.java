@@ -0,0 +1,554 @@
+package application;
+
+import infrastructure.Calculateur;
+import infrastructure.Codec;
+import infrastructure.Codecs;
+import infrastructure.Entree;
+import infrastructure.Message;
+import infrastructure.Niveau;
+import infrastructure.Partageable;
+import infrastructure.Sortie;
+import infrastructure.Trace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Un {@link Calculateur} serveur d'une partition de l'espace des comptes.
+ * Les comptes sont rpartis entre les serveurs de la partition par un
+ * {@link Anneau} de hachage cohrent, publi sous le nom de la partition ;
+ * chaque serveur ne sert que les comptes qui lui appartiennent, et relaie au
+ * serveur propritaire les requtes qui lui sont adresses  tort. Le serveur
+ * propritaire rpond directement au client.
+ * <p>
+ * Un virement entre deux comptes de serveurs diffrents est excut par
+ * validation  deux phases, coordonne par le serveur du compte dbit :
+ * celui-ci dbite et verrouille son compte, puis demande au serveur du compte
+ * crdit de verrouiller le sien. Ce dernier refuse si son compte est
+ * inexistant ; le coordinateur annule alors le dbit, et le virement choue.
+ * Si le compte est dj verrouill, la demande est diffre jusqu' la fin de
+ * la transaction qui le dtient, comme les requtes portant sur un compte
+ * verrouill. Pour viter tout interblocage, une demande n'attend qu'une
+ * transaction dj prpare, qui n'attend plus rien, ou une transaction
+ * d'identifiant plus grand : une attente circulaire est donc impossible. Dans
+ * les autres cas, le coordinateur annule le dbit et reprend le virement plus
+ * tard, avec le mme identifiant, qui finit par tre le plus petit en cours.
+ * <p>
+ * Un serveur dmarr avec un nom absent de l'anneau publi rejoint la
+ * partition : il diffuse le nouvel anneau aux autres serveurs, qui terminent
+ * leurs transactions en cours, lui transfrent les comptes qu'il reoit, puis
+ * lui relaient les requtes les concernant ; il publie l'anneau quand il a
+ * reu tous les transferts. Les canaux fiables livrant dans l'ordre, un
+ * transfert prcde toujours les requtes relayes qui le concernent. Les
+ * serveurs doivent rejoindre la partition un par un ; pendant un
+ * rquilibrage, un virement vers un compte en cours de transfert peut
+ * chouer.
+ * <p>
+ * Les comptes cds restent dans la table du serveur qui les cde, mais ne
+ * sont plus servis. Les pannes ne sont pas gres.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class ServeurPartition extends Calculateur {
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Une requte relaye, avec le nom du client  qui rpondre.
+   */
+  static final class Relais implements Partageable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String client;
+    final Requete requete;
+
+    Relais(String c, Requete rq) {
+      client = c;
+      requete = rq;
+    }
+
+    @Override
+    public String toString() {
+      return "Relais [client=" + client + ", requete=" + requete + "]";
+    }
+  }
+
+  static final class CodecRelais implements Codec<Relais> {
+
+    @Override
+    public void encoder(Relais r, Sortie s) throws IOException {
+      s.ecrireNom(r.client);
+      s.ecrireObjet(r.requete);
+    }
+
+    @Override
+    public Relais decoder(Entree e) throws IOException {
+      String c = e.lireNom();
+      return new Relais(c, (Requete) e.lireObjet());
+    }
+  }
+
+  /**
+   * Un message de validation  deux phases d'un virement.
+   */
+  static final class Coordination implements Partageable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int PREPARATION = 0;
+    static final int OUI = 1;
+    static final int NON = 2;
+    static final int VALIDATION = 3;
+    static final int CONFLIT = 4;
+
+    final int etape;
+    final long transaction; // identifiant de la requte de virement
+    final String compte; // compte  crditer
+    final float montant;
+
+    Coordination(int e, long t, String c, float m) {
+      etape = e;
+      transaction = t;
+      compte = c;
+      montant = m;
+    }
+
+    @Override
+    public String toString() {
+      return "Coordination [etape=" + etape + ", transaction=" + transaction
+              + ", compte=" + compte + ", montant=" + montant + "]";
+    }
+  }
+
+  static final class CodecCoordination implements Codec<Coordination> {
+
+    @Override
+    public void encoder(Coordination c, Sortie s) throws IOException {
+      s.ecrireEntier(c.etape);
+      s.ecrireLong(c.transaction);
+      s.ecrireChaine(c.compte);
+      s.ecrireFlottant(c.montant);
+    }
+
+    @Override
+    public Coordination decoder(Entree e) throws IOException {
+      int et = e.lireEntier();
+      long t = e.lireLong();
+      String c = e.lireChaine();
+      return new Coordination(et, t, c, e.lireFlottant());
+    }
+  }
+
+  /**
+   * Les comptes cds par un serveur au serveur qui rejoint la partition.
+   */
+  static final class Transfert implements Partageable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String[] comptes;
+    final float[] soldes;
+
+    Transfert(String[] c, float[] s) {
+      comptes = c;
+      soldes = s;
+    }
+
+    @Override
+    public String toString() {
+      return "Transfert [comptes=" + comptes.length + "]";
+    }
+  }
+
+  static final class CodecTransfert implements Codec<Transfert> {
+
+    @Override
+    public void encoder(Transfert t, Sortie s) throws IOException {
+      s.ecrireEntier(t.comptes.length);
+      for (int i = 0; i < t.comptes.length; i++) {
+        s.ecrireChaine(t.comptes[i]);
+        s.ecrireFlottant(t.soldes[i]);
+      }
+    }
+
+    @Override
+    public Transfert decoder(Entree e) throws IOException {
+      String[] c = new String[e.lireEntier()];
+      float[] s = new float[c.length];
+      for (int i = 0; i < c.length; i++) {
+        c[i] = e.lireChaine();
+        s[i] = e.lireFlottant();
+      }
+      return new Transfert(c, s);
+    }
+  }
+
+  static {
+    Codecs.enregistrer(Relais.class, new CodecRelais());
+    Codecs.enregistrer(Coordination.class, new CodecCoordination());
+    Codecs.enregistrer(Transfert.class, new CodecTransfert());
+  }
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final String partition;
+  private final ServiceBanquaire service;
+  private volatile Anneau anneau;
+
+  // tat modifi uniquement par recevoir()
+  private final Map<String, Long> verrous; // compte -> transaction
+  private final Map<Long, Relais> transactions; // coordonnes
+  private final Map<Long, Coordination> preparees; // participations
+  private final List<Relais> differes;
+  private final List<Message> preparations; // diffres
+  private Message reequilibrage; // diffr
+
+  // transferts attendus avant de publier l'anneau, si rejoint la partition
+  private volatile int attendus;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Construit un serveur de la partition spcifie, fonctionnant en mode
+   * asynchrone. L'anneau de la partition doit avoir t publi. Si le serveur
+   * en fait partie, il ouvre ceux des comptes pr-dfinis du
+   * {@link ServiceBanquaire} qui lui appartiennent ; sinon, il rejoindra la
+   * partition  son dmarrage.
+   *
+   * @param n
+   *          nom du serveur
+   * @param p
+   *          nom de la partition
+   */
+  public ServeurPartition(String n, String p) {
+    super(n, true);
+    partition = p;
+    anneau = Anneau.consulter(p);
+    if (anneau == null) {
+      throw new IllegalArgumentException("p=" + p);
+    }
+    service = new ServiceBanquaire(false);
+    if (anneau.contient(n)) {
+      for (int i = 0; i < ServiceBanquaire.PREDEFINIS.length; i++) {
+        String c = ServiceBanquaire.PREDEFINIS[i];
+        if (anneau.proprietaire(c).equals(n)) {
+          service.ouvrirCompte(c, ServiceBanquaire.SOLDES_PREDEFINIS[i]);
+        }
+      }
+    }
+    verrous = new HashMap<String, Long>();
+    transactions = new HashMap<Long, Relais>();
+    preparees = new HashMap<Long, Coordination>();
+    differes = new ArrayList<Relais>();
+    preparations = new ArrayList<Message>();
+  }
+
+  /**
+   * Retourne l'anneau connu de ce serveur.
+   *
+   * @return l'anneau de ce serveur
+   */
+  public Anneau getAnneau() {
+    return anneau;
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Ouvre un compte sur ce serveur. Cette mthode est destine aux programmes
+   * de test, et doit tre appele avant le dmarrage du serveur.
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @param s
+   *          solde initial du compte
+   * @throws IllegalArgumentException
+   *           si le compte n'appartient pas  ce serveur, ou existe dj
+   */
+  public void ouvrirCompte(String c, float s) {
+    if (!anneau.proprietaire(c).equals(getNom())) {
+      throw new IllegalArgumentException("c=" + c);
+    }
+    service.ouvrirCompte(c, s);
+  }
+
+  /**
+   * Retourne le solde d'un compte de ce serveur. Cette mthode est destine
+   * aux programmes de test, et ne doit tre appele que lorsque le serveur ne
+   * reoit plus de requtes.
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @return le solde du compte
+   * @throws IllegalArgumentException
+   *           si le compte n'appartient pas  ce serveur
+   */
+  public float consulterSolde(String c) {
+    if (!anneau.proprietaire(c).equals(getNom())) {
+      throw new IllegalArgumentException("c=" + c);
+    }
+    return service.consulterSolde(c);
+  }
+
+  @Override
+  public void programme() throws InterruptedException {
+    afficher("demarrage");
+    if (Anneau.consulter(partition).contient(getNom())) {
+      return;
+    }
+
+    // rejoindre la partition : diffuser le nouvel anneau, puis attendre les
+    // transferts de comptes avant de le publier
+    Anneau a = Anneau.consulter(partition);
+    Anneau n = a.ajouter(getNom());
+    attendus = a.getServeurs().size();
+    anneau = n;
+    for (String s : a.getServeurs()) {
+      envoyerFiable(s, new Message(n));
+    }
+    while (attendus > 0) {
+      patienter(0);
+    }
+    Anneau.publier(partition, n);
+    afficher("partition rejointe : " + n);
+  }
+
+  @Override
+  public void recevoir(Message m) {
+    Object c = m.getContenu();
+    String e = m.getEmetteur();
+    if (c instanceof Coordination) {
+      coordonner(m);
+    } else if (c instanceof Anneau) {
+      reequilibrer(m);
+    } else if (c instanceof Transfert) {
+      Transfert t = (Transfert) c;
+      for (int i = 0; i < t.comptes.length; i++) {
+        service.ouvrirCompte(t.comptes[i], t.soldes[i]);
+      }
+      afficher(t.comptes.length + " comptes recus de " + e);
+      attendus--;
+      signaler();
+    } else if (c instanceof Relais) {
+      repondre((Relais) c);
+    } else if (c instanceof RequeteGroupee) {
+      List<Reponse> l = new ArrayList<Reponse>();
+      for (Requete rq : ((RequeteGroupee) c).getRequetes()) {
+        Reponse rp = traiter(new Relais(e, rq));
+        if (rp != null) {
+          l.add(rp);
+        }
+      }
+      if (!l.isEmpty()) {
+        envoyerFiable(e, new Message(new ReponseGroupee(l)));
+      }
+    } else {
+      repondre(new Relais(e, (Requete) c));
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private void repondre(Relais r) {
+    Reponse rp = traiter(r);
+    if (rp != null) {
+      envoyerFiable(r.client, new Message(rp));
+    }
+  }
+
+  /**
+   * Traite une requte, et retourne sa rponse, ou null si elle est relaye,
+   * diffre, ou en cours de validation.
+   */
+  private Reponse traiter(Relais r) {
+    Requete rq = r.requete;
+    String c = rq.getCompte();
+    String p = anneau.proprietaire(c);
+    if (!p.equals(getNom())) {
+      envoyerFiable(p, new Message(r));
+      return null;
+    }
+    if (reequilibrage != null || verrous.containsKey(c)
+            || (rq.estVirement() && verrous.containsKey(rq.getBeneficiaire()))) {
+      differes.add(r);
+      return null;
+    }
+    try {
+      float s;
+      if (rq.estConsultation()) {
+        s = service.consulterSolde(c);
+      } else if (rq.estVirement()) {
+        String b = rq.getBeneficiaire();
+        String pb = anneau.proprietaire(b);
+        if (pb.equals(getNom())) {
+          s = service.virer(c, b, rq.getMontant());
+        } else {
+          // dbiter et verrouiller le compte, puis prparer le crdit
+          service.crediterDebiter(c, -rq.getMontant());
+          verrous.put(c, rq.getIdentifiant());
+          transactions.put(rq.getIdentifiant(), r);
+          envoyerFiable(pb, new Message(new Coordination(
+                  Coordination.PREPARATION, rq.getIdentifiant(), b,
+                  rq.getMontant())));
+          return null;
+        }
+      } else {
+        s = service.crediterDebiter(c, rq.getMontant());
+      }
+      if (Trace.estActif(Niveau.INFO)) {
+        afficher("compte : " + c + ", nouveau solde = " + s);
+      }
+      return new Reponse(rq.getIdentifiant(), s);
+    } catch (IllegalArgumentException ex) {
+      afficher("compte " + c + " inexistant");
+      return new Reponse(rq.getIdentifiant(), ex);
+    } catch (IllegalStateException ex) {
+      afficher("compte " + c + " non approvisionn");
+      return new Reponse(rq.getIdentifiant(), ex);
+    }
+  }
+
+  private void coordonner(Message m) {
+    String e = m.getEmetteur();
+    Coordination co = (Coordination) m.getContenu();
+    switch (co.etape) {
+    case Coordination.PREPARATION:
+      // attendre le compte verrouill si l'attente ne peut pas boucler, et
+      // signaler un conflit sinon ; refuser si le compte est inexistant, ou
+      // si un rquilibrage attend la fin des transactions
+      Long t = verrous.get(co.compte);
+      if (reequilibrage == null && t != null
+              && (preparees.containsKey(t) || co.transaction < t)) {
+        preparations.add(m);
+        return;
+      }
+      boolean oui = reequilibrage == null
+              && anneau.proprietaire(co.compte).equals(getNom())
+              && t == null && service.existeCompte(co.compte);
+      if (oui) {
+        verrous.put(co.compte, co.transaction);
+        preparees.put(co.transaction, co);
+      }
+      int v = oui ? Coordination.OUI : reequilibrage == null && t != null
+              ? Coordination.CONFLIT : Coordination.NON;
+      envoyerFiable(e, new Message(new Coordination(v, co.transaction,
+              co.compte, co.montant)));
+      break;
+
+    case Coordination.CONFLIT:
+      // annuler le dbit, et reprendre le virement aprs les requtes
+      // diffres
+      Relais d = transactions.remove(co.transaction);
+      service.crediterDebiter(d.requete.getCompte(), d.requete.getMontant());
+      differes.add(d);
+      deverrouiller(d.requete.getCompte());
+      break;
+
+    case Coordination.OUI:
+    case Coordination.NON:
+      Relais r = transactions.remove(co.transaction);
+      Requete rq = r.requete;
+      String c = rq.getCompte();
+      Reponse rp;
+      if (co.etape == Coordination.OUI) {
+        envoyerFiable(e, new Message(new Coordination(
+                Coordination.VALIDATION, co.transaction, co.compte,
+                co.montant)));
+        float s = service.consulterSolde(c);
+        if (Trace.estActif(Niveau.INFO)) {
+          afficher("compte : " + c + ", nouveau solde = " + s);
+        }
+        rp = new Reponse(rq.getIdentifiant(), s);
+      } else {
+        service.crediterDebiter(c, rq.getMontant());
+        afficher("virement " + rq.getIdentifiant() + " refuse par " + e);
+        rp = new Reponse(rq.getIdentifiant(), new IllegalStateException(
+                "virement refuse"));
+      }
+      envoyerFiable(r.client, new Message(rp));
+      deverrouiller(c);
+      break;
+
+    case Coordination.VALIDATION:
+      Coordination p = preparees.remove(co.transaction);
+      float s = service.crediterDebiter(p.compte, p.montant);
+      if (Trace.estActif(Niveau.INFO)) {
+        afficher("compte : " + p.compte + ", nouveau solde = " + s);
+      }
+      deverrouiller(p.compte);
+      break;
+
+    default:
+      throw new IllegalArgumentException("co=" + co);
+    }
+  }
+
+  private void deverrouiller(String c) {
+    verrous.remove(c);
+
+    // reprendre les prparations diffres, dans leur ordre d'arrive : la
+    // premire qui porte sur ce compte le verrouille, les autres attendent 
+    // nouveau
+    if (!preparations.isEmpty()) {
+      List<Message> a = new ArrayList<Message>(preparations);
+      preparations.clear();
+      for (Message m : a) {
+        coordonner(m);
+      }
+    }
+
+    // reprendre le rquilibrage, puis les requtes diffres
+    if (reequilibrage != null) {
+      if (!verrous.isEmpty()) {
+        return;
+      }
+      Message m = reequilibrage;
+      reequilibrage = null;
+      reequilibrer(m);
+    }
+    List<Relais> l = new ArrayList<Relais>(differes);
+    differes.clear();
+    for (Relais r : l) {
+      repondre(r);
+    }
+  }
+
+  private void reequilibrer(Message m) {
+    // attendre la fin des transactions en cours, en diffrant les requtes
+    // suivantes
+    if (!verrous.isEmpty()) {
+      reequilibrage = m;
+      return;
+    }
+
+    // adopter le nouvel anneau, et cder les comptes qui changent de serveur
+    Anneau a = (Anneau) m.getContenu();
+    Anneau p = anneau;
+    anneau = a;
+    List<String> c = new ArrayList<String>();
+    for (String n : service.listerComptes()) {
+      if (p.proprietaire(n).equals(getNom())
+              && !a.proprietaire(n).equals(getNom())) {
+        c.add(n);
+      }
+    }
+    float[] s = new float[c.size()];
+    for (int i = 0; i < s.length; i++) {
+      s[i] = service.consulterSolde(c.get(i));
+    }
+    afficher(c.size() + " comptes cedes a " + m.getEmetteur());
+    envoyerFiable(m.getEmetteur(), new Message(new Transfert(c
+            .toArray(new String[c.size()]), s)));
+  }
+
+}
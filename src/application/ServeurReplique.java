@@ -0,0 +1,533 @@
+package application;
+
+import infrastructure.Calculateur;
+import infrastructure.Groupe;
+import infrastructure.Message;
+import infrastructure.Niveau;
+import infrastructure.Trace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Un {@link Calculateur} serveur membre d'un {@link Groupe} de serveurs
+ * rpliquant le mme {@link ServiceBanquaire}, selon le schma primaire -
+ * secondaires. Le primaire du groupe est son premier membre.
+ * <p>
+ * Les crdits/dbits sont excuts par le primaire, qui propage leurs
+ * rsultats aux secondaires par lots ({@link MiseAJour}) : un lot part ds
+ * qu'il contient {@link #TAILLE_LOT} mises  jour, ou {@link #DELAI_LOT} ms
+ * aprs sa premire mise  jour. Chaque criture fait passer l'tat du
+ * service  la version suivante ; les secondaires appliquent les lots dans
+ * l'ordre, passent par les mmes versions que le primaire, et acquittent
+ * chaque lot appliqu par un {@link Avancement}. Le primaire ne rpond au
+ * client qu'une fois acquitt par tous les secondaires le lot qui contient
+ * son criture : les rponses partent par lots, comme les mises  jour, et
+ * une criture acquitte au client survit  la panne du primaire.
+ * <p>
+ * Les consultations sont servies selon leur niveau de {@link Coherence} :
+ * les consultations linarisables par le primaire, les autres par n'importe
+ * quel serveur du groupe, ds qu'il a atteint la version exige par la
+ * requte. Une requte adresse  tort  un secondaire reoit une rponse
+ * d'erreur.
+ * <p>
+ * Les requtes et les lots de mises  jour sont envoys par des canaux
+ * fiables, et la propagation d'un lot est dclenche par une minuterie du
+ * primaire : le groupe rsiste aux pertes et aux duplications de messages,
+ * aux partitions et aux pannes franches suivies d'une reprise, les canaux
+ * rmettant les messages non acquitts.
+ * <p>
+ * Les serveurs se surveillent par une minuterie de priode
+ * {@link #DELAI_BATTEMENT} : le primaire envoie un signe de vie aux
+ * secondaires qui n'ont pas acquitt sa version, ou auxquels il n'a pas
+ * envoy de lot, et exclut du groupe un secondaire muet depuis
+ * {@link #DELAI_PANNE} ms qui retient une rponse. Le
+ * i-me secondaire exclut un primaire muet depuis i fois {@link #DELAI_PANNE}
+ * ms : le secondaire suivant devient alors le primaire, et transfre son tat
+ * complet ({@link Transfert}) aux autres secondaires, qui abandonnent les
+ * lots de l'ancien primaire qu'il n'a pas reus. Un serveur exclu ignore les
+ * messages qu'il reoit. Les lots portent l'identifiant des requtes
+ * excutes, et le primaire rpond  une requte dj excute sans la
+ * rexcuter : un {@link ClientAsynchrone} peut rmettre au nouveau primaire
+ * les requtes restes sans rponse.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class ServeurReplique extends Calculateur {
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Rponse retenue par le primaire jusqu' l'acquittement de sa version par
+   * tous les secondaires.
+   */
+  private static final class ReponseDifferee {
+
+    private final String client;
+    private final Message message;
+    private final long version;
+    private final long date;
+
+    ReponseDifferee(String c, Message m, long v, long d) {
+      client = c;
+      message = m;
+      version = v;
+      date = d;
+    }
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  static final int TAILLE_LOT = 64;
+  static final long DELAI_LOT = 5; // ms
+  static final long DELAI_BATTEMENT = 250; // ms
+  static final long DELAI_PANNE = 2000; // ms
+  static final int RESULTATS = 4096; // rsultats conservs
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final String groupe;
+  private final ServiceBanquaire service;
+
+  // tat modifi uniquement avec le verrou du calculateur, par recevoir() et
+  // par les minuteries
+  private volatile long version;
+  private final List<Long> identifiantsLot;
+  private final List<String> comptesLot;
+  private final List<Float> soldesLot;
+  private final List<Message> differes;
+  private final Map<Long, Float> resultats; // par identifiant de requte
+  private final Deque<ReponseDifferee> retenues;
+  private final Map<String, Long> acquittees; // versions des secondaires
+  private final Map<String, Long> contacts; // date du dernier message reu
+  private String primaireConnu;
+  private long dernierLot; // date
+  private final Runnable propagation;
+  private final Runnable battement;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Construit un serveur rpliqu, membre du groupe spcifi, et fonctionnant
+   * en mode asynchrone. Le serveur doit tre ajout au groupe par l'appelant.
+   *
+   * @param n
+   *          nom du serveur
+   * @param g
+   *          nom du groupe de serveurs
+   */
+  public ServeurReplique(String n, String g) {
+    super(n, true);
+    groupe = g;
+    service = new ServiceBanquaire();
+    version = 0;
+    identifiantsLot = new ArrayList<Long>(TAILLE_LOT);
+    comptesLot = new ArrayList<String>(TAILLE_LOT);
+    soldesLot = new ArrayList<Float>(TAILLE_LOT);
+    differes = new ArrayList<Message>();
+    resultats = new LinkedHashMap<Long, Float>() {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Float> e) {
+        return size() > RESULTATS;
+      }
+    };
+    retenues = new ArrayDeque<ReponseDifferee>();
+    acquittees = new HashMap<String, Long>();
+    contacts = new HashMap<String, Long>();
+    propagation = new Runnable() {
+      @Override
+      public void run() {
+        propager();
+      }
+    };
+    battement = new Runnable() {
+      @Override
+      public void run() {
+        surveiller();
+      }
+    };
+  }
+
+  /**
+   * Retourne la version de l'tat du service de ce serveur, c'est--dire le
+   * nombre d'critures qu'il a appliques.
+   *
+   * @return la version de l'tat de ce serveur
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Indique si ce serveur est le primaire de son groupe.
+   *
+   * @return vrai si ce serveur est le primaire
+   */
+  public boolean estPrimaire() {
+    return primaire().equals(getNom());
+  }
+
+  /**
+   * Indique si ce serveur est encore membre de son groupe, c'est--dire s'il
+   * n'en a pas t exclu.
+   *
+   * @return vrai si ce serveur est membre de son groupe
+   */
+  public boolean estMembre() {
+    return membres().contains(getNom());
+  }
+
+  /**
+   * Retourne le solde d'un compte dans l'tat de ce serveur. Cette mthode
+   * est destine aux programmes de test, et ne doit tre appele que lorsque
+   * le serveur ne reoit plus de requtes.
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @return le solde du compte
+   * @throws IllegalArgumentException
+   *           si le compte spcifi n'existe pas
+   */
+  public float consulterSolde(String c) {
+    return service.consulterSolde(c);
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  @Override
+  public void programme() throws InterruptedException {
+    afficher("demarrage");
+    armer(DELAI_BATTEMENT, battement);
+  }
+
+  @Override
+  public void recevoir(Message m) {
+    if (!estMembre()) {
+      return;
+    }
+    Object c = m.getContenu();
+    String e = m.getEmetteur();
+    if (c instanceof Avancement) {
+      contacts.put(e, maintenant());
+      avancer(e, (Avancement) c);
+    } else if (c instanceof MiseAJour || c instanceof Transfert) {
+      // les messages d'un ancien primaire sont ignors
+      if (e.equals(primaire())) {
+        contacts.put(e, maintenant());
+        if (c instanceof MiseAJour) {
+          appliquer((MiseAJour) c);
+        } else {
+          installer((Transfert) c);
+        }
+        acquitter();
+        reprendreDifferes();
+      }
+    } else if (versionExigee(c) > version) {
+      differes.add(m);
+    } else {
+      delivrer(m);
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private void delivrer(Message m) {
+    String e = m.getEmetteur();
+    if (m.getContenu() instanceof RequeteGroupee) {
+      RequeteGroupee rg = (RequeteGroupee) m.getContenu();
+      List<Reponse> l = new ArrayList<Reponse>(rg.getNombre());
+      for (Requete rq : rg.getRequetes()) {
+        l.add(traiter(rq));
+      }
+      repondre(e, new Message(new ReponseGroupee(l)));
+    } else {
+      repondre(e, new Message(traiter((Requete) m.getContenu())));
+    }
+    if (comptesLot.size() >= TAILLE_LOT) {
+      propager();
+    }
+  }
+
+  private Reponse traiter(Requete rq) {
+    String c = rq.getCompte();
+    boolean lecture = rq.estConsultation()
+            && rq.getCoherence() == Coherence.LECTURE_ECRITURES;
+    if (!lecture && !estPrimaire()) {
+      afficher("requete " + rq.getIdentifiant() + " refusee : secondaire");
+      return new Reponse(rq.getIdentifiant(), new IllegalStateException(
+              "secondaire"), version);
+    }
+    Float r = rq.estConsultation() ? null : resultats.get(rq.getIdentifiant());
+    if (r != null) {
+      afficher("requete " + rq.getIdentifiant() + " deja executee");
+      return new Reponse(rq.getIdentifiant(), r, version);
+    }
+    try {
+      float s;
+      if (rq.estConsultation()) {
+        s = service.consulterSolde(c);
+      } else if (rq.estVirement()) {
+        String b = rq.getBeneficiaire();
+        s = service.virer(c, b, rq.getMontant());
+        ecrire(rq.getIdentifiant(), c, s);
+        ecrire(rq.getIdentifiant(), b, service.consulterSolde(b));
+      } else {
+        s = service.crediterDebiter(c, rq.getMontant());
+        ecrire(rq.getIdentifiant(), c, s);
+      }
+      if (Trace.estActif(Niveau.INFO)) {
+        afficher("compte : " + c + ", nouveau solde = " + s + " (version "
+                + version + ")");
+      }
+      return new Reponse(rq.getIdentifiant(), s, version);
+    } catch (IllegalArgumentException ex) {
+      afficher("compte " + c + " inexistant");
+      return new Reponse(rq.getIdentifiant(), ex, version);
+    } catch (IllegalStateException ex) {
+      afficher("compte " + c + " non approvisionn");
+      return new Reponse(rq.getIdentifiant(), ex, version);
+    }
+  }
+
+  private void ecrire(long id, String c, float s) {
+    version++;
+    identifiantsLot.add(id);
+    comptesLot.add(c);
+    soldesLot.add(s);
+    retenir(id, s);
+    if (comptesLot.size() == 1) {
+      armer(DELAI_LOT, propagation);
+    }
+  }
+
+  /*
+   * Le rsultat d'une requte est le solde de la premire mise  jour
+   * qu'elle produit : le compte dbit d'un virement.
+   */
+  private void retenir(long id, float s) {
+    if (!resultats.containsKey(id)) {
+      resultats.put(id, s);
+    }
+  }
+
+  /*
+   * Les versions des rponses retenues sont croissantes : une rponse dont
+   * la version est acquitte ne double aucune rponse retenue.
+   */
+  private void repondre(String c, Message m) {
+    if (!estPrimaire() || version <= confirmee()) {
+      envoyerFiable(c, m);
+    } else {
+      retenues.add(new ReponseDifferee(c, m, version, maintenant()));
+    }
+  }
+
+  private void propager() {
+    if (comptesLot.isEmpty() || !estMembre()) {
+      return;
+    }
+    MiseAJour mj = new MiseAJour(version - comptesLot.size() + 1,
+            identifiantsLot, comptesLot, soldesLot);
+    identifiantsLot.clear();
+    comptesLot.clear();
+    soldesLot.clear();
+    for (String s : membres()) {
+      if (!s.equals(getNom())) {
+        envoyerFiable(s, new Message(mj));
+      }
+    }
+    dernierLot = maintenant();
+  }
+
+  private void appliquer(MiseAJour mj) {
+    // les lots arrivent dans l'ordre, par le canal fiable du primaire
+    if (mj.getPremiere() != version + 1) {
+      throw new IllegalStateException("version=" + version + ", " + mj);
+    }
+    for (int i = 0; i < mj.getNombre(); i++) {
+      service.fixerSolde(mj.getCompte(i), mj.getSolde(i));
+      retenir(mj.getIdentifiant(i), mj.getSolde(i));
+    }
+    version = mj.getDerniere();
+  }
+
+  private void installer(Transfert t) {
+    for (int i = 0; i < t.getNombreComptes(); i++) {
+      service.fixerSolde(t.getCompte(i), t.getSolde(i));
+    }
+    resultats.clear();
+    for (int i = 0; i < t.getNombreResultats(); i++) {
+      resultats.put(t.getIdentifiant(i), t.getResultat(i));
+    }
+    version = t.getVersion();
+    afficher("transfert installe, version " + version);
+  }
+
+  /*
+   * Les avancements ne passent pas par un canal fiable : un acquittement
+   * perdu est renvoy en rponse au signe de vie suivant du primaire. Un
+   * secondaire rpond  chaque signe de vie, mme si le canal fiable retient
+   * un lot perdu : il n'est pas muet pour autant.
+   */
+  private void acquitter() {
+    envoyer(primaire(), new Message(new Avancement(version)));
+  }
+
+  private void avancer(String e, Avancement a) {
+    if (estPrimaire()) {
+      if (a.getVersion() > acquittee(e)) {
+        acquittees.put(e, a.getVersion());
+        liberer();
+      }
+    } else if (e.equals(primaire())) {
+      acquitter();
+    }
+  }
+
+  private void liberer() {
+    long v = confirmee();
+    while (!retenues.isEmpty() && retenues.peek().version <= v) {
+      ReponseDifferee r = retenues.poll();
+      envoyerFiable(r.client, r.message);
+    }
+  }
+
+  /*
+   * Plus grande version acquitte par tous les secondaires.
+   */
+  private long confirmee() {
+    long v = version;
+    for (String s : membres()) {
+      if (!s.equals(getNom())) {
+        v = Math.min(v, acquittee(s));
+      }
+    }
+    return v;
+  }
+
+  /*
+   * Excute par la minuterie de surveillance. Pendant une panne, le serveur
+   * ne surveille rien, et date de sa reprise le silence des autres membres.
+   */
+  private void surveiller() {
+    if (!estMembre()) {
+      return;
+    }
+    long t = maintenant();
+    if (estEnPanne()) {
+      for (String s : membres()) {
+        contacts.put(s, t);
+      }
+    } else if (estPrimaire()) {
+      surveillerSecondaires(t);
+    } else {
+      surveillerPrimaire(t);
+    }
+    armer(DELAI_BATTEMENT, battement);
+  }
+
+  private void surveillerSecondaires(long t) {
+    ReponseDifferee r = retenues.peek();
+    boolean inactif = t - dernierLot >= DELAI_BATTEMENT;
+    for (String s : membres()) {
+      if (s.equals(getNom())) {
+        continue;
+      }
+      if (r != null && acquittee(s) < r.version
+              && t - Math.max(contact(s), r.date) > DELAI_PANNE
+              && getSimulation().toGroupe(groupe).exclure(s, getNom())) {
+        afficher("exclusion de " + s + " : secondaire muet");
+      } else if (inactif || acquittee(s) < version) {
+        envoyer(s, new Message(new Avancement(version)));
+      }
+    }
+    liberer();
+  }
+
+  private void surveillerPrimaire(long t) {
+    String p = primaire();
+    if (!p.equals(primaireConnu)) {
+      primaireConnu = p;
+      contacts.put(p, t);
+    }
+    long delai = membres().indexOf(getNom()) * DELAI_PANNE;
+    if (t - contact(p) > delai
+            && getSimulation().toGroupe(groupe).exclure(p, getNom())) {
+      afficher("exclusion de " + p + " : primaire muet");
+      if (estPrimaire()) {
+        promouvoir();
+      }
+    }
+  }
+
+  private void promouvoir() {
+    afficher("promotion, version " + version);
+    Transfert tr = new Transfert(version, service, resultats);
+    acquittees.clear();
+    for (String s : membres()) {
+      if (!s.equals(getNom())) {
+        envoyerFiable(s, new Message(tr));
+      }
+    }
+    dernierLot = maintenant();
+  }
+
+  private void reprendreDifferes() {
+    Iterator<Message> i = differes.iterator();
+    while (i.hasNext()) {
+      Message m = i.next();
+      if (versionExigee(m.getContenu()) <= version) {
+        i.remove();
+        delivrer(m);
+      }
+    }
+  }
+
+  private static long versionExigee(Object c) {
+    if (c instanceof Requete) {
+      return ((Requete) c).getVersion();
+    }
+    long v = 0;
+    if (c instanceof RequeteGroupee) {
+      for (Requete rq : ((RequeteGroupee) c).getRequetes()) {
+        v = Math.max(v, rq.getVersion());
+      }
+    }
+    return v;
+  }
+
+  private long acquittee(String s) {
+    Long v = acquittees.get(s);
+    return v == null ? 0 : v;
+  }
+
+  private long contact(String s) {
+    Long d = contacts.get(s);
+    return d == null ? 0 : d;
+  }
+
+  private List<String> membres() {
+    return getSimulation().toGroupe(groupe).getMembres();
+  }
+
+  private String primaire() {
+    return membres().get(0);
+  }
+
+}
@@ -1,7 +1,11 @@
 package application;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Implmente un service de gestion de comptes bancaires. Les comptes sont
@@ -15,16 +19,50 @@ import java.util.Map;
  * <li>Durand, solde 0.00 E
  * <li>Martin, solde 100.00 E
  * </ul>
+ * D'autres comptes peuvent tre ouverts par
+ * {@link #ouvrirCompte(String, float)}.
+ * <p>
+ * Le service peut tre utilis par plusieurs threads simultanment : les
+ * oprations portant sur des comptes diffrents ne se bloquent pas
+ * mutuellement (voir {@link Comptes}).
+ * <p>
+ * Un service cr par {@link #ouvrir(File, long)} est durable : chaque
+ * modification est enregistre dans un {@link Journal}, et le service prend
+ * priodiquement un {@link Instantane} de ses comptes.  l'ouverture, le
+ * service charge le dernier instantan et rejoue la fin du journal. Les
+ * modifications ne sont durables qu'aprs l'appel de {@link #synchroniser()},
+ * qui force le journal sur disque par validation groupe : un serveur rpond
+ *  ses clients aprs avoir synchronis le service une fois par message
+ * trait, et des threads synchronisant simultanment partagent le mme
+ * forage. Une modification et son enregistrement sont faits sous le verrou
+ * du compte, tir d'une table de {@link #VERROUS} verrous indexe par son
+ * nom, pour que les enregistrements d'un compte soient dans l'ordre de ses
+ * modifications : les modifications de comptes diffrents ne s'attendent
+ * pas, le journal les ajoutant sans verrou.
  *
  * @author Jean-Michel Busca
  *
  */
 public class ServiceBanquaire {
 
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  static final String[] PREDEFINIS = { "Dupont", "Durand", "Martin" };
+  static final float[] SOLDES_PREDEFINIS = { -100.0f, 0.0f, +100.0f };
+  static final int VERROUS = 256; // puissance de 2
+
   //
   // ATTRIBUTS D'OBJET
   //
-  private final Map<String, Float> comptes;
+  private final Comptes comptes;
+
+  // service durable seulement
+  private final File repertoire;
+  private final Journal journal;
+  private final Object[] verrous; // par compte, null si non durable
+  private final long periode; // octets de journal entre deux instantans
+  private final AtomicBoolean photographie; // instantan en cours
 
   //
   // CONSTRUCTEURS ET ACCESSEURS
@@ -34,10 +72,99 @@ public class ServiceBanquaire {
    *
    */
   public ServiceBanquaire() {
-    comptes = new HashMap<String, Float>();
-    comptes.put("Dupont", -100.0f);
-    comptes.put("Durand", 0.0f);
-    comptes.put("Martin", +100.0f);
+    this(true);
+  }
+
+  /**
+   * Cre un nouvel objet ServiceBanquaire, avec ou sans les trois comptes
+   * pr-dfinis.
+   *
+   * @param p
+   *          vrai pour ouvrir les comptes pr-dfinis
+   */
+  public ServiceBanquaire(boolean p) {
+    this(new Comptes(), null, null, 0);
+    for (int i = 0; p && i < PREDEFINIS.length; i++) {
+      comptes.ouvrir(PREDEFINIS[i], SOLDES_PREDEFINIS[i]);
+    }
+  }
+
+  private ServiceBanquaire(Comptes cs, File r, Journal j, long p) {
+    comptes = cs;
+    repertoire = r;
+    journal = j;
+    verrous = j == null ? null : new Object[VERROUS];
+    for (int i = 0; j != null && i < VERROUS; i++) {
+      verrous[i] = new Object();
+    }
+    periode = p;
+    photographie = new AtomicBoolean();
+  }
+
+  /**
+   * Ouvre un service bancaire durable, dont l'tat est conserv dans le
+   * rpertoire spcifi. Si le rpertoire est vide, le service est cr avec
+   * les trois comptes pr-dfinis ; sinon, son tat est rcupr.
+   *
+   * @param r
+   *          rpertoire du service, cr si ncessaire
+   * @param p
+   *          taille de journal, en octets, au-del de laquelle prendre un
+   *          instantan
+   * @return le service ouvert
+   * @throws IOException
+   *           en cas d'erreur de lecture ou d'criture
+   */
+  public static ServiceBanquaire ouvrir(File r, long p) throws IOException {
+    if (!r.isDirectory() && !r.mkdirs()) {
+      throw new IOException("repertoire inaccessible : " + r);
+    }
+    Comptes cs = new Comptes();
+    long s = Instantane.charger(r, cs);
+    Journal j = Journal.recuperer(r, s, cs);
+    ServiceBanquaire sb = new ServiceBanquaire(cs, r, j, p);
+    if (cs.getNombre() == 0) {
+      for (int i = 0; i < PREDEFINIS.length; i++) {
+        sb.ouvrirCompte(PREDEFINIS[i], SOLDES_PREDEFINIS[i]);
+      }
+      sb.synchroniser();
+    }
+    return sb;
+  }
+
+  /**
+   * Retourne le nombre de comptes de ce service.
+   *
+   * @return le nombre de comptes
+   */
+  public int getNombreComptes() {
+    return comptes.getNombre();
+  }
+
+  /**
+   * Indique si le compte spcifi existe.
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @return vrai si le compte existe
+   */
+  public boolean existeCompte(String c) {
+    return comptes.identifiant(c) >= 0;
+  }
+
+  /**
+   * Retourne les noms des propritaires des comptes de ce service, dans
+   * l'ordre d'ouverture des comptes.
+   *
+   * @return la liste des noms
+   */
+  public List<String> listerComptes() {
+    int n = comptes.getNombre();
+    List<String> l = new ArrayList<String>(n);
+    for (int id = 0; id < n; id++) {
+      l.add(comptes.nom(id));
+    }
+    return l;
   }
 
   //
@@ -53,11 +180,7 @@ public class ServiceBanquaire {
    *           si le compte spcifi n'existe pas
    */
   public float consulterSolde(String c) {
-    Float s = comptes.get(c);
-    if (s == null) {
-      throw new IllegalArgumentException("c");
-    }
-    return s;
+    return comptes.solde(identifiant(c));
   }
 
   /**
@@ -74,16 +197,180 @@ public class ServiceBanquaire {
    *           si un dbit est demand et le solde du compte est insuffisant
    */
   public float crediterDebiter(String c, float m) {
-    Float s = comptes.get(c);
-    if (s == null) {
-      throw new IllegalArgumentException("c");
+    int id = identifiant(c);
+    if (journal == null) {
+      return comptes.crediterDebiter(id, m);
     }
-    if (m < 0 && (s + m) < 0) {
-      throw new IllegalStateException();
+    synchronized (verrou(c)) {
+      float s = comptes.crediterDebiter(id, m);
+      journal.ajouter(c, s);
+      return s;
+    }
+  }
+
+  /**
+   * Vire le montant spcifi d'un compte vers un autre. Le virement n'est pas
+   * atomique vis--vis des oprations concurrentes : un appelant excutant
+   * d'autres oprations en parallle doit les exclure des deux comptes.
+   *
+   * @param c
+   *          nom du propritaire du compte  dbiter
+   * @param b
+   *          nom du propritaire du compte  crditer
+   * @param m
+   *          montant du virement, strictement positif
+   * @return le nouveau solde du compte dbit
+   * @throws IllegalArgumentException
+   *           si l'un des comptes spcifis n'existe pas
+   * @throws IllegalStateException
+   *           si le solde du compte  dbiter est insuffisant
+   */
+  public float virer(String c, String b, float m) {
+    int ib = identifiant(b);
+    int ic = identifiant(c);
+    if (journal == null) {
+      float s = comptes.crediterDebiter(ic, -m);
+      comptes.crediterDebiter(ib, m);
+      return s;
+    }
+    // le virement n'tant pas atomique, chaque compte est modifi et
+    // enregistr sous son seul verrou
+    float s;
+    synchronized (verrou(c)) {
+      s = comptes.crediterDebiter(ic, -m);
+      journal.ajouter(c, s);
+    }
+    synchronized (verrou(b)) {
+      journal.ajouter(b, comptes.crediterDebiter(ib, m));
     }
-    s += m;
-    comptes.put(c, s);
     return s;
   }
 
+  /**
+   * Fixe le solde du compte spcifi, sans contrle. Cette mthode permet 
+   * une rplique du service d'appliquer les rsultats des oprations
+   * excutes par le serveur primaire (voir {@link ServeurReplique}).
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @param s
+   *          nouveau solde du compte
+   * @throws IllegalArgumentException
+   *           si le compte spcifi n'existe pas
+   */
+  public void fixerSolde(String c, float s) {
+    int id = identifiant(c);
+    if (journal == null) {
+      comptes.fixer(id, s);
+      return;
+    }
+    synchronized (verrou(c)) {
+      comptes.fixer(id, s);
+      journal.ajouter(c, s);
+    }
+  }
+
+  /**
+   * Ouvre un nouveau compte.
+   *
+   * @param c
+   *          nom du propritaire du compte
+   * @param s
+   *          solde initial du compte
+   * @throws IllegalArgumentException
+   *           si le compte spcifi existe dj
+   */
+  public void ouvrirCompte(String c, float s) {
+    if (journal == null) {
+      comptes.ouvrir(c, s);
+      return;
+    }
+    synchronized (verrou(c)) {
+      comptes.ouvrir(c, s);
+      journal.ajouter(c, s);
+    }
+  }
+
+  //
+  // DURABILITE
+  //
+  /**
+   * Rend durables les modifications faites jusqu'ici par le thread appelant,
+   * et prend un instantan si le journal a dpass sa taille maximale. Sans
+   * effet si le service n'est pas durable.
+   *
+   * @throws UncheckedIOException
+   *           en cas d'erreur d'criture
+   */
+  public void synchroniser() {
+    if (journal == null) {
+      return;
+    }
+    try {
+      journal.synchroniser(journal.getDernier());
+      if (journal.getTailleSegment() >= periode
+              && photographie.compareAndSet(false, true)) {
+        try {
+          photographier();
+        } finally {
+          photographie.set(false);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Prend un instantan des comptes, puis supprime les segments du journal
+   * qu'il couvre. Les critures ne sont pas interrompues pendant l'criture
+   * de l'instantan.
+   *
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   * @throws IllegalStateException
+   *           si le service n'est pas durable
+   */
+  public synchronized void photographier() throws IOException {
+    if (journal == null) {
+      throw new IllegalStateException();
+    }
+    long s = journal.basculer();
+    Instantane.ecrire(repertoire, comptes, s);
+    journal.purger(s);
+  }
+
+  /**
+   * Rend durables toutes les modifications, et ferme le journal du service.
+   * Le service ne doit plus tre modifi ensuite.
+   *
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  public void fermer() throws IOException {
+    if (journal != null) {
+      journal.fermer();
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /*
+   * Le verrou est tir du nom, et non de l'identifiant : l'ouverture d'un
+   * compte prend le mme verrou que ses modifications.
+   */
+  private Object verrou(String c) {
+    int h = c.hashCode();
+    return verrous[(h ^ (h >>> 16)) & (VERROUS - 1)];
+  }
+
+  private int identifiant(String c) {
+    int i = comptes.identifiant(c);
+    if (i < 0) {
+      throw new IllegalArgumentException("c");
+    }
+    return i;
+  }
+
 }
@@ -0,0 +1,148 @@
+package application;
+
+import infrastructure.Codec;
+import infrastructure.Codecs;
+import infrastructure.Entree;
+import infrastructure.Partageable;
+import infrastructure.Sortie;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Etat complet d'un {@link ServeurReplique}, transfr par le serveur qui
+ * succde au primaire d'un groupe  ses serveurs secondaires : les soldes de
+ * tous les comptes  une version donne, et les rsultats des dernires
+ * requtes excutes, indexs par identifiant de requte. Un secondaire qui
+ * reoit un transfert remplace son tat par celui du transfert, mme s'il
+ * avait appliqu des {@link MiseAJour}s de l'ancien primaire que son
+ * successeur n'a pas reues. Un transfert est immuable, et peut donc tre
+ * livr sans copie.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class Transfert implements Partageable {
+
+  private static final long serialVersionUID = 1L;
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class CodecTransfert implements Codec<Transfert> {
+
+    @Override
+    public void encoder(Transfert t, Sortie s) throws IOException {
+      s.ecrireLong(t.version);
+      s.ecrireEntier(t.comptes.length);
+      for (int i = 0; i < t.comptes.length; i++) {
+        s.ecrireChaine(t.comptes[i]);
+        s.ecrireFlottant(t.soldes[i]);
+      }
+      s.ecrireEntier(t.identifiants.length);
+      for (int i = 0; i < t.identifiants.length; i++) {
+        s.ecrireLong(t.identifiants[i]);
+        s.ecrireFlottant(t.resultats[i]);
+      }
+    }
+
+    @Override
+    public Transfert decoder(Entree e) throws IOException {
+      long v = e.lireLong();
+      String[] c = new String[e.lireEntier()];
+      float[] s = new float[c.length];
+      for (int i = 0; i < c.length; i++) {
+        c[i] = e.lireChaine();
+        s[i] = e.lireFlottant();
+      }
+      long[] id = new long[e.lireEntier()];
+      float[] r = new float[id.length];
+      for (int i = 0; i < id.length; i++) {
+        id[i] = e.lireLong();
+        r[i] = e.lireFlottant();
+      }
+      return new Transfert(v, c, s, id, r);
+    }
+  }
+
+  static {
+    Codecs.enregistrer(Transfert.class, new CodecTransfert());
+  }
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final long version;
+  private final String[] comptes;
+  private final float[] soldes;
+  private final long[] identifiants;
+  private final float[] resultats;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  public Transfert(long v, ServiceBanquaire sb, Map<Long, Float> r) {
+    this(v, comptes(sb), null, new long[r.size()], new float[r.size()]);
+    for (int i = 0; i < comptes.length; i++) {
+      soldes[i] = sb.consulterSolde(comptes[i]);
+    }
+    int i = 0;
+    for (Map.Entry<Long, Float> e : r.entrySet()) {
+      identifiants[i] = e.getKey();
+      resultats[i] = e.getValue();
+      i++;
+    }
+  }
+
+  private Transfert(long v, String[] c, float[] s, long[] id, float[] r) {
+    this.version = v;
+    this.comptes = c;
+    this.soldes = s == null ? new float[c.length] : s;
+    this.identifiants = id;
+    this.resultats = r;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public int getNombreComptes() {
+    return comptes.length;
+  }
+
+  public String getCompte(int i) {
+    return comptes[i];
+  }
+
+  public float getSolde(int i) {
+    return soldes[i];
+  }
+
+  public int getNombreResultats() {
+    return identifiants.length;
+  }
+
+  public long getIdentifiant(int i) {
+    return identifiants[i];
+  }
+
+  public float getResultat(int i) {
+    return resultats[i];
+  }
+
+  @Override
+  public String toString() {
+    return "Transfert [version=" + version + ", comptes=" + comptes.length
+            + ", resultats=" + identifiants.length + "]";
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private static String[] comptes(ServiceBanquaire sb) {
+    List<String> l = sb.listerComptes();
+    return l.toArray(new String[l.size()]);
+  }
+
+}
@@ -0,0 +1,89 @@
+package infrastructure;
+
+import java.util.Random;
+
+/**
+ * Gnrateurs alatoires de la simulation. Tous les tirages alatoires de la
+ * simulation sont faits dans des flux drivs d'une graine unique : deux
+ * simulations de mme graine placent les calculateurs aux mmes positions,
+ * tirent les mmes gigues et, en temps virtuel, livrent les messages dans le
+ * mme ordre.
+ * <p>
+ * La graine est donne par la proprit systme
+ * <code>infrastructure.graine</code> ; elle est tire de l'horloge si cette
+ * proprit est absente, et doit alors tre releve par {@link #getGraine()}
+ * pour pouvoir rejouer la simulation.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Aleatoire {
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static volatile long graine = Long.getLong("infrastructure.graine",
+          System.currentTimeMillis());
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  private Aleatoire() {
+  }
+
+  public static long getGraine() {
+    return graine;
+  }
+
+  /**
+   * Fixe la graine de la simulation. Cette mthode doit tre appele avant la
+   * cration des calculateurs.
+   *
+   * @param g
+   *          nouvelle graine
+   */
+  public static void setGraine(long g) {
+    graine = g;
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Retourne un nouveau flux alatoire, driv de la graine de la simulation
+   * et du nom spcifi. Deux appels avec le mme nom retournent des flux
+   * identiques ; deux noms diffrents donnent des flux indpendants.
+   *
+   * @param n
+   *          nom du flux, typiquement le nom du calculateur qui l'utilise
+   * @return le flux alatoire
+   */
+  public static Random flux(String n) {
+    return flux(graine, n);
+  }
+
+  /**
+   * Retourne un nouveau flux alatoire, driv de la graine et du nom
+   * spcifis, par exemple la graine d'une {@link Simulation}.
+   *
+   * @param g
+   *          graine dont driver le flux
+   * @param n
+   *          nom du flux
+   * @return le flux alatoire
+   */
+  static Random flux(long g, String n) {
+    return new Random(melanger(g + melanger(n.hashCode())));
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  // fonction de mlange de SplitMix64
+  private static long melanger(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+}
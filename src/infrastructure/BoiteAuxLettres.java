@@ -0,0 +1,137 @@
+package infrastructure;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bote aux lettres d'un {@link Calculateur} synchrone : file sans verrou 
+ * producteurs multiples (les threads de livraison) et consommateur unique (le
+ * thread du programme principal du calculateur).
+ * <p>
+ * Le dpt et le retrait d'un message se font en temps constant. Le
+ * consommateur en attente est suspendu par l'{@link Ordonnanceur}, et rveill
+ * par le producteur qui lui dpose un message.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+final class BoiteAuxLettres {
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class Noeud {
+
+    Message message;
+    volatile Noeud suivant;
+
+    Noeud(Message m) {
+      message = m;
+    }
+  }
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Calculateur proprietaire;
+  private final AtomicReference<Noeud> queue; // dernier noeud dpos
+  private Noeud tete; // noeud dj retir, prcdant le prochain message
+  private volatile Thread consommateur; // non nul si en attente
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  BoiteAuxLettres(Calculateur c) {
+    proprietaire = c;
+    tete = new Noeud(null);
+    queue = new AtomicReference<Noeud>(tete);
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Dpose un message dans la bote. Cette mthode peut tre appele par
+   * plusieurs threads simultanment.
+   *
+   * @param m
+   *          message  dposer
+   */
+  void deposer(Message m) {
+    Noeud n = new Noeud(m);
+    proprietaire.getMesures().entrer();
+    Noeud p = queue.getAndSet(n);
+    p.suivant = n;
+    Thread c = consommateur;
+    if (c != null) {
+      proprietaire.getSimulation().getOrdonnanceur().reveiller(c);
+    }
+  }
+
+  /**
+   * Retire le prochain message de la bote, sans attendre. Cette mthode ne
+   * doit tre appele que par le consommateur.
+   *
+   * @return le message retir, ou null si la bote est vide
+   */
+  Message retirer() {
+    Noeud n = tete.suivant;
+    if (n == null) {
+      if (queue.get() == tete) {
+        return null;
+      }
+
+      // un producteur a insr son noeud sans l'avoir encore chan
+      while ((n = tete.suivant) == null) {
+        Thread.onSpinWait();
+      }
+    }
+    Message m = n.message;
+    n.message = null;
+    tete = n;
+    proprietaire.getMesures().sortir();
+    return m;
+  }
+
+  /**
+   * Retire le prochain message de la bote, en l'attendant si ncessaire.
+   * Cette mthode ne doit tre appele que par le consommateur.
+   *
+   * @param delai
+   *          dlai d'attente maximal en millisecondes, 0 pour attendre
+   *          indfiniment
+   * @return le message retir, ou null si le dlai a expir
+   * @throws InterruptedException
+   *           si le consommateur est interrompu
+   */
+  Message attendre(long delai) throws InterruptedException {
+    Ordonnanceur o = proprietaire.getSimulation().getOrdonnanceur();
+    long fin = o.maintenant() + delai;
+    while (true) {
+      Message m = retirer();
+      if (m != null) {
+        return m;
+      }
+      consommateur = Thread.currentThread();
+      try {
+
+        // revrifier aprs s'tre dclar, pour ne pas manquer de rveil
+        m = retirer();
+        if (m != null) {
+          return m;
+        }
+        if (delai > 0) {
+          long r = fin - o.maintenant();
+          if (r <= 0) {
+            return null;
+          }
+          o.suspendre(proprietaire, r);
+        } else {
+          o.suspendre(proprietaire, 0);
+        }
+      } finally {
+        consommateur = null;
+      }
+    }
+  }
+
+}
@@ -1,12 +1,10 @@
 package infrastructure;
 
-import java.util.ArrayList;
-import java.util.Formatter;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Un calculateur du simulateur de systme rparti. Un calculateur peut
@@ -18,11 +16,18 @@ import java.util.TimerTask;
  * <li>synchrone : la mthode d'attente des messages est {@link #attendre()} ;
  * le thread excutant le programme principal est lanc en mode defaut.
  * </ul>
+ * Un calculateur n'est pas lanc  sa cration : son programme principal
+ * dmarre  l'appel de {@link #demarrer()}, dans un thread systme ou
+ * virtuel selon le {@link ModeExecution} choisi.
+ * <p>
+ * Un calculateur appartient  la {@link Simulation} courante du thread qui
+ * le cre ; son nom y est unique, et c'est dans cette simulation que sont
+ * rsolus les noms de ses destinataires.
  *
  * @author Jean-Michel Busca
  *
  */
-public abstract class Calculateur extends Thread {
+public abstract class Calculateur implements Runnable {
 
   //
   // CLASSES INTERNES
@@ -33,44 +38,73 @@ public abstract class Calculateur extends Thread {
    * @author Busca
    *
    */
-  private static class Envoi extends TimerTask {
+  private static class Envoi implements Runnable {
 
     private final Message message;
     private final Calculateur destinataire;
+    private final int taille;
+    private final long echeance; // date prvue (nanoTime), 0 si virtuel
 
-    Envoi(Message m, Calculateur d) {
+    Envoi(Message m, Calculateur d, int t, long delai) {
       message = m;
       destinataire = d;
+      taille = t;
+      echeance = d.ordonnanceur instanceof OrdonnanceurTempsReel ? System
+              .nanoTime() + TimeUnit.MILLISECONDS.toNanos(delai) : 0;
     }
 
     @Override
     public void run() {
-      synchronized (destinataire) {
-        if (destinataire.estAsynchrone) {
-          destinataire.afficher("reception " + message + " (asynchrone)");
-          destinataire.recevoir(message);
-        } else {
-          destinataire.messages.add(message);
-          destinataire.notifyAll();
-        }
+      if (!Pannes.livrable(message.getEmetteur(), destinataire)) {
+        return;
+      }
+      Mesures ms = destinataire.mesures;
+      if (echeance != 0) {
+        ms.getRetard().enregistrer((System.nanoTime() - echeance) / 1000);
       }
+      ms.compterReception(taille);
+      try {
+        message.verifierContenu();
+      } catch (IllegalStateException e) {
+        destinataire.afficher(Niveau.ERREUR, "ERREUR " + e.getMessage());
+        throw e;
+      }
+      destinataire.livrer(message);
     }
   }
 
   //
   // ATTRIBUTS DE CLASSE
   //
-  private static final Map<String, Calculateur> instances = new HashMap<String, Calculateur>();
-  private static final Timer ordonnanceur = new Timer(true);
-  private static final long debut = System.currentTimeMillis();
+  private static final float NON_CALCULEE = -1.0f;
+  private static volatile boolean verificationPartage = Boolean
+          .getBoolean("infrastructure.partage.verification");
+  private static volatile ModeExecution modeExecution = ModeExecution
+          .valueOf(System.getProperty("infrastructure.execution", "PLATEFORME")
+                  .toUpperCase());
 
   //
   // ATTRIBUTS D'OBJET
   //
   private final String nom;
+  private final Simulation simulation;
+  private final Ordonnanceur ordonnanceur;
+  private final String libelle; // nom dans la trace
+  private final int numero;
+  private final Random aleatoire;
   private final Position position;
-  private final List<Message> messages;
+  private volatile float[] latences;
+  private volatile Random[] gigues; // par destinataire, null si non cr
+  private final Lien lien;
+  private volatile boolean enPanne;
+  private final BoiteAuxLettres messages;
   private final boolean estAsynchrone;
+  private final ReentrantLock verrou;
+  private final DiffusionTotale diffusionTotale;
+  private final CanalFiable canalFiable;
+  private final AtomicLong numeroDiffusion;
+  private final Mesures mesures;
+  private Thread thread;
 
   //
   // CONSTRUCTEURS ET ACCESSEURS
@@ -96,15 +130,24 @@ public abstract class Calculateur extends Thread {
    */
   public Calculateur(String n, boolean a) {
     nom = n;
-    if (instances.get(nom) != null) {
-      throw new IllegalArgumentException("n");
-    }
-    instances.put(nom, this);
-    position = Reseau.newPosition();
-    messages = new ArrayList<Message>();
+    simulation = Simulation.courante();
+    ordonnanceur = simulation.getOrdonnanceur();
+    libelle = simulation.prefixer(nom);
+    numero = simulation.numeroter();
+    aleatoire = Aleatoire.flux(simulation.getGraine(), nom);
+    position = simulation.getModeleReseau().placer(nom, aleatoire);
+    latences = new float[0];
+    gigues = new Random[0];
+    lien = new Lien(ordonnanceur);
+    messages = new BoiteAuxLettres(this);
     estAsynchrone = a;
-    setDaemon(a);
-    start();
+    verrou = new ReentrantLock();
+    diffusionTotale = new DiffusionTotale(this);
+    canalFiable = new CanalFiable(this);
+    numeroDiffusion = new AtomicLong();
+    mesures = new Mesures(simulation, nom);
+    simulation.inscrire(this);
+    Supervision.inscrire(simulation, mesures);
   }
 
   /**
@@ -117,17 +160,235 @@ public abstract class Calculateur extends Thread {
     return nom;
   }
 
+  /**
+   * Retourne la simulation  laquelle appartient ce calculateur.
+   *
+   * @return la simulation de ce calculateur
+   */
+  public final Simulation getSimulation() {
+    return simulation;
+  }
+
+  /**
+   * Retourne le numro de ce calculateur, attribu dans l'ordre de cration
+   * des calculateurs de sa simulation  partir de 0 (voir
+   * {@link #envoyer(int, Message)}).
+   *
+   * @return le numro de ce calculateur
+   */
+  public int getNumero() {
+    return numero;
+  }
+
+  /**
+   * Retourne le flux alatoire propre  ce calculateur, driv de la graine
+   * de la simulation (voir {@link Aleatoire}). Les programmes doivent y faire
+   * tous leurs tirages pour que la simulation soit reproductible.
+   *
+   * @return le flux alatoire de ce calculateur
+   */
+  public final Random getAleatoire() {
+    return aleatoire;
+  }
+
+  /**
+   * Retourne le lien de sortie de ce calculateur vers le rseau, qui permet
+   * d'en fixer le dbit et d'en consulter les statistiques.
+   *
+   * @return le lien de sortie de ce calculateur
+   */
+  public final Lien getLien() {
+    return lien;
+  }
+
+  /**
+   * Retourne les mesures d'activit de ce calculateur : messages et octets
+   * envoys et reus, profondeur de sa file de messages, retards de
+   * livraison et temps de service (voir {@link Mesures}).
+   *
+   * @return les mesures de ce calculateur
+   */
+  public final Mesures getMesures() {
+    return mesures;
+  }
+
+  /**
+   * Retourne le mode d'excution utilis par dfaut par {@link #demarrer()}.
+   *
+   * @return le mode d'excution par dfaut
+   */
+  public static ModeExecution getModeExecution() {
+    return modeExecution;
+  }
+
+  /**
+   * Fixe le mode d'excution utilis par dfaut par {@link #demarrer()}, pour
+   * l'ensemble de la simulation. La valeur initiale est donne par la
+   * proprit systme <code>infrastructure.execution</code> (PLATEFORME si
+   * absente).
+   *
+   * @param m
+   *          le nouveau mode d'excution par dfaut
+   */
+  public static void setModeExecution(ModeExecution m) {
+    if (m == null) {
+      throw new IllegalArgumentException("m");
+    }
+    modeExecution = m;
+  }
+
   @Override
   public String toString() {
     return nom;
   }
 
+  /**
+   * Retourne l'ordonnanceur des livraisons de messages de la simulation
+   * courante.
+   *
+   * @return l'ordonnanceur courant
+   */
+  public static Ordonnanceur getOrdonnanceur() {
+    return Simulation.courante().getOrdonnanceur();
+  }
+
+  /**
+   * Remplace l'ordonnanceur des livraisons de messages de la simulation
+   * courante (voir {@link Simulation#setOrdonnanceur(Ordonnanceur)}). Cette
+   * mthode doit tre appele avant la cration des calculateurs.
+   *
+   * @param o
+   *          le nouvel ordonnanceur
+   */
+  public static void setOrdonnanceur(Ordonnanceur o) {
+    Simulation.courante().setOrdonnanceur(o);
+  }
+
+  /**
+   * Retourne le modle de topologie et de latences du rseau de la
+   * simulation courante.
+   *
+   * @return le modle de rseau courant
+   */
+  public static ModeleReseau getModeleReseau() {
+    return Simulation.courante().getModeleReseau();
+  }
+
+  /**
+   * Remplace le modle de topologie et de latences du rseau de la
+   * simulation courante (voir {@link Simulation#setModeleReseau}). Les
+   * calculateurs tant placs  leur cration, et leurs latences de base
+   * mmorises, cette mthode doit tre appele avant la cration des
+   * calculateurs.
+   * <p>
+   * Par dfaut, le modle est un {@link ModeleSphere} (voir {@link Reseau}).
+   *
+   * @param m
+   *          le nouveau modle de rseau
+   */
+  public static void setModeleReseau(ModeleReseau m) {
+    Simulation.courante().setModeleReseau(m);
+  }
+
+  //
+  // CYCLE DE VIE
+  //
+  /**
+   * Lance le programme principal de ce calculateur dans le mode d'excution
+   * par dfaut.
+   *
+   * @throws IllegalStateException
+   *           si ce calculateur est dj lanc
+   */
+  public final void demarrer() {
+    demarrer(modeExecution);
+  }
+
+  /**
+   * Lance le programme principal de ce calculateur dans le mode d'excution
+   * spcifi.
+   *
+   * @param m
+   *          mode d'excution du programme principal
+   * @throws IllegalStateException
+   *           si ce calculateur est dj lanc, ou si le mode spcifi n'est
+   *           pas disponible
+   */
+  public final synchronized void demarrer(ModeExecution m) {
+    if (thread != null) {
+      throw new IllegalStateException("deja demarre");
+    }
+    thread = m.creer(this, nom, estAsynchrone);
+    ordonnanceur.activer();
+    thread.start();
+  }
+
+  /**
+   * Attend la fin du programme principal de ce calculateur.
+   *
+   * @throws InterruptedException
+   *           si le thread appelant est interrompu
+   */
+  public final void joindre() throws InterruptedException {
+    Thread t;
+    synchronized (this) {
+      t = thread;
+    }
+    if (t != null) {
+      t.join();
+    }
+  }
+
+  /**
+   * Interrompt le programme principal de ce calculateur.
+   */
+  public final synchronized void interrompre() {
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * Simule la panne franche de ce calculateur : jusqu' sa reprise, les
+   * messages qu'il envoie et ceux qui lui sont livrs sont perdus. Son
+   * programme principal n'est pas interrompu ; il peut consulter
+   * {@link #estEnPanne()} pour cesser son activit. L'tat du calculateur est
+   * conserv pendant la panne.
+   */
+  public final void tomberEnPanne() {
+    if (!enPanne) {
+      enPanne = true;
+      Pannes.compterArret(this);
+      afficher("panne");
+    }
+  }
+
+  /**
+   * Met fin  la panne de ce calculateur (voir {@link #tomberEnPanne()}).
+   */
+  public final void reprendre() {
+    if (enPanne) {
+      enPanne = false;
+      afficher("reprise");
+    }
+  }
+
+  /**
+   * Indique si ce calculateur est en panne.
+   *
+   * @return vrai si ce calculateur est en panne
+   */
+  public final boolean estEnPanne() {
+    return enPanne;
+  }
+
   //
   // PROGRAMME DU CALCULATEUR
   //
   /**
-   * Programme principal du calculateur, lanc  sa cration. Cette mthode est
-   * destine  tre implment dans les sous-classes de Calculateur.
+   * Programme principal du calculateur, lanc par {@link #demarrer()}. Cette
+   * mthode est destine  tre implment dans les sous-classes de
+   * Calculateur.
    * <p>
    * Pour simplifier la programmation, cette mthode est autorise  lancer
    * l'exception InterruptedException (pas de try/catch  crire).
@@ -140,7 +401,11 @@ public abstract class Calculateur extends Thread {
   // ENVOI/RECEPTION DE MESSAGES
   //
   /**
-   * Envoie un message  un calculateur destinataire.
+   * Envoie un message  un calculateur destinataire. Le destinataire reoit
+   * une copie du message, sauf si son contenu est partageable (voir
+   * {@link Message#estPartageable()}). Le dlai de livraison comprend
+   * l'attente et la transmission sur le {@link Lien} de sortie de ce
+   * calculateur, puis la latence du {@link Reseau}.
    *
    * @param n
    *          nom du calculateur destinataire
@@ -148,13 +413,39 @@ public abstract class Calculateur extends Thread {
    *          message  lui envoyer
    */
   public final void envoyer(String n, Message m) {
-    Calculateur d = toCalculateur(n);
-    m.setEmetteur(nom);
-    m.setDestinataire(n);
-    long l = Reseau.latence(this.position, d.position);
-    afficher("envoi     " + m + " (latence=" + l + "ms)");
-    m = (Message) new Serialisation(m).copie();
-    ordonnanceur.schedule(new Envoi(m, d), l);
+    envoyer(simulation.toCalculateur(n), m);
+  }
+
+  /**
+   * Envoie un message au calculateur de numro spcifi, comme
+   * {@link #envoyer(String, Message)}. Le destinataire est trouv par une
+   * simple lecture de tableau : un programme qui envoie de nombreux messages
+   * au mme destinataire rsout une fois son nom en numro, par
+   * {@link Simulation#resoudre(String)}.
+   *
+   * @param d
+   *          numro du calculateur destinataire dans la simulation
+   * @param m
+   *          message  lui envoyer
+   */
+  public final void envoyer(int d, Message m) {
+    envoyer(simulation.toCalculateur(d), m);
+  }
+
+  /**
+   * Active ou dsactive la vrification des messages livrs sans copie. Si
+   * elle est active, le contenu {@link Partageable} de chaque message est
+   * srialis  l'envoi puis compar  la livraison : une modification par
+   * l'metteur entre les deux est signale par une IllegalStateException. La
+   * valeur initiale est donne par la proprit systme
+   * <code>infrastructure.partage.verification</code>.
+   *
+   * @param v
+   *          vrai pour activer la vrification (coteuse,  rserver au
+   *          dbogage)
+   */
+  public static void setVerificationPartage(boolean v) {
+    verificationPartage = v;
   }
 
   /**
@@ -174,25 +465,63 @@ public abstract class Calculateur extends Thread {
   }
 
   /**
-   * Attend de faon bloquante le prochain message  recevoir.
+   * Attend de faon bloquante le prochain message  recevoir. Cette mthode,
+   * comme {@link #attendre(long)} et {@link #essayerRecevoir()}, ne doit tre
+   * appele que par le programme principal du calculateur.
    *
    * @return le message reu
    *
    * @throws InterruptedException
    *           si ce calculateur est interrompu
    */
-  public final synchronized Message attendre() throws InterruptedException {
-    while (messages.isEmpty()) {
-      wait();
+  public final Message attendre() throws InterruptedException {
+    Message r = messages.attendre(0);
+    tracerReception(r);
+    return r;
+  }
+
+  /**
+   * Attend de faon bloquante le prochain message  recevoir, pendant un dlai
+   * maximal.
+   *
+   * @param delai
+   *          dlai d'attente maximal, en millisecondes (strictement positif)
+   * @return le message reu, ou null si le dlai a expir
+   *
+   * @throws InterruptedException
+   *           si ce calculateur est interrompu
+   */
+  public final Message attendre(long delai) throws InterruptedException {
+    if (delai <= 0) {
+      throw new IllegalArgumentException("delai=" + delai);
+    }
+    Message r = messages.attendre(delai);
+    if (r != null) {
+      tracerReception(r);
+    }
+    return r;
+  }
+
+  /**
+   * Reoit le prochain message s'il est dj arriv, sans attendre.
+   *
+   * @return le message reu, ou null si aucun message n'est arriv
+   */
+  public final Message essayerRecevoir() {
+    Message r = messages.retirer();
+    if (r != null) {
+      tracerReception(r);
     }
-    Message r = messages.remove(0);
-    afficher("reception " + r + " (synchrone)");
-    notifyAll();
     return r;
   }
 
   /**
-   * Diffuse un message  un groupe destinataire.
+   * Diffuse un message  un groupe destinataire. Chaque membre du groupe, y
+   * compris l'metteur s'il en fait partie, reoit sa propre copie du message
+   * avec sa propre latence. Le message n'est srialis qu'une fois pour tout
+   * le groupe, et les livraisons sont confies en un seul lot 
+   * l'ordonnanceur. Chaque copie destine  un autre calculateur occupe le
+   * {@link Lien} de sortie de l'metteur.
    *
    * @param d
    *          nom du groupe de calculateurs destinataires
@@ -200,19 +529,201 @@ public abstract class Calculateur extends Thread {
    *          message  lui envoyer
    */
   public final void diffuser(String d, Message m) {
-    //  dvelopper
+    Calculateur[] n = simulation.toGroupe(d).resoudre();
+    m.setEmetteur(nom);
+    m.setDestinataire(d);
+    if (Trace.estActif(Niveau.TRACE)) {
+      afficher(Niveau.TRACE, "diffusion " + m + " (" + n.length + " membres)");
+    }
+    boolean p = m.estPartageable();
+    Serialisation s = p ? null : new Serialisation(m);
+    int o = s == null ? Serialisation.taille(m) : s.getTaille();
+    long date = ordonnanceur.maintenant();
+    // un membre peut recevoir 0, 1 ou 2 copies (voir Pannes)
+    String[] dn = new String[2 * n.length];
+    Runnable[] t = new Runnable[2 * n.length];
+    long[] l = new long[2 * n.length];
+    int j = 0;
+    for (int i = 0; i < n.length; i++) {
+      Calculateur c = n[i];
+      for (int k = Pannes.copies(this, c, date); k > 0; k--) {
+        dn[j] = c.nom;
+        l[j] = transmission(c, o) + latenceVers(c);
+        Message mi = p ? m.copieEnveloppe(verificationPartage) : (Message) s
+                .copie();
+        mi.setDestinataire(c.nom);
+        mesures.compterEnvoi(o);
+        t[j] = new Envoi(mi, c, o, l[j]);
+        j++;
+      }
+    }
+    ordonnanceur.planifier(this, Arrays.copyOf(dn, j), Arrays.copyOf(t, j),
+            Arrays.copyOf(l, j));
+  }
+
+  /**
+   * Envoie un message  un calculateur destinataire par un canal fiable :
+   * les messages ainsi envoys au mme destinataire lui sont livrs
+   * exactement une fois, dans l'ordre d'envoi, mme si le rseau en perd ou
+   * en duplique (voir {@link CanalFiable}). L'envoi ne bloque pas : si trop
+   * de messages sont dj en transit vers le destinataire, le message est
+   * mis en attente et sera mis  l'arrive des acquittements.
+   *
+   * @param n
+   *          nom du calculateur destinataire
+   * @param m
+   *          message  lui envoyer
+   */
+  public final void envoyerFiable(String n, Message m) {
+    simulation.toCalculateur(n);
+    verrou.lock();
+    try {
+      canalFiable.envoyer(n, m.getContenu());
+    } finally {
+      verrou.unlock();
+    }
+  }
+
+  /**
+   * Diffuse un message  un groupe destinataire, en garantissant que tous les
+   * membres du groupe reoivent les messages ainsi diffuss dans le mme
+   * ordre, quels que soient leurs metteurs. L'ordre est fix par le premier
+   * membre du groupe, qui joue le rle de squenceur (voir
+   * {@link DiffusionTotale}).
+   * <p>
+   * Les messages sont reus, via {@link #recevoir(Message)} ou
+   * {@link #attendre()}, avec l'metteur d'origine pour metteur. Comme ceux
+   * de {@link #envoyerFiable(String, Message)}, ils sont reus exactement une
+   * fois, mme si le rseau en perd ou en duplique.
+   *
+   * @param d
+   *          nom du groupe de calculateurs destinataires
+   * @param m
+   *          message  lui envoyer
+   */
+  public final void diffuserTotal(String d, Message m) {
+    DiffusionTotale.Id i = new DiffusionTotale.Id(nom, numeroDiffusion
+            .getAndIncrement());
+    DiffusionTotale.Donnee n = new DiffusionTotale.Donnee(d, i, m
+            .getContenu());
+    verrou.lock();
+    try {
+      diffusionTotale.diffuser(d, n);
+    } finally {
+      verrou.unlock();
+    }
   }
 
   //
   // METHODES UTILITAIRES
   //
   /**
-   * Affiche le message spcifi, prcd de l'heure et du nom du calculateur.
+   * Retourne la date courante de la simulation, en temps rel ou virtuel
+   * selon l'ordonnanceur.
+   *
+   * @return le nombre de millisecondes coules depuis le dbut de la
+   *         simulation
+   */
+  public final long maintenant() {
+    return ordonnanceur.maintenant();
+  }
+
+  /**
+   * Endort le programme principal de ce calculateur pendant le dlai
+   * spcifi. Les programmes doivent utiliser cette mthode plutt que
+   * Thread.sleep(long), pour que le dlai soit compt dans le temps de la
+   * simulation.
+   *
+   * @param delai
+   *          dlai en millisecondes
+   * @throws InterruptedException
+   *           si ce calculateur est interrompu
+   */
+  public final void dormir(long delai) throws InterruptedException {
+    long fin = ordonnanceur.maintenant() + delai;
+    for (long r = delai; r > 0; r = fin - ordonnanceur.maintenant()) {
+      ordonnanceur.suspendre(this, r);
+    }
+  }
+
+  /**
+   * Suspend le programme principal de ce calculateur jusqu'au prochain appel
+   * de {@link #signaler()}, ou jusqu' expiration du dlai spcifi. Le
+   * programme peut aussi tre rveill sans raison : il doit revrifier la
+   * condition qu'il attend.
+   *
+   * @param delai
+   *          dlai maximal en millisecondes, 0 pour attendre sans dlai
+   * @throws InterruptedException
+   *           si ce calculateur est interrompu
+   */
+  public final void patienter(long delai) throws InterruptedException {
+    ordonnanceur.suspendre(this, delai);
+  }
+
+  /**
+   * Rveille le programme principal de ce calculateur, s'il est suspendu par
+   * {@link #patienter(long)}. Cette mthode est typiquement appele par
+   * {@link #recevoir(Message)}.
+   */
+  public final void signaler() {
+    Thread t;
+    synchronized (this) {
+      t = thread;
+    }
+    if (t != null) {
+      ordonnanceur.reveiller(t);
+    }
+  }
+
+  /**
+   * Planifie l'excution d'une tche de ce calculateur aprs le dlai
+   * spcifi, compt dans le temps de la simulation. La tche est excute
+   * par un thread de l'ordonnanceur, avec le verrou de ce calculateur,
+   * c'est--dire en exclusion mutuelle avec ses livraisons de messages
+   * asynchrones : elle ne doit pas bloquer.
+   *
+   * @param delai
+   *          dlai en millisecondes
+   * @param t
+   *          tche  excuter
+   */
+  public final void armer(long delai, final Runnable t) {
+    ordonnanceur.planifier(this, nom, new Runnable() {
+      @Override
+      public void run() {
+        executer(t);
+      }
+    }, Math.max(delai, 0));
+  }
+
+  /**
+   * Affiche le message spcifi au niveau INFO, prcd de la date de la
+   * simulation et du nom du calculateur (voir {@link Trace}).
    *
    * @param message
+   *          texte  afficher
    */
   public final void afficher(String message) {
-    System.out.println(date() + " - " + this + " : " + message);
+    afficher(Niveau.INFO, message);
+  }
+
+  /**
+   * Affiche le message spcifi au niveau spcifi, prcd de la date de la
+   * simulation et du nom du calculateur. L'affichage est asynchrone : il est
+   * crit plus tard par le thread de la {@link Trace}. Si le texte est
+   * coteux  construire, l'appelant doit d'abord consulter
+   * {@link Trace#estActif(Niveau)}.
+   *
+   * @param n
+   *          niveau de l'affichage
+   * @param message
+   *          texte  afficher
+   */
+  public final void afficher(Niveau n, String message) {
+    if (Trace.estActif(n)) {
+      Trace.ecrire(ordonnanceur.maintenant(), libelle, message);
+    }
   }
 
   //
@@ -220,24 +731,184 @@ public abstract class Calculateur extends Thread {
   //
   @Override
   public final void run() {
+    Simulation.fixer(simulation);
     try {
       programme();
     } catch (InterruptedException e) {
       afficher("interrompu");
+    } finally {
+      ordonnanceur.desactiver();
     }
   }
 
-  private Calculateur toCalculateur(String n) {
-    Calculateur d = instances.get(n);
-    if (instances.get(n) == null) {
-      throw new IllegalArgumentException("n=" + n);
+  /**
+   * Livre un message  ce calculateur. Les messages des protocoles internes
+   * et les messages  un calculateur asynchrone sont traits avec le verrou
+   * du calculateur ; les autres sont simplement dposs dans sa bote aux
+   * lettres, sans verrou.
+   *
+   * @param m
+   *          message  livrer
+   */
+  void livrer(Message m) {
+    if (m.getContenu() instanceof CanalFiable.Trame) {
+      verrou.lock();
+      try {
+        canalFiable.recevoir(m);
+      } finally {
+        verrou.unlock();
+      }
+    } else if (m.getContenu() instanceof DiffusionTotale.Controle) {
+      verrou.lock();
+      try {
+        diffusionTotale.recevoir(m);
+      } finally {
+        verrou.unlock();
+      }
+    } else if (estAsynchrone) {
+      mesures.entrer();
+      verrou.lock();
+      mesures.sortir();
+      try {
+        if (Trace.estActif(Niveau.TRACE)) {
+          afficher(Niveau.TRACE, "reception " + m + " (asynchrone)");
+        }
+        recevoir(m);
+      } finally {
+        verrou.unlock();
+      }
+    } else {
+      messages.deposer(m);
     }
-    return d;
   }
 
-  private static String date() {
-    long d = System.currentTimeMillis() - debut;
-    return new Formatter().format("%02d.%03d", d / 1000, d % 1000).toString();
+  /**
+   * Excute une tche avec le verrou de ce calculateur, c'est--dire en
+   * exclusion mutuelle avec ses livraisons de messages.
+   *
+   * @param t
+   *          tche  excuter
+   */
+  void executer(Runnable t) {
+    verrou.lock();
+    try {
+      t.run();
+    } finally {
+      verrou.unlock();
+    }
+  }
+
+  static Calculateur toCalculateur(String n) {
+    return Simulation.courante().toCalculateur(n);
+  }
+
+  /*
+   * Le destinataire est dj rsolu : les deux formes d'envoi ne diffrent
+   * que par sa recherche.
+   */
+  private void envoyer(Calculateur d, Message m) {
+    String n = d.nom;
+    m.setEmetteur(nom);
+    m.setDestinataire(n);
+    int k = Pannes.copies(this, d, ordonnanceur.maintenant());
+    if (k == 0) {
+      if (Trace.estActif(Niveau.TRACE)) {
+        afficher(Niveau.TRACE, "perte     " + m);
+      }
+      return;
+    }
+    boolean p = m.estPartageable();
+    Serialisation s = p ? null : new Serialisation(m);
+    int o = s == null ? Serialisation.taille(m) : s.getTaille();
+    for (int i = 0; i < k; i++) {
+      long l = transmission(d, o) + latenceVers(d);
+      if (Trace.estActif(Niveau.TRACE)) {
+        afficher(Niveau.TRACE, "envoi     " + m + " (latence=" + l + "ms)");
+      }
+      Message c = p ? m.copieEnveloppe(verificationPartage) : (Message) s
+              .copie();
+      mesures.compterEnvoi(o);
+      ordonnanceur.planifier(this, n, new Envoi(c, d, o, l), l);
+    }
+  }
+
+  /*
+   * Les latences de base vers les autres calculateurs sont mmorises dans
+   * une ligne indexe par leur numro, remplie  la demande : seule la gigue
+   * est tire  chaque envoi. La ligne peut tre lue et tendue sans
+   * synchronisation par plusieurs threads metteurs : au pire, une latence
+   * dj calcule est perdue et sera recalcule,  l'identique. Une latence
+   * de base pouvant tre nulle (modle sans latence, envoi  soi-mme), la
+   * valeur "non calcule" est ngative ; la ligne est publie par une
+   * criture volatile, pour qu'aucun thread n'y lise un 0 initial.
+   *
+   * La gigue est tire dans le flux du lien vers le destinataire, driv de
+   * la graine de la simulation et des noms des deux extrmits (voir
+   * Aleatoire), et non dans le flux du calculateur : elle ne dpend ni des
+   * tirages du programme, ni de l'ordre des envois vers d'autres
+   * destinataires, et la simulation se rejoue  l'identique.
+   */
+  private long latenceVers(Calculateur d) {
+    float[] t = latences;
+    if (d.numero >= t.length) {
+      int n = t.length;
+      t = Arrays.copyOf(t, Math.max(d.numero + 1, 2 * n));
+      Arrays.fill(t, n, t.length, NON_CALCULEE);
+      latences = t;
+    }
+    ModeleReseau m = simulation.getModeleReseau();
+    float b = t[d.numero];
+    if (b < 0.0f) {
+      b = m.latenceBase(position, d.position);
+      t[d.numero] = b;
+    }
+    return m.getGigue().appliquer(b, gigue(d));
+  }
+
+  /*
+   * Les flux de gigue sont crs  la demande, avec le moniteur du
+   * calculateur : deux threads metteurs ne doivent pas crer chacun un flux
+   * du mme lien, ce qui tirerait deux fois les mmes gigues. La table est
+   * recopie  chaque cration, et lue sans synchronisation.
+   */
+  private Random gigue(Calculateur d) {
+    Random[] t = gigues;
+    if (d.numero < t.length && t[d.numero] != null) {
+      return t[d.numero];
+    }
+    synchronized (this) {
+      t = gigues;
+      if (d.numero >= t.length) {
+        t = Arrays.copyOf(t, Math.max(d.numero + 1, 2 * t.length));
+      } else if (t[d.numero] != null) {
+        return t[d.numero];
+      } else {
+        t = t.clone();
+      }
+      t[d.numero] = Aleatoire.flux(simulation.getGraine(), nom + "->"
+              + d.nom);
+      gigues = t;
+      return t[d.numero];
+    }
+  }
+
+  /*
+   * Les messages vers soi-mme ne passent pas par le lien de sortie. La
+   * taille est celle de l'encodage du message : un contenu partageable n'est
+   * pas srialis, mais seulement mesur, pour que le lien et les mesures
+   * comptent ses octets.
+   */
+  private long transmission(Calculateur d, int o) {
+    if (d == this) {
+      return 0;
+    }
+    return lien.emettre(o, ordonnanceur.maintenant());
+  }
+
+  private void tracerReception(Message m) {
+    if (Trace.estActif(Niveau.TRACE)) {
+      afficher(Niveau.TRACE, "reception " + m + " (synchrone)");
+    }
   }
 
 }
@@ -0,0 +1,406 @@
+package infrastructure;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Canaux fiables point  point entre {@link Calculateur}s, au-dessus d'un
+ * rseau qui peut perdre, dupliquer ou rordonner les messages (voir
+ * {@link Pannes}). Chaque message envoy par un canal est livr exactement
+ * une fois, dans l'ordre d'envoi.
+ * <p>
+ * L'metteur numrote les segments de chaque destinataire, et en garde au
+ * plus {@link #FENETRE} non acquitts en transit : la fentre glissante
+ * permet d'envoyer sans attendre l'acquittement du segment prcdent, tout en
+ * bornant la mmoire du destinataire. Le destinataire rpond  chaque segment
+ * par un acquittement cumulatif, qui porte le numro du prochain segment
+ * attendu, et slectif, qui indique lesquels des {@link #SELECTION} segments
+ * suivants ont t reus en avance ; il conserve ces derniers jusqu' ce que
+ * les prcdents arrivent.
+ * <p>
+ * Un segment est rmis ds que les acquittements slectifs montrent qu'il
+ * est perdu, ou  l'expiration du dlai de retransmission. Ce dlai est
+ * calcul  partir des temps d'aller-retour mesurs, selon l'algorithme de
+ * Jacobson : il suit la latence du {@link Reseau} et la charge du
+ * {@link Lien} de sortie, et double  chaque expiration successive. Les
+ * segments rmis ne sont pas mesurs (algorithme de Karn).
+ * <p>
+ * Chaque calculateur a son propre objet CanalFiable ; ses mthodes sont
+ * appeles avec le verrou de ce calculateur.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+final class CanalFiable {
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Contenu des messages internes aux canaux fiables.
+   */
+  interface Trame extends DiffusionTotale.Controle {
+  }
+
+  /**
+   * Segment de donnes d'un canal.
+   */
+  static final class Segment implements Trame {
+
+    private static final long serialVersionUID = 1L;
+
+    final long numero;
+    final Serializable contenu;
+
+    Segment(long n, Serializable c) {
+      numero = n;
+      contenu = c;
+    }
+
+    @Override
+    public String toString() {
+      return "Segment [n=" + numero + ", c=" + contenu + "]";
+    }
+  }
+
+  /**
+   * Acquittement d'un canal. Il est cumulatif : tous les segments de numro
+   * infrieur  attendu ont t reus ; et slectif : le bit i de recus
+   * indique si le segment attendu + 1 + i a t reu, pour i de 0  63. Il rappelle aussi le
+   * numro du segment dont la rception l'a provoqu, pour la mesure du
+   * temps d'aller-retour.
+   */
+  static final class Acquittement implements Trame {
+
+    private static final long serialVersionUID = 1L;
+
+    final long attendu;
+    final long recus;
+    final long declencheur;
+
+    Acquittement(long a, long r, long d) {
+      attendu = a;
+      recus = r;
+      declencheur = d;
+    }
+
+    @Override
+    public String toString() {
+      return "Acquittement [attendu=" + attendu + ", recus="
+              + Long.toHexString(recus) + ", declencheur=" + declencheur
+              + "]";
+    }
+  }
+
+  static final class CodecSegment implements Codec<Segment> {
+
+    @Override
+    public void encoder(Segment o, Sortie s) throws IOException {
+      s.ecrireLong(o.numero);
+      s.ecrireObjet(o.contenu);
+    }
+
+    @Override
+    public Segment decoder(Entree e) throws IOException {
+      long n = e.lireLong();
+      return new Segment(n, (Serializable) e.lireObjet());
+    }
+  }
+
+  static final class CodecAcquittement implements Codec<Acquittement> {
+
+    @Override
+    public void encoder(Acquittement o, Sortie s) throws IOException {
+      s.ecrireLong(o.attendu);
+      s.ecrireLong(o.recus);
+      s.ecrireLong(o.declencheur);
+    }
+
+    @Override
+    public Acquittement decoder(Entree e) throws IOException {
+      long a = e.lireLong();
+      long r = e.lireLong();
+      return new Acquittement(a, r, e.lireLong());
+    }
+  }
+
+  /**
+   * Segment mis et non encore acquitt.
+   */
+  private static final class EnVol {
+
+    final Segment segment;
+    long emission;
+    boolean reemis;
+    boolean mesure;
+    boolean recu;
+
+    EnVol(Segment s) {
+      segment = s;
+    }
+  }
+
+  /**
+   * tat d'un calculateur vis--vis d'un correspondant, dans les deux sens.
+   */
+  private static final class Etat {
+
+    final String correspondant;
+
+    // mission : les segments en vol sont ceux de numro base  prochain - 1
+    final EnVol[] enVol = new EnVol[FENETRE];
+    final ArrayDeque<Serializable> enAttente = new ArrayDeque<Serializable>();
+    long base = 0;
+    long prochain = 0;
+    double srtt = -1.0;
+    double rttvar = 0.0;
+    long rto = RTO_INITIAL;
+    long echeance = -1;
+    boolean minuterie = false;
+
+    // rception
+    final Serializable[] enAvance = new Serializable[FENETRE];
+    long attendu = 0;
+
+    Etat(String c) {
+      correspondant = c;
+    }
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  static final int FENETRE = 256; // segments
+  static final int SELECTION = 64; // segments
+  static final long RTO_INITIAL = 3000; // ms
+  static final long RTO_MIN = 10; // ms
+  static final long RTO_MAX = 60000; // ms
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Calculateur calculateur;
+  private final Map<String, Etat> etats;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  CanalFiable(Calculateur c) {
+    calculateur = c;
+    etats = new HashMap<String, Etat>();
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Envoie un contenu au correspondant spcifi. Le contenu est mis
+   * immdiatement si la fentre le permet, et mis en attente sinon.
+   *
+   * @param d
+   *          nom du correspondant
+   * @param c
+   *          contenu  envoyer
+   */
+  void envoyer(String d, Serializable c) {
+    Etat e = etat(d);
+    e.enAttente.add(c);
+    emettre(e);
+  }
+
+  /**
+   * Traite un message interne aux canaux reu par le calculateur.
+   *
+   * @param m
+   *          message reu, dont le contenu est un Segment ou un Acquittement
+   */
+  void recevoir(Message m) {
+    Etat e = etat(m.getEmetteur());
+    if (m.getContenu() instanceof Segment) {
+      recevoir(e, (Segment) m.getContenu());
+    } else {
+      acquitter(e, (Acquittement) m.getContenu());
+    }
+  }
+
+  private void recevoir(Etat e, Segment s) {
+    if (s.numero == e.attendu) {
+      livrer(e, s.contenu);
+      e.attendu++;
+      Serializable c;
+      while ((c = e.enAvance[indice(e.attendu)]) != null) {
+        e.enAvance[indice(e.attendu++)] = null;
+        livrer(e, c);
+      }
+    } else if (s.numero > e.attendu && s.numero < e.attendu + FENETRE) {
+      e.enAvance[indice(s.numero)] = s.contenu;
+    }
+    // les doublons sont acquitts aussi : leur acquittement a pu tre perdu
+    long r = 0;
+    for (int i = 0; i < SELECTION; i++) {
+      if (e.enAvance[indice(e.attendu + 1 + i)] != null) {
+        r |= 1L << i;
+      }
+    }
+    calculateur.envoyer(e.correspondant, new Message(new Acquittement(
+            e.attendu, r, s.numero)));
+  }
+
+  private void acquitter(Etat e, Acquittement q) {
+    // le temps d'aller-retour est mesur sur le segment qui a provoqu
+    // l'acquittement, mme s'il n'est pas encore acquitt : avec un rseau
+    // qui rordonne, la plupart des acquittements cumulatifs progressent 
+    // l'arrive d'un segment rmis, qui ne peut pas tre mesur
+    long t = calculateur.maintenant();
+    if (q.declencheur >= e.base && q.declencheur < e.prochain) {
+      EnVol v = e.enVol[indice(q.declencheur)];
+      if (!v.reemis && !v.mesure) {
+        v.mesure = true;
+        mesurer(e, t - v.emission);
+      }
+    }
+    if (q.attendu > e.base) {
+      while (e.base < q.attendu) {
+        e.enVol[indice(e.base++)] = null;
+      }
+      e.echeance = e.base == e.prochain ? -1 : t + e.rto;
+    }
+    for (int i = 0; i < SELECTION; i++) {
+      long n = q.attendu + 1 + i;
+      if ((q.recus & (1L << i)) != 0 && n >= e.base && n < e.prochain) {
+        e.enVol[indice(n)].recu = true;
+      }
+    }
+    reparer(e, t);
+    emettre(e);
+  }
+
+  /*
+   * Un segment en vol est considr comme perdu quand trois segments mis
+   * aprs lui ont t reus, et qu'il aurait d tre acquitt depuis au vu
+   * des temps d'aller-retour mesurs : le rseau rordonne les messages, et
+   * le premier critre seul provoquerait des rmissions inutiles. Un
+   * segment perdu est rmis au plus une fois par dlai de retransmission.
+   */
+  private void reparer(Etat e, long t) {
+    double seuil = e.srtt < 0.0 ? e.rto : e.srtt + e.rttvar;
+    int apres = 0;
+    for (long n = e.prochain - 1; n >= e.base; n--) {
+      EnVol v = e.enVol[indice(n)];
+      if (v.recu) {
+        apres++;
+      } else if (apres >= 3 && t - v.emission >= (v.reemis ? e.rto : seuil)) {
+        reemettre(e, v);
+      }
+    }
+  }
+
+  private void emettre(Etat e) {
+    while (e.prochain - e.base < FENETRE && !e.enAttente.isEmpty()) {
+      EnVol v = new EnVol(new Segment(e.prochain, e.enAttente.poll()));
+      e.enVol[indice(e.prochain++)] = v;
+      transmettre(e, v);
+    }
+  }
+
+  private void reemettre(Etat e, EnVol v) {
+    v.reemis = true;
+    transmettre(e, v);
+  }
+
+  private void transmettre(Etat e, EnVol v) {
+    v.emission = calculateur.maintenant();
+    if (e.echeance < 0) {
+      e.echeance = v.emission + e.rto;
+    }
+    armer(e, e.echeance - v.emission);
+    calculateur.envoyer(e.correspondant, new Message(v.segment));
+  }
+
+  /*
+   * Une seule minuterie par correspondant :  son expiration, elle est
+   * rarme si l'chance a t repousse entre-temps, ce qui vite de
+   * planifier un vnement par acquittement.
+   */
+  private void armer(final Etat e, long delai) {
+    if (e.minuterie) {
+      return;
+    }
+    e.minuterie = true;
+    final Runnable expiration = new Runnable() {
+      @Override
+      public void run() {
+        expirer(e);
+      }
+    };
+    Runnable t = new Runnable() {
+      @Override
+      public void run() {
+        calculateur.executer(expiration);
+      }
+    };
+    calculateur.getSimulation().getOrdonnanceur().planifier(calculateur,
+            calculateur.getNom(), t, Math.max(delai, 0));
+  }
+
+  private void expirer(Etat e) {
+    e.minuterie = false;
+    if (e.base == e.prochain) {
+      e.echeance = -1;
+      return;
+    }
+    long t = calculateur.maintenant();
+    if (t < e.echeance) {
+      armer(e, e.echeance - t);
+      return;
+    }
+    // tous les segments non reus mis depuis plus d'un dlai sont rmis :
+    // sur un rseau trs dgrad, les acquittements slectifs qui les
+    // signaleraient sont eux-mmes perdus
+    long r = e.rto;
+    e.rto = Math.min(2 * e.rto, RTO_MAX);
+    e.echeance = t + e.rto;
+    for (long n = e.base; n < e.prochain; n++) {
+      EnVol v = e.enVol[indice(n)];
+      if (!v.recu && (n == e.base || t - v.emission >= r)) {
+        reemettre(e, v);
+      }
+    }
+  }
+
+  private void mesurer(Etat e, long r) {
+    if (e.srtt < 0.0) {
+      e.srtt = r;
+      e.rttvar = r / 2.0;
+    } else {
+      e.rttvar = 0.75 * e.rttvar + 0.25 * Math.abs(e.srtt - r);
+      e.srtt = 0.875 * e.srtt + 0.125 * r;
+    }
+    long rto = (long) Math.ceil(e.srtt + 4.0 * e.rttvar);
+    e.rto = Math.max(RTO_MIN, Math.min(rto, RTO_MAX));
+  }
+
+  private static int indice(long n) {
+    return (int) (n % FENETRE);
+  }
+
+  private void livrer(Etat e, Serializable c) {
+    Message m = new Message(c);
+    m.setEmetteur(e.correspondant);
+    m.setDestinataire(calculateur.getNom());
+    calculateur.livrer(m);
+  }
+
+  private Etat etat(String d) {
+    Etat e = etats.get(d);
+    if (e == null) {
+      e = new Etat(d);
+      etats.put(d, e);
+    }
+    return e;
+  }
+
+}
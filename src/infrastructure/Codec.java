@@ -0,0 +1,42 @@
+package infrastructure;
+
+import java.io.IOException;
+
+/**
+ * Codec binaire d'un type de contenu de {@link Message}. Un codec crit les
+ * champs d'un objet dans une {@link Sortie}, et les relit dans le mme ordre
+ * depuis une {@link Entree}. Les codecs sont enregistrs auprs de
+ * {@link Codecs} ; les types sans codec sont encods par la srialisation
+ * Java standard.
+ *
+ * @author Jean-Michel Busca
+ *
+ * @param <T>
+ *          type des objets encods
+ */
+public interface Codec<T> {
+
+  /**
+   * Encode l'objet spcifi.
+   *
+   * @param o
+   *          objet  encoder, non nul
+   * @param s
+   *          sortie dans laquelle crire l'objet
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  void encoder(T o, Sortie s) throws IOException;
+
+  /**
+   * Dcode un objet prcdemment encod par {@link #encoder(Object, Sortie)}.
+   *
+   * @param e
+   *          entre depuis laquelle lire l'objet
+   * @return l'objet dcod
+   * @throws IOException
+   *           en cas d'erreur de lecture
+   */
+  T decoder(Entree e) throws IOException;
+
+}
@@ -0,0 +1,141 @@
+package infrastructure;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registre des {@link Codec}s du simulateur. Chaque type enregistr reoit une
+ * tiquette, crite devant chaque objet encod pour retrouver son codec au
+ * dcodage. Le registre tient aussi la table des noms de calculateurs et de
+ * groupes, qui permet d'encoder un nom par un petit entier.
+ * <p>
+ * Le registre est partag par tous les calculateurs de la simulation : il
+ * joue le rle du dictionnaire commun  l'metteur et au destinataire.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Codecs {
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class Enregistrement<T> {
+
+    private final int etiquette;
+    private final Codec<T> codec;
+
+    Enregistrement(int e, Codec<T> c) {
+      etiquette = e;
+      codec = c;
+    }
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  // tiquettes rserves
+  static final int NUL = 0;
+  static final int JAVA = 1;
+
+  private static final Map<Class<?>, Enregistrement<?>> parClasse = new ConcurrentHashMap<Class<?>, Enregistrement<?>>();
+  private static volatile Codec<?>[] parEtiquette = new Codec<?>[JAVA + 1];
+
+  private static final Map<String, Integer> identifiants = new ConcurrentHashMap<String, Integer>();
+  private static volatile String[] noms = new String[16];
+  private static int nombreNoms = 0;
+
+  static {
+    enregistrer(Message.class, new Message.CodecMessage());
+    enregistrer(DiffusionTotale.Donnee.class,
+            new DiffusionTotale.CodecDonnee());
+    enregistrer(DiffusionTotale.Ordre.class, new DiffusionTotale.CodecOrdre());
+    enregistrer(CanalFiable.Segment.class, new CanalFiable.CodecSegment());
+    enregistrer(CanalFiable.Acquittement.class,
+            new CanalFiable.CodecAcquittement());
+  }
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  private Codecs() {
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Enregistre le codec d'un type de contenu. Seuls les objets de ce type
+   * exact, et non de ses sous-types, sont encods par ce codec.
+   *
+   * @param c
+   *          type des objets  encoder
+   * @param codec
+   *          codec  utiliser pour ce type
+   * @throws IllegalArgumentException
+   *           si un codec est dj enregistr pour ce type
+   */
+  public static synchronized <T> void enregistrer(Class<T> c, Codec<T> codec) {
+    if (parClasse.containsKey(c)) {
+      throw new IllegalArgumentException("c=" + c);
+    }
+    int e = parEtiquette.length;
+    Codec<?>[] t = Arrays.copyOf(parEtiquette, e + 1);
+    t[e] = codec;
+    parEtiquette = t;
+    parClasse.put(c, new Enregistrement<T>(e, codec));
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  @SuppressWarnings("unchecked")
+  static <T> void encoder(T o, Sortie s) throws IOException {
+    Enregistrement<T> e = (Enregistrement<T>) parClasse.get(o.getClass());
+    if (e == null) {
+      s.ecrireEntier(JAVA);
+      s.ecrireJava(o);
+    } else {
+      s.ecrireEntier(e.etiquette);
+      e.codec.encoder(o, s);
+    }
+  }
+
+  static Object decoder(int etiquette, Entree e) throws IOException {
+    Codec<?>[] t = parEtiquette;
+    if (etiquette <= JAVA || etiquette >= t.length) {
+      throw new IOException("etiquette inconnue : " + etiquette);
+    }
+    return t[etiquette].decoder(e);
+  }
+
+  static int identifiant(String n) {
+    Integer i = identifiants.get(n);
+    if (i != null) {
+      return i;
+    }
+    synchronized (Codecs.class) {
+      i = identifiants.get(n);
+      if (i == null) {
+        if (nombreNoms == noms.length) {
+          noms = Arrays.copyOf(noms, 2 * nombreNoms);
+        }
+        i = nombreNoms++;
+        noms[i] = n;
+        identifiants.put(n, i);
+      }
+      return i;
+    }
+  }
+
+  static String nom(int i) throws IOException {
+    String[] t = noms;
+    if (i < 0 || i >= t.length || t[i] == null) {
+      throw new IOException("nom inconnu : " + i);
+    }
+    return t[i];
+  }
+
+}
@@ -0,0 +1,324 @@
+package infrastructure;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diffusion totalement ordonne  un {@link Groupe}, par squenceur fixe. Le
+ * squenceur d'un groupe est son premier membre.
+ * <p>
+ * L'metteur diffuse ses donnes au groupe ; chaque membre les conserve dans
+ * une file d'attente.  la rception d'une donne, le squenceur lui attribue
+ * le prochain numro de squence du groupe, et diffuse les numros attribus
+ * par lots : un lot part ds qu'il contient {@link #TAILLE_LOT} donnes, ou
+ * {@link #DELAI_LOT} ms aprs sa premire donne. Un membre livre une donne
+ * ds qu'il connait son numro et qu'il a livr toutes les donnes
+ * prcdentes : tous les membres livrent donc les donnes dans le mme ordre.
+ * <p>
+ * Les donnes et les numros sont transmis  chaque membre par un
+ * {@link CanalFiable} : ils sont rmis s'ils sont perdus, et livrs dans
+ * l'ordre d'envoi. Un membre ignore en outre les donnes et les numros
+ * dj reus, reprs par le plus grand numro d'ordre reu de chaque
+ * metteur et par le prochain numro de squence  livrer, pour qu'une
+ * donne ne soit jamais squence ni livre deux fois.
+ * <p>
+ * Chaque calculateur a son propre objet DiffusionTotale ; ses mthodes sont
+ * appeles avec le verrou de ce calculateur.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+final class DiffusionTotale {
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Contenu des messages internes au protocole, traits par le simulateur et
+   * non livrs tels quels aux calculateurs.
+   */
+  interface Controle extends Serializable {
+  }
+
+  /**
+   * Identifiant unique d'une donne diffuse : nom de l'metteur et numro
+   * d'ordre chez cet metteur.
+   */
+  static final class Id implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String emetteur;
+    final long numero;
+
+    Id(String e, long n) {
+      emetteur = e;
+      numero = n;
+    }
+
+    @Override
+    public int hashCode() {
+      return emetteur.hashCode() * 31 + (int) (numero ^ (numero >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Id)) {
+        return false;
+      }
+      Id i = (Id) o;
+      return numero == i.numero && emetteur.equals(i.emetteur);
+    }
+
+    @Override
+    public String toString() {
+      return emetteur + "#" + numero;
+    }
+  }
+
+  /**
+   * Donne diffuse par un metteur, en attente de son numro de squence.
+   */
+  static final class Donnee implements Controle {
+
+    private static final long serialVersionUID = 1L;
+
+    final String groupe;
+    final Id id;
+    final Serializable contenu;
+
+    Donnee(String g, Id i, Serializable c) {
+      groupe = g;
+      id = i;
+      contenu = c;
+    }
+
+    @Override
+    public String toString() {
+      return "Donnee [g=" + groupe + ", id=" + id + ", c=" + contenu + "]";
+    }
+  }
+
+  /**
+   * Lot de numros de squence attribus par le squenceur : la donne
+   * ids[i] reoit le numro premier + i.
+   */
+  static final class Ordre implements Controle {
+
+    private static final long serialVersionUID = 1L;
+
+    final String groupe;
+    final long premier;
+    final Id[] ids;
+
+    Ordre(String g, long p, Id[] i) {
+      groupe = g;
+      premier = p;
+      ids = i;
+    }
+
+    @Override
+    public String toString() {
+      return "Ordre [g=" + groupe + ", premier=" + premier + ", nombre="
+              + ids.length + "]";
+    }
+  }
+
+  static final class CodecDonnee implements Codec<Donnee> {
+
+    @Override
+    public void encoder(Donnee d, Sortie s) throws IOException {
+      s.ecrireNom(d.groupe);
+      s.ecrireNom(d.id.emetteur);
+      s.ecrireLong(d.id.numero);
+      s.ecrireObjet(d.contenu);
+    }
+
+    @Override
+    public Donnee decoder(Entree e) throws IOException {
+      String g = e.lireNom();
+      Id i = new Id(e.lireNom(), e.lireLong());
+      return new Donnee(g, i, (Serializable) e.lireObjet());
+    }
+  }
+
+  static final class CodecOrdre implements Codec<Ordre> {
+
+    @Override
+    public void encoder(Ordre o, Sortie s) throws IOException {
+      s.ecrireNom(o.groupe);
+      s.ecrireLong(o.premier);
+      s.ecrireEntier(o.ids.length);
+      for (Id i : o.ids) {
+        s.ecrireNom(i.emetteur);
+        s.ecrireLong(i.numero);
+      }
+    }
+
+    @Override
+    public Ordre decoder(Entree e) throws IOException {
+      String g = e.lireNom();
+      long p = e.lireLong();
+      Id[] ids = new Id[e.lireEntier()];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = new Id(e.lireNom(), e.lireLong());
+      }
+      return new Ordre(g, p, ids);
+    }
+  }
+
+  /**
+   * tat d'un calculateur vis--vis d'un groupe.
+   */
+  private static final class Etat {
+
+    // membre du groupe
+    final Map<Id, Donnee> attente = new HashMap<Id, Donnee>();
+    final Map<Long, Id> ordres = new HashMap<Long, Id>();
+    final Map<String, Long> recues = new HashMap<String, Long>(); // plus grand numro par metteur
+    long prochain = 0;
+
+    // squenceur du groupe
+    List<Id> lot = new ArrayList<Id>();
+    long suivant = 0;
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  static final int TAILLE_LOT = 64;
+  static final long DELAI_LOT = 5; // ms
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Calculateur calculateur;
+  private final Map<String, Etat> etats;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  DiffusionTotale(Calculateur c) {
+    calculateur = c;
+    etats = new HashMap<String, Etat>();
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Diffuse une donne ou un lot de numros aux membres d'un groupe, par les
+   * canaux fiables du calculateur.
+   *
+   * @param g
+   *          nom du groupe
+   * @param c
+   *          donne ou lot de numros  diffuser
+   */
+  void diffuser(String g, Controle c) {
+    for (Calculateur m : calculateur.getSimulation().toGroupe(g).resoudre()) {
+      calculateur.envoyerFiable(m.getNom(), new Message(c));
+    }
+  }
+
+  /**
+   * Traite un message interne au protocole reu par le calculateur.
+   *
+   * @param m
+   *          message reu, dont le contenu est une Donnee ou un Ordre
+   */
+  void recevoir(Message m) {
+    if (m.getContenu() instanceof Donnee) {
+      Donnee d = (Donnee) m.getContenu();
+      Etat e = etat(d.groupe);
+      Long r = e.recues.get(d.id.emetteur);
+      if (r != null && d.id.numero <= r) {
+        return;
+      }
+      e.recues.put(d.id.emetteur, d.id.numero);
+      e.attente.put(d.id, d);
+      if (estSequenceur(d.groupe)) {
+        sequencer(d.groupe, e, d.id);
+      }
+      livrer(e);
+    } else {
+      Ordre o = (Ordre) m.getContenu();
+      Etat e = etat(o.groupe);
+      for (int i = 0; i < o.ids.length; i++) {
+        if (o.premier + i >= e.prochain) {
+          e.ordres.put(o.premier + i, o.ids[i]);
+        }
+      }
+      livrer(e);
+    }
+  }
+
+  private void sequencer(final String g, Etat e, Id i) {
+    e.lot.add(i);
+    if (e.lot.size() >= TAILLE_LOT) {
+      emettre(g, e);
+    } else if (e.lot.size() == 1) {
+      final Etat f = e;
+      final Runnable emission = new Runnable() {
+        @Override
+        public void run() {
+          if (!f.lot.isEmpty()) {
+            emettre(g, f);
+          }
+        }
+      };
+      Runnable t = new Runnable() {
+        @Override
+        public void run() {
+          calculateur.executer(emission);
+        }
+      };
+      calculateur.getSimulation().getOrdonnanceur().planifier(calculateur,
+              calculateur.getNom(), t, DELAI_LOT);
+    }
+  }
+
+  private void emettre(String g, Etat e) {
+    Id[] ids = e.lot.toArray(new Id[e.lot.size()]);
+    Ordre o = new Ordre(g, e.suivant, ids);
+    e.suivant += ids.length;
+    e.lot = new ArrayList<Id>();
+    diffuser(g, o);
+  }
+
+  private void livrer(Etat e) {
+    while (true) {
+      Id i = e.ordres.get(e.prochain);
+      Donnee d = i == null ? null : e.attente.get(i);
+      if (d == null) {
+        return;
+      }
+      e.ordres.remove(e.prochain);
+      e.attente.remove(i);
+      e.prochain++;
+      Message m = new Message(d.contenu);
+      m.setEmetteur(i.emetteur);
+      m.setDestinataire(calculateur.getNom());
+      calculateur.livrer(m);
+    }
+  }
+
+  private boolean estSequenceur(String g) {
+    return calculateur.getSimulation().toGroupe(g).getMembres().get(0).equals(
+            calculateur.getNom());
+  }
+
+  private Etat etat(String g) {
+    Etat e = etats.get(g);
+    if (e == null) {
+      e = new Etat();
+      etats.put(g, e);
+    }
+    return e;
+  }
+
+}
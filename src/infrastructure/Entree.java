@@ -0,0 +1,113 @@
+package infrastructure;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+/**
+ * Flux de lecture du format binaire compact des {@link Codec}s, symtrique de
+ * {@link Sortie}.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Entree {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final DataInputStream flux;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  public Entree(byte[] b) {
+    this(new ByteArrayInputStream(b));
+  }
+
+  public Entree(InputStream i) {
+    flux = new DataInputStream(i);
+  }
+
+  /**
+   * Ferme ce flux, ainsi que le flux d'octets sous-jacent.
+   *
+   * @throws IOException
+   *           en cas d'erreur de lecture
+   */
+  public void fermer() throws IOException {
+    flux.close();
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  public boolean lireBooleen() throws IOException {
+    return flux.readBoolean();
+  }
+
+  public float lireFlottant() throws IOException {
+    return flux.readFloat();
+  }
+
+  public int lireEntier() throws IOException {
+    int r = 0;
+    for (int d = 0; d < 35; d += 7) {
+      int b = flux.readUnsignedByte();
+      r |= (b & 0x7f) << d;
+      if ((b & 0x80) == 0) {
+        return r;
+      }
+    }
+    throw new IOException("entier mal forme");
+  }
+
+  public long lireLong() throws IOException {
+    long r = 0;
+    for (int d = 0; d < 70; d += 7) {
+      long b = flux.readUnsignedByte();
+      r |= (b & 0x7f) << d;
+      if ((b & 0x80) == 0) {
+        return (r >>> 1) ^ -(r & 1);
+      }
+    }
+    throw new IOException("entier mal forme");
+  }
+
+  public String lireChaine() throws IOException {
+    return flux.readBoolean() ? flux.readUTF() : null;
+  }
+
+  public String lireNom() throws IOException {
+    int i = lireEntier();
+    return i == 0 ? null : Codecs.nom(i - 1);
+  }
+
+  public Object lireObjet() throws IOException {
+    int e = lireEntier();
+    if (e == Codecs.NUL) {
+      return null;
+    }
+    if (e == Codecs.JAVA) {
+      return lireJava();
+    }
+    return Codecs.decoder(e, this);
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private Object lireJava() throws IOException {
+    byte[] b = new byte[lireEntier()];
+    flux.readFully(b);
+    ObjectInputStream s = new ObjectInputStream(new ByteArrayInputStream(b));
+    try {
+      return s.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+  }
+
+}
@@ -0,0 +1,26 @@
+package infrastructure;
+
+import java.util.Random;
+
+/**
+ * Distribution de la gigue applique aux latences de base d'un
+ * {@link ModeleReseau}. Les distributions usuelles sont fournies par
+ * {@link Gigues}.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public interface Gigue {
+
+  /**
+   * Tire la latence d'un envoi  partir de sa latence de base.
+   *
+   * @param b
+   *          latence de base, en millisecondes
+   * @param r
+   *          flux alatoire dans lequel tirer la gigue
+   * @return la latence de l'envoi, en millisecondes, positive ou nulle
+   */
+  long appliquer(float b, Random r);
+
+}
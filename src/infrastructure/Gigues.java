@@ -0,0 +1,169 @@
+package infrastructure;
+
+import java.util.Random;
+
+/**
+ * Distributions de {@link Gigue} usuelles. La gigue uniforme reproduit le
+ * comportement historique du {@link Reseau} ; les gigues de Pareto et
+ * log-normale ont une queue lourde, et modlisent les retards exceptionnels
+ * (congestion, retransmissions) observs sur les rseaux tendus.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Gigues {
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class Aucune implements Gigue {
+
+    @Override
+    public long appliquer(float b, Random r) {
+      return (long) b;
+    }
+
+    @Override
+    public String toString() {
+      return "aucune";
+    }
+  }
+
+  private static final class Uniforme implements Gigue {
+
+    private final float pourcentage;
+
+    Uniforme(float p) {
+      pourcentage = p;
+    }
+
+    @Override
+    public long appliquer(float b, Random r) {
+      float l = b * (1 + ((r.nextFloat() - 0.5f) * 2.0f * pourcentage));
+      return (long) l;
+    }
+
+    @Override
+    public String toString() {
+      return "uniforme(" + pourcentage + ")";
+    }
+  }
+
+  private static final class Pareto implements Gigue {
+
+    private final float echelle;
+    private final double inverseForme;
+
+    Pareto(float e, double a) {
+      echelle = e;
+      inverseForme = 1.0 / a;
+    }
+
+    @Override
+    public long appliquer(float b, Random r) {
+      // 1 - nextDouble() est dans ]0, 1] : le retard est fini
+      double x = Math.pow(1.0 - r.nextDouble(), -inverseForme) - 1.0;
+      return (long) (b * (1.0 + echelle * x));
+    }
+
+    @Override
+    public String toString() {
+      return "pareto(" + echelle + ", " + (1.0 / inverseForme) + ")";
+    }
+  }
+
+  private static final class LogNormale implements Gigue {
+
+    private final double sigma;
+    private final double correction;
+
+    LogNormale(double s) {
+      sigma = s;
+      correction = -s * s / 2.0;
+    }
+
+    @Override
+    public long appliquer(float b, Random r) {
+      return (long) (b * Math.exp(sigma * r.nextGaussian() + correction));
+    }
+
+    @Override
+    public String toString() {
+      return "lognormale(" + sigma + ")";
+    }
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final Gigue AUCUNE = new Aucune();
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  private Gigues() {
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Retourne une gigue nulle : chaque envoi a exactement la latence de base.
+   *
+   * @return la gigue nulle
+   */
+  public static Gigue aucune() {
+    return AUCUNE;
+  }
+
+  /**
+   * Retourne une gigue uniforme : la latence est tire uniformment dans
+   * l'intervalle [b * (1 - p), b * (1 + p)].
+   *
+   * @param p
+   *          demi-largeur relative de l'intervalle, entre 0 et 1
+   * @return la gigue uniforme
+   */
+  public static Gigue uniforme(float p) {
+    if (p < 0.0f || p > 1.0f) {
+      throw new IllegalArgumentException("p=" + p);
+    }
+    return new Uniforme(p);
+  }
+
+  /**
+   * Retourne une gigue de Pareto : la latence est la latence de base
+   * augmente d'un retard suivant une loi de Pareto de forme a. Plus a est
+   * petit, plus la queue est lourde ; pour a > 1, le retard moyen vaut
+   * b * e / (a - 1).
+   *
+   * @param e
+   *          chelle du retard, relative  la latence de base
+   * @param a
+   *          forme de la loi, strictement positive
+   * @return la gigue de Pareto
+   */
+  public static Gigue pareto(float e, double a) {
+    if (e < 0.0f || a <= 0.0) {
+      throw new IllegalArgumentException("e=" + e + ", a=" + a);
+    }
+    return new Pareto(e, a);
+  }
+
+  /**
+   * Retourne une gigue log-normale : la latence est la latence de base
+   * multiplie par un facteur log-normal de moyenne 1 et de paramtre de
+   * dispersion sigma.
+   *
+   * @param sigma
+   *          cart type du logarithme du facteur, positif ou nul
+   * @return la gigue log-normale
+   */
+  public static Gigue logNormale(double sigma) {
+    if (sigma < 0.0) {
+      throw new IllegalArgumentException("sigma=" + sigma);
+    }
+    return new LogNormale(sigma);
+  }
+
+}
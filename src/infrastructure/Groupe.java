@@ -1,40 +1,41 @@
 package infrastructure;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * Un groupe de {@link Calculateur}s. Chaque groupe est identifi par un nom. Au
- * sein d'un groupe, les calculateurs sont identifis par leur nom.
+ * Un groupe de {@link Calculateur}s. Chaque groupe est identifi par un nom,
+ * unique dans sa {@link Simulation}. Au sein d'un groupe, les calculateurs
+ * sont identifis par leur nom.
  *
  * @author Jean-Michel Busca
  *
  */
 public class Groupe {
 
-  //
-  // ATTRIBUTS DE CLASSE
-  //
-  private static final Map<String, Groupe> instances = new HashMap<String, Groupe>();
-
   //
   // ATTRIBUTS D'OBJET
   //
   private final String nom;
+  private final Simulation simulation;
   private final List<String> membres;
+  private volatile Calculateur[] calculateurs; // null :  rsoudre
 
   //
   // CONSTRUCTEURS ET ACCESSEURS
   //
+  /**
+   * Cre un groupe vide dans la simulation courante.
+   *
+   * @param n
+   *          nom du groupe  crer
+   */
   public Groupe(String n) {
     nom = n;
-    membres = new ArrayList<String>();
-    if (instances.get(nom) != null) {
-      throw new IllegalArgumentException("n");
-    }
-    instances.put(nom, this);
+    simulation = Simulation.courante();
+    membres = new CopyOnWriteArrayList<String>();
+    simulation.inscrire(this);
   }
 
   public String getNom() {
@@ -42,7 +43,7 @@ public class Groupe {
   }
 
   public List<String> getMembres() {
-    return membres;
+    return Collections.unmodifiableList(membres);
   }
 
   public int getNombre() {
@@ -58,21 +59,68 @@ public class Groupe {
   // CONVERSION NOM DE GROUPE - GROUPE
   //
   public static Groupe toGroupe(String n) {
-    Groupe g = instances.get(n);
-    if (instances.get(n) == null) {
-      throw new IllegalArgumentException("n=" + n);
-    }
-    return g;
+    return Simulation.courante().toGroupe(n);
+  }
+
+  public static boolean existe(String n) {
+    return Simulation.courante().existeGroupe(n);
   }
 
   //
   // METHODES PUBLIQUES
   //
-  public void ajouter(String n) {
+  public synchronized void ajouter(String n) {
     if (membres.contains(n)) {
       throw new IllegalArgumentException("n=" + n);
     }
     membres.add(n);
+    calculateurs = null;
+  }
+
+  /**
+   * Exclut un membre du groupe,  la demande d'un autre membre. L'exclusion
+   * n'a lieu que si le demandeur est lui-mme encore membre : de deux membres
+   * qui se souponnent mutuellement de panne, un seul exclut l'autre.
+   *
+   * @param n
+   *          nom du membre  exclure
+   * @param d
+   *          nom du membre demandeur
+   * @return vrai si le membre a t exclu
+   */
+  public synchronized boolean exclure(String n, String d) {
+    if (n.equals(d) || !membres.contains(d) || !membres.remove(n)) {
+      return false;
+    }
+    calculateurs = null;
+    return true;
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /*
+   * Les membres sont rsolus en calculateurs  la premire diffusion qui
+   * suit un ajout ou une exclusion, et non  l'ajout : un membre peut tre
+   * ajout avant la cration de son calculateur. La rsolution est faite avec
+   * le verrou du groupe, pour ne pas publier une rsolution antrieure  un
+   * ajout ou  une exclusion.
+   */
+  Calculateur[] resoudre() {
+    Calculateur[] t = calculateurs;
+    if (t == null) {
+      synchronized (this) {
+        t = calculateurs;
+        if (t == null) {
+          t = new Calculateur[membres.size()];
+          for (int i = 0; i < t.length; i++) {
+            t[i] = simulation.toCalculateur(membres.get(i));
+          }
+          calculateurs = t;
+        }
+      }
+    }
+    return t;
   }
 
 }
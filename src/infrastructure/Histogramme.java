@@ -0,0 +1,192 @@
+package infrastructure;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de valeurs entires positives, typiquement des dures, dont on
+ * veut connatre les centiles. L'enregistrement d'une valeur est sans verrou
+ * et se fait en temps constant : il peut tre appel par plusieurs threads
+ * simultanment,  chaque envoi ou livraison de message.
+ * <p>
+ * Les intervalles sont log-linaires : les valeurs infrieures  32 sont
+ * comptes exactement, puis chaque puissance de 2 est divise en 16
+ * intervalles gaux. L'erreur relative sur un centile est donc infrieure 
+ * 1/16, quel que soit l'ordre de grandeur des valeurs. Les valeurs
+ * suprieures ou gales  2^40 sont comptes dans le dernier intervalle. Le
+ * tableau des compteurs (moins de 5 Ko) n'est allou qu'au premier
+ * enregistrement.
+ * <p>
+ * Les lectures faites pendant des enregistrements concurrents sont
+ * approximatives, mais jamais incohrentes au point de sortir de
+ * l'intervalle des valeurs enregistres.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Histogramme {
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final int BITS = 4;
+  private static final int SOUS = 1 << BITS; // intervalles par puissance de 2
+  private static final int EXACTS = 2 * SOUS; // valeurs comptes exactement
+  private static final int EXPOSANT_MAX = 39;
+  private static final long VALEUR_MAX = (1L << (EXPOSANT_MAX + 1)) - 1;
+  private static final int TAILLE = EXACTS + (EXPOSANT_MAX - BITS) * SOUS;
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private volatile AtomicLongArray compteurs;
+  private final LongAdder nombre;
+  private final LongAdder somme;
+  private final AtomicLong max;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre un histogramme vide.
+   */
+  public Histogramme() {
+    nombre = new LongAdder();
+    somme = new LongAdder();
+    max = new AtomicLong();
+  }
+
+  /**
+   * Retourne le nombre de valeurs enregistres.
+   *
+   * @return le nombre de valeurs enregistres
+   */
+  public long getNombre() {
+    return nombre.sum();
+  }
+
+  /**
+   * Retourne la moyenne exacte des valeurs enregistres.
+   *
+   * @return la moyenne des valeurs, 0 si aucune valeur n'est enregistre
+   */
+  public double getMoyenne() {
+    long n = nombre.sum();
+    return n == 0 ? 0.0 : (double) somme.sum() / n;
+  }
+
+  /**
+   * Retourne la plus grande valeur enregistre.
+   *
+   * @return la valeur maximale, 0 si aucune valeur n'est enregistre
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Retourne le centile spcifi des valeurs enregistres, c'est--dire la
+   * plus petite valeur suprieure ou gale  la fraction p des valeurs,  la
+   * prcision de l'histogramme prs.
+   *
+   * @param p
+   *          centile recherch, entre 0 et 100 (par exemple 99.9)
+   * @return la valeur du centile, 0 si aucune valeur n'est enregistre
+   */
+  public long getCentile(double p) {
+    if (p < 0.0 || p > 100.0) {
+      throw new IllegalArgumentException("p=" + p);
+    }
+    AtomicLongArray c = compteurs;
+    if (c == null) {
+      return 0;
+    }
+
+    // relire les compteurs plutt que le nombre, pour que le rang reste
+    // atteignable malgr les enregistrements concurrents
+    long[] t = new long[TAILLE];
+    long n = 0;
+    for (int i = 0; i < TAILLE; i++) {
+      t[i] = c.get(i);
+      n += t[i];
+    }
+    long rang = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+    long cumul = 0;
+    for (int i = 0; i < TAILLE; i++) {
+      cumul += t[i];
+      if (cumul >= rang) {
+        return Math.min(borne(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Histogramme [nombre=%d, moyenne=%.1f, p50=%d, "
+            + "p99=%d, p99.9=%d, max=%d]", getNombre(), getMoyenne(),
+            getCentile(50.0), getCentile(99.0), getCentile(99.9), getMax());
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Enregistre une valeur. Une valeur ngative est compte comme nulle.
+   *
+   * @param v
+   *          valeur  enregistrer
+   */
+  public void enregistrer(long v) {
+    if (v < 0) {
+      v = 0;
+    }
+    AtomicLongArray c = compteurs;
+    if (c == null) {
+      c = allouer();
+    }
+    c.incrementAndGet(indice(Math.min(v, VALEUR_MAX)));
+    nombre.increment();
+    somme.add(v);
+    long m = max.get();
+    while (v > m && !max.compareAndSet(m, v)) {
+      m = max.get();
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private synchronized AtomicLongArray allouer() {
+    if (compteurs == null) {
+      compteurs = new AtomicLongArray(TAILLE);
+    }
+    return compteurs;
+  }
+
+  /*
+   * Au-del des valeurs exactes, une valeur v de bit de poids fort e tombe
+   * dans l'intervalle donn par ses BITS bits suivants : les intervalles de
+   * la puissance de 2 de rang e ont une largeur de 2^(e - BITS).
+   */
+  private static int indice(long v) {
+    if (v < EXACTS) {
+      return (int) v;
+    }
+    int e = 63 - Long.numberOfLeadingZeros(v);
+    int m = (int) (v >>> (e - BITS)) & (SOUS - 1);
+    return EXACTS + (e - BITS - 1) * SOUS + m;
+  }
+
+  private static long borne(int i) {
+    if (i < EXACTS) {
+      return i;
+    }
+    int j = i - EXACTS;
+    int e = j / SOUS + BITS + 1;
+    long debut = (long) (SOUS + j % SOUS) << (e - BITS);
+    return debut + (1L << (e - BITS)) - 1;
+  }
+
+}
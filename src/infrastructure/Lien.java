@@ -0,0 +1,207 @@
+package infrastructure;
+
+/**
+ * Lien de sortie d'un {@link Calculateur} vers le {@link Reseau}. Le lien a un
+ * dbit limit et une file de sortie : les messages y sont transmis l'un
+ * aprs l'autre, chacun pendant un temps proportionnel  sa taille
+ * srialise. Le dlai de livraison d'un message comprend donc, en plus de la
+ * latence de propagation, son attente dans la file et sa dure de
+ * transmission.
+ * <p>
+ * Le dbit est illimit par dfaut, ou fix par la proprit systme
+ * <code>infrastructure.reseau.debit</code>, en octets par seconde. Un lien de
+ * dbit illimit n'ajoute aucun dlai.
+ * <p>
+ * Le lien tient des statistiques d'utilisation : nombre de messages et
+ * d'octets transmis, taux d'occupation, profondeur courante et maximale de la
+ * file, attente moyenne. Les dates sont celles de l'{@link Ordonnanceur}
+ * courant, en millisecondes.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Lien {
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final long DEBIT_DEFAUT = Long.getLong(
+          "infrastructure.reseau.debit", 0);
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Ordonnanceur ordonnanceur;
+  private final long creation;
+  private double octetsParMs;
+  // date de fin de transmission du dernier message de la file
+  private double libre;
+  // dates de fin de transmission des messages de la file, dans l'ordre
+  private double[] fins;
+  private int tete;
+  private int profondeur;
+
+  private long messages;
+  private long octets;
+  private double occupation;
+  private double attente;
+  private int profondeurMax;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  Lien(Ordonnanceur o) {
+    ordonnanceur = o;
+    long d = o.maintenant();
+    creation = d;
+    libre = d;
+    fins = new double[16];
+    setDebit(DEBIT_DEFAUT);
+  }
+
+  /**
+   * Retourne le dbit de ce lien.
+   *
+   * @return le dbit de ce lien, en octets par seconde, 0 si illimit
+   */
+  public synchronized long getDebit() {
+    return (long) (octetsParMs * 1000.0);
+  }
+
+  /**
+   * Fixe le dbit de ce lien. Le nouveau dbit s'applique aux messages mis
+   * aprs l'appel.
+   *
+   * @param d
+   *          le nouveau dbit, en octets par seconde, 0 pour un dbit illimit
+   */
+  public synchronized void setDebit(long d) {
+    if (d < 0) {
+      throw new IllegalArgumentException("d=" + d);
+    }
+    octetsParMs = d / 1000.0;
+  }
+
+  /**
+   * Indique si le dbit de ce lien est limit. La taille des messages n'est
+   * utile que dans ce cas.
+   *
+   * @return vrai si le dbit de ce lien est limit
+   */
+  public synchronized boolean estLimite() {
+    return octetsParMs > 0.0;
+  }
+
+  public synchronized long getMessages() {
+    return messages;
+  }
+
+  /**
+   * Retourne le nombre d'octets transmis par ce lien, selon la taille de
+   * l'encodage des messages, qu'ils soient copis ou livrs sans copie.
+   *
+   * @return le nombre d'octets transmis
+   */
+  public synchronized long getOctets() {
+    return octets;
+  }
+
+  public synchronized int getProfondeurMax() {
+    return profondeurMax;
+  }
+
+  /**
+   * Retourne le nombre de messages en attente ou en cours de transmission 
+   * la date spcifie.
+   *
+   * @param t
+   *          date courante
+   * @return la profondeur de la file de sortie
+   */
+  public synchronized int getProfondeur(long t) {
+    purger(t);
+    return profondeur;
+  }
+
+  /**
+   * Retourne la fraction du temps coul depuis la cration du lien pendant
+   * laquelle il a transmis des messages.
+   *
+   * @param t
+   *          date courante
+   * @return le taux d'occupation, entre 0 et 1
+   */
+  public synchronized double getUtilisation(long t) {
+    double o = occupation - Math.max(0.0, libre - t);
+    return t > creation ? Math.max(0.0, o) / (t - creation) : 0.0;
+  }
+
+  /**
+   * Retourne l'attente moyenne d'un message dans la file, avant le dbut de
+   * sa transmission.
+   *
+   * @return l'attente moyenne, en millisecondes
+   */
+  public synchronized double getAttenteMoyenne() {
+    return messages == 0 ? 0.0 : attente / messages;
+  }
+
+  @Override
+  public String toString() {
+    long t = ordonnanceur.maintenant();
+    synchronized (this) {
+      return String.format("Lien [debit=%d, messages=%d, octets=%d, "
+              + "utilisation=%.3f, profondeur=%d, profondeurMax=%d, "
+              + "attente=%.3fms]", getDebit(), messages, octets,
+              getUtilisation(t), getProfondeur(t), profondeurMax,
+              getAttenteMoyenne());
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Place un message dans la file de sortie, et retourne le dlai au bout
+   * duquel sa transmission sera termine.
+   *
+   * @param n
+   *          taille du message, en octets
+   * @param t
+   *          date d'mission
+   * @return le dlai d'attente et de transmission, en millisecondes
+   */
+  synchronized long emettre(int n, long t) {
+    messages++;
+    octets += n;
+    if (octetsParMs <= 0.0) {
+      return 0;
+    }
+    purger(t);
+    double debut = Math.max(libre, t);
+    double duree = n / octetsParMs;
+    libre = debut + duree;
+    attente += debut - t;
+    occupation += duree;
+    if (profondeur == fins.length) {
+      double[] f = new double[2 * fins.length];
+      for (int i = 0; i < profondeur; i++) {
+        f[i] = fins[(tete + i) % fins.length];
+      }
+      fins = f;
+      tete = 0;
+    }
+    fins[(tete + profondeur) % fins.length] = libre;
+    profondeur++;
+    profondeurMax = Math.max(profondeurMax, profondeur);
+    return (long) Math.ceil(libre - t);
+  }
+
+  private void purger(long t) {
+    while (profondeur > 0 && fins[tete] <= t) {
+      tete = (tete + 1) % fins.length;
+      profondeur--;
+    }
+  }
+
+}
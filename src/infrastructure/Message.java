@@ -1,6 +1,10 @@
 package infrastructure;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Message envoy entre deux {@link Calculateur}s via le {@link Reseau}.
@@ -12,12 +16,48 @@ public class Message implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Codec binaire des messages : les noms de l'metteur et du destinataire
+   * sont encods par leur identifiant, le contenu par son propre codec.
+   */
+  static final class CodecMessage implements Codec<Message> {
+
+    @Override
+    public void encoder(Message m, Sortie s) throws IOException {
+      s.ecrireNom(m.emetteur);
+      s.ecrireNom(m.destinataire);
+      s.ecrireObjet(m.contenu);
+    }
+
+    @Override
+    public Message decoder(Entree e) throws IOException {
+      String em = e.lireNom();
+      String d = e.lireNom();
+      Message m = new Message((Serializable) e.lireObjet());
+      m.emetteur = em;
+      m.destinataire = d;
+      return m;
+    }
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final Set<Class<?>> immuables = new HashSet<Class<?>>(
+          Arrays.<Class<?>> asList(String.class, Boolean.class,
+                  Character.class, Byte.class, Short.class, Integer.class,
+                  Long.class, Float.class, Double.class));
+
   //
   // ATTRIBUTS D'OBJET
   //
   private String emetteur;
   private String destinataire;
   private final Serializable contenu;
+  private transient byte[] empreinte; // contenu  l'envoi, si vrifi
 
   //
   // CONSTRUCTEURS ET ACCESSEURS
@@ -38,6 +78,18 @@ public class Message implements Serializable {
     return contenu;
   }
 
+  /**
+   * Indique si le contenu de ce message peut tre livr sans copie : il est
+   * nul, d'un type immuable de la bibliothque standard, ou
+   * {@link Partageable}.
+   *
+   * @return vrai si le contenu peut tre partag
+   */
+  public boolean estPartageable() {
+    return contenu == null || contenu instanceof Partageable
+            || immuables.contains(contenu.getClass());
+  }
+
   void setEmetteur(String e) {
     this.emetteur = e;
   }
@@ -46,6 +98,43 @@ public class Message implements Serializable {
     this.destinataire = d;
   }
 
+  //
+  // PARTAGE DU CONTENU
+  //
+  /**
+   * Retourne une copie de l'enveloppe de ce message, partageant son contenu.
+   *
+   * @param v
+   *          vrai si le contenu doit tre vrifi  la livraison
+   * @return la copie de l'enveloppe
+   */
+  Message copieEnveloppe(boolean v) {
+    Message r = new Message(contenu);
+    r.emetteur = emetteur;
+    r.destinataire = destinataire;
+    if (v) {
+      r.empreinte = new Serialisation(contenu).getRepresentation();
+    }
+    return r;
+  }
+
+  /**
+   * Vrifie que le contenu partag de ce message n'a pas t modifi depuis
+   * son envoi.
+   *
+   * @throws IllegalStateException
+   *           si le contenu a t modifi par l'metteur aprs l'envoi
+   */
+  void verifierContenu() {
+    if (empreinte == null) {
+      return;
+    }
+    byte[] e = new Serialisation(contenu).getRepresentation();
+    if (!Arrays.equals(empreinte, e)) {
+      throw new IllegalStateException("contenu modifie apres envoi : " + this);
+    }
+  }
+
   @Override
   public String toString() {
     return "Message [e=" + emetteur + ", d=" + destinataire + ", c=" + contenu
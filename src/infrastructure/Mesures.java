@@ -0,0 +1,214 @@
+package infrastructure;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mesures d'activit d'un {@link Calculateur}, tenues par le simulateur :
+ * <ul>
+ * <li>nombre de messages et d'octets envoys et reus ; un message  contenu
+ * partageable est livr sans copie, mais ses octets sont compts selon la
+ * taille de son encodage, calcule sans le conserver ;
+ * <li>profondeur courante et maximale de la file des messages livrs mais
+ * pas encore traits : bote aux lettres d'un calculateur synchrone, ou
+ * livraisons en attente du verrou d'un calculateur asynchrone ;
+ * <li>retard des livraisons : cart entre la date prvue d'une livraison et
+ * la date de son excution par l'{@link Ordonnanceur}, qui rvle la
+ * saturation de ses threads ; il n'est mesur qu'en temps rel, un
+ * ordonnanceur virtuel livrant toujours  la date prvue ;
+ * <li>temps de service : dure de traitement d'une requte, enregistre par
+ * le programme du calculateur lui-mme (voir {@link #getService()}).
+ * </ul>
+ * Les dures sont en microsecondes d'horloge murale. Les compteurs et les
+ * {@link Histogramme}s sont sans verrou ; ils peuvent tre lus  tout moment,
+ * notamment par JMX et par les relevs priodiques de {@link Supervision}.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Mesures implements MesuresMBean {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Simulation simulation;
+  private final String nom;
+  private final LongAdder messagesEnvoyes;
+  private final LongAdder octetsEnvoyes;
+  private final LongAdder messagesRecus;
+  private final LongAdder octetsRecus;
+  private final AtomicInteger profondeur;
+  private final AtomicInteger profondeurMax;
+  private final Histogramme retard;
+  private final Histogramme service;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  Mesures(Simulation s, String n) {
+    simulation = s;
+    nom = n;
+    messagesEnvoyes = new LongAdder();
+    octetsEnvoyes = new LongAdder();
+    messagesRecus = new LongAdder();
+    octetsRecus = new LongAdder();
+    profondeur = new AtomicInteger();
+    profondeurMax = new AtomicInteger();
+    retard = new Histogramme();
+    service = new Histogramme();
+  }
+
+  @Override
+  public String getNom() {
+    return nom;
+  }
+
+  @Override
+  public String getSimulation() {
+    return simulation.getNom();
+  }
+
+  @Override
+  public long getMessagesEnvoyes() {
+    return messagesEnvoyes.sum();
+  }
+
+  @Override
+  public long getOctetsEnvoyes() {
+    return octetsEnvoyes.sum();
+  }
+
+  @Override
+  public long getMessagesRecus() {
+    return messagesRecus.sum();
+  }
+
+  @Override
+  public long getOctetsRecus() {
+    return octetsRecus.sum();
+  }
+
+  @Override
+  public int getProfondeur() {
+    return profondeur.get();
+  }
+
+  @Override
+  public int getProfondeurMax() {
+    return profondeurMax.get();
+  }
+
+  /**
+   * Retourne l'histogramme des retards de livraison des messages reus.
+   *
+   * @return l'histogramme des retards, en microsecondes
+   */
+  public Histogramme getRetard() {
+    return retard;
+  }
+
+  /**
+   * Retourne l'histogramme des temps de service du calculateur. Le
+   * simulateur ne connat pas les requtes de l'application : c'est  son
+   * programme d'y enregistrer ses dures de traitement, par exemple :
+   *
+   * <pre>
+   * long d = System.nanoTime();
+   * ... traitement ...
+   * getMesures().getService().enregistrer((System.nanoTime() - d) / 1000);
+   * </pre>
+   *
+   * @return l'histogramme des temps de service, en microsecondes
+   */
+  public Histogramme getService() {
+    return service;
+  }
+
+  @Override
+  public long getRetardNombre() {
+    return retard.getNombre();
+  }
+
+  @Override
+  public long getRetardP50() {
+    return retard.getCentile(50.0);
+  }
+
+  @Override
+  public long getRetardP99() {
+    return retard.getCentile(99.0);
+  }
+
+  @Override
+  public long getRetardP999() {
+    return retard.getCentile(99.9);
+  }
+
+  @Override
+  public long getRetardMax() {
+    return retard.getMax();
+  }
+
+  @Override
+  public long getServiceNombre() {
+    return service.getNombre();
+  }
+
+  @Override
+  public long getServiceP50() {
+    return service.getCentile(50.0);
+  }
+
+  @Override
+  public long getServiceP99() {
+    return service.getCentile(99.0);
+  }
+
+  @Override
+  public long getServiceP999() {
+    return service.getCentile(99.9);
+  }
+
+  @Override
+  public long getServiceMax() {
+    return service.getMax();
+  }
+
+  @Override
+  public String toString() {
+    return "Mesures [nom=" + nom + ", envoyes=" + getMessagesEnvoyes() + "/"
+            + getOctetsEnvoyes() + "o, recus=" + getMessagesRecus() + "/"
+            + getOctetsRecus() + "o, profondeurMax=" + getProfondeurMax()
+            + ", retard=" + retard + ", service=" + service + "]";
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  long maintenant() {
+    return simulation.getOrdonnanceur().maintenant();
+  }
+
+  void compterEnvoi(int o) {
+    messagesEnvoyes.increment();
+    octetsEnvoyes.add(o);
+  }
+
+  void compterReception(int o) {
+    messagesRecus.increment();
+    octetsRecus.add(o);
+  }
+
+  void entrer() {
+    int p = profondeur.incrementAndGet();
+    int m = profondeurMax.get();
+    while (p > m && !profondeurMax.compareAndSet(m, p)) {
+      m = profondeurMax.get();
+    }
+  }
+
+  void sortir() {
+    profondeur.decrementAndGet();
+  }
+
+}
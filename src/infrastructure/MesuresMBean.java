@@ -0,0 +1,48 @@
+package infrastructure;
+
+/**
+ * Interface de gestion JMX des {@link Mesures} d'un {@link Calculateur}. Les
+ * dures sont en microsecondes.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public interface MesuresMBean {
+
+  String getNom();
+
+  String getSimulation();
+
+  long getMessagesEnvoyes();
+
+  long getOctetsEnvoyes();
+
+  long getMessagesRecus();
+
+  long getOctetsRecus();
+
+  int getProfondeur();
+
+  int getProfondeurMax();
+
+  long getRetardNombre();
+
+  long getRetardP50();
+
+  long getRetardP99();
+
+  long getRetardP999();
+
+  long getRetardMax();
+
+  long getServiceNombre();
+
+  long getServiceP50();
+
+  long getServiceP99();
+
+  long getServiceP999();
+
+  long getServiceMax();
+
+}
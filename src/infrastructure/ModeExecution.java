@@ -0,0 +1,99 @@
+package infrastructure;
+
+import java.lang.reflect.Method;
+
+/**
+ * Mode d'excution du programme principal d'un {@link Calculateur}.
+ * <ul>
+ * <li>PLATEFORME : le programme est excut par un thread systme ;
+ * <li>VIRTUEL : le programme est excut par un thread virtuel, beaucoup moins
+ * coteux, ce qui permet de simuler des dizaines de milliers de calculateurs.
+ * Ce mode ncessite une JVM fournissant les threads virtuels (Java 21 et
+ * suivants) ; un thread virtuel est toujours daemon.
+ * </ul>
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public enum ModeExecution {
+
+  PLATEFORME {
+    @Override
+    Thread creer(Runnable r, String n, boolean daemon) {
+      Thread t = new Thread(r, n);
+      t.setDaemon(daemon);
+      return t;
+    }
+  },
+
+  VIRTUEL {
+    @Override
+    Thread creer(Runnable r, String n, boolean daemon) {
+      if (!estDisponible()) {
+        throw new IllegalStateException("threads virtuels indisponibles");
+      }
+      try {
+        Object b = ofVirtual.invoke(null);
+        b = name.invoke(b, n);
+        return (Thread) unstarted.invoke(b, r);
+      } catch (Exception e) {
+        throw new IllegalStateException("creation impossible : " + e);
+      }
+    }
+  };
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  // les threads virtuels sont accds par rflexion, pour que le simulateur
+  // reste utilisable sur les JVM qui ne les fournissent pas
+  private static final Method ofVirtual;
+  private static final Method name;
+  private static final Method unstarted;
+
+  static {
+    Method o = null;
+    Method n = null;
+    Method u = null;
+    try {
+      Class<?> b = Class.forName("java.lang.Thread$Builder");
+      o = Thread.class.getMethod("ofVirtual");
+      n = b.getMethod("name", String.class);
+      u = b.getMethod("unstarted", Runnable.class);
+    } catch (Exception e) {
+      o = null;
+    }
+    ofVirtual = o;
+    name = n;
+    unstarted = u;
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Indique si ce mode d'excution est disponible sur la JVM courante.
+   *
+   * @return vrai si ce mode est disponible
+   */
+  public boolean estDisponible() {
+    return this == PLATEFORME || ofVirtual != null;
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Cre, sans le lancer, le thread excutant la tche spcifie.
+   *
+   * @param r
+   *          tche  excuter
+   * @param n
+   *          nom du thread
+   * @param daemon
+   *          vrai si le thread ne doit pas empcher l'arrt de la JVM
+   * @return le thread cr
+   */
+  abstract Thread creer(Runnable r, String n, boolean daemon);
+
+}
@@ -0,0 +1,145 @@
+package infrastructure;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Modle de rseau donn par une matrice de latences mesures entre
+ * {@link Calculateur}s nomms. Chaque calculateur de la simulation doit
+ * figurer dans la matrice ; sa position est la ligne qui le concerne.
+ * <p>
+ * Le fichier lu par {@link #charger(String, Gigue)} est un fichier texte dont
+ * la premire ligne donne les noms des n calculateurs, et les n lignes
+ * suivantes les latences en millisecondes : le j-ime nombre de la i-ime
+ * ligne est la latence du i-me calculateur vers le j-ime. Les champs sont
+ * spars par des blancs ; les lignes vides et celles commenant par
+ * <code>#</code> sont ignores.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class ModeleMatrice implements ModeleReseau {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Map<String, Integer> indices;
+  private final float[][] latences;
+  private final Gigue gigue;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre un modle  partir d'une matrice de latences.
+   *
+   * @param n
+   *          noms des calculateurs
+   * @param l
+   *          matrice des latences, en millisecondes : l[i][j] est la latence
+   *          du calculateur n[i] vers le calculateur n[j]
+   * @param g
+   *          gigue applique aux latences de base
+   */
+  public ModeleMatrice(String[] n, float[][] l, Gigue g) {
+    if (l.length != n.length || g == null) {
+      throw new IllegalArgumentException("n=" + n.length + ", l=" + l.length
+              + ", g=" + g);
+    }
+    indices = new HashMap<String, Integer>();
+    latences = new float[n.length][];
+    for (int i = 0; i < n.length; i++) {
+      if (l[i].length != n.length || indices.put(n[i], i) != null) {
+        throw new IllegalArgumentException("ligne " + i);
+      }
+      latences[i] = l[i].clone();
+    }
+    gigue = g;
+  }
+
+  @Override
+  public Gigue getGigue() {
+    return gigue;
+  }
+
+  @Override
+  public String toString() {
+    return "ModeleMatrice [calculateurs=" + latences.length + ", gigue="
+            + gigue + "]";
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Charge une matrice de latences depuis un fichier (voir le format plus
+   * haut).
+   *
+   * @param f
+   *          nom du fichier
+   * @param g
+   *          gigue applique aux latences de base
+   * @return le modle correspondant
+   * @throws IOException
+   *           en cas d'erreur de lecture ou de format
+   */
+  public static ModeleMatrice charger(String f, Gigue g) throws IOException {
+    List<String[]> lignes = new ArrayList<String[]>();
+    BufferedReader r = new BufferedReader(new FileReader(f));
+    try {
+      String l;
+      while ((l = r.readLine()) != null) {
+        l = l.trim();
+        if (!l.isEmpty() && !l.startsWith("#")) {
+          lignes.add(l.split("\\s+"));
+        }
+      }
+    } finally {
+      r.close();
+    }
+    if (lignes.isEmpty()) {
+      throw new IOException(f + " : matrice vide");
+    }
+    String[] noms = lignes.get(0);
+    if (lignes.size() != noms.length + 1) {
+      throw new IOException(f + " : " + noms.length + " noms, "
+              + (lignes.size() - 1) + " lignes");
+    }
+    float[][] latences = new float[noms.length][noms.length];
+    for (int i = 0; i < noms.length; i++) {
+      String[] champs = lignes.get(i + 1);
+      if (champs.length != noms.length) {
+        throw new IOException(f + " : ligne " + (i + 1) + " incomplete");
+      }
+      try {
+        for (int j = 0; j < noms.length; j++) {
+          latences[i][j] = Float.parseFloat(champs[j]);
+        }
+      } catch (NumberFormatException e) {
+        throw new IOException(f + " : ligne " + (i + 1) + " : " + e);
+      }
+    }
+    return new ModeleMatrice(noms, latences, g);
+  }
+
+  @Override
+  public Position placer(String n, Random r) {
+    Integer i = indices.get(n);
+    if (i == null) {
+      throw new IllegalArgumentException("n=" + n);
+    }
+    return new Position(r, i);
+  }
+
+  @Override
+  public float latenceBase(Position p1, Position p2) {
+    return latences[p1.getZone()][p2.getZone()];
+  }
+
+}
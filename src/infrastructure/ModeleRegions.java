@@ -0,0 +1,162 @@
+package infrastructure;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Modle de rseau en rgions (centres de donnes, zones gographiques). Les
+ * {@link Calculateur}s d'une mme rgion communiquent avec la latence
+ * intra-rgion de celle-ci ; ceux de rgions diffrentes, avec la latence
+ * inter-rgions du couple. Les latences sont donnes par une matrice carre
+ * indexe par les numros de rgion, dont la diagonale porte les latences
+ * intra-rgion.
+ * <p>
+ * Un calculateur est plac dans la rgion qui lui a t affecte par
+ * {@link #affecter(String, String)} avant sa cration, et sinon dans une
+ * rgion tire uniformment dans son flux alatoire.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class ModeleRegions implements ModeleReseau {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final String[] regions;
+  private final float[][] latences;
+  private final Gigue gigue;
+  private final Map<String, Integer> affectations;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre un modle de n rgions, avec la mme latence intra-rgion pour
+   * toutes les rgions et la mme latence entre deux rgions quelconques.
+   * Les rgions sont nommes R0, R1, etc.
+   *
+   * @param n
+   *          nombre de rgions
+   * @param intra
+   *          latence entre deux calculateurs d'une mme rgion
+   * @param inter
+   *          latence entre deux calculateurs de rgions diffrentes
+   * @param g
+   *          gigue applique aux latences de base
+   */
+  public ModeleRegions(int n, float intra, float inter, Gigue g) {
+    this(noms(n), uniformes(n, intra, inter), g);
+  }
+
+  /**
+   * Cre un modle de rgions  partir de leur matrice de latences.
+   *
+   * @param r
+   *          noms des rgions
+   * @param l
+   *          matrice des latences entre rgions, en millisecondes : l[i][j]
+   *          est la latence de la rgion i vers la rgion j
+   * @param g
+   *          gigue applique aux latences de base
+   */
+  public ModeleRegions(String[] r, float[][] l, Gigue g) {
+    if (r.length == 0 || l.length != r.length || g == null) {
+      throw new IllegalArgumentException("r=" + r.length + ", l="
+              + l.length + ", g=" + g);
+    }
+    for (float[] ligne : l) {
+      if (ligne.length != r.length) {
+        throw new IllegalArgumentException("l");
+      }
+    }
+    regions = r.clone();
+    latences = new float[l.length][];
+    for (int i = 0; i < l.length; i++) {
+      latences[i] = l[i].clone();
+    }
+    gigue = g;
+    affectations = new ConcurrentHashMap<String, Integer>();
+  }
+
+  @Override
+  public Gigue getGigue() {
+    return gigue;
+  }
+
+  /**
+   * Retourne le nom de la rgion de numro spcifi (voir
+   * {@link Position#getZone()}).
+   *
+   * @param z
+   *          numro de la rgion
+   * @return le nom de la rgion
+   */
+  public String getRegion(int z) {
+    return regions[z];
+  }
+
+  @Override
+  public String toString() {
+    return "ModeleRegions [regions=" + regions.length + ", gigue=" + gigue
+            + "]";
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Affecte un calculateur  une rgion. Cette mthode doit tre appele
+   * avant la cration du calculateur.
+   *
+   * @param n
+   *          nom du calculateur
+   * @param r
+   *          nom de la rgion
+   * @throws IllegalArgumentException
+   *           si la rgion n'existe pas
+   */
+  public void affecter(String n, String r) {
+    for (int i = 0; i < regions.length; i++) {
+      if (regions[i].equals(r)) {
+        affectations.put(n, i);
+        return;
+      }
+    }
+    throw new IllegalArgumentException("r=" + r);
+  }
+
+  @Override
+  public Position placer(String n, Random r) {
+    Integer z = affectations.get(n);
+    return new Position(r, z != null ? z : r.nextInt(regions.length));
+  }
+
+  @Override
+  public float latenceBase(Position p1, Position p2) {
+    return latences[p1.getZone()][p2.getZone()];
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private static String[] noms(int n) {
+    String[] r = new String[n];
+    for (int i = 0; i < n; i++) {
+      r[i] = "R" + i;
+    }
+    return r;
+  }
+
+  private static float[][] uniformes(int n, float intra, float inter) {
+    float[][] l = new float[n][n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        l[i][j] = i == j ? intra : inter;
+      }
+    }
+    return l;
+  }
+
+}
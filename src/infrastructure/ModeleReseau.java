@@ -0,0 +1,51 @@
+package infrastructure;
+
+import java.util.Random;
+
+/**
+ * Modle de topologie et de latences du {@link Reseau}. Le modle place chaque
+ * {@link Calculateur}  sa cration, et donne la latence de base entre deux
+ * positions ; la latence de chaque envoi est obtenue en appliquant  cette
+ * latence de base la {@link Gigue} du modle.
+ * <p>
+ * Les latences de base sont mmorises par les calculateurs metteurs : elles
+ * ne doivent dpendre que des positions, et le modle ne doit pas tre chang
+ * une fois les calculateurs crs (voir
+ * {@link Calculateur#setModeleReseau(ModeleReseau)}).
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public interface ModeleReseau {
+
+  /**
+   * Attribue une position  un nouveau calculateur.
+   *
+   * @param n
+   *          nom du calculateur
+   * @param r
+   *          flux alatoire du calculateur, dans lequel faire les tirages
+   * @return la position du calculateur
+   */
+  Position placer(String n, Random r);
+
+  /**
+   * Retourne la latence de base, sans gigue, entre deux positions attribues
+   * par ce modle.
+   *
+   * @param p1
+   *          position de l'metteur
+   * @param p2
+   *          position du destinataire
+   * @return la latence de base, en millisecondes
+   */
+  float latenceBase(Position p1, Position p2);
+
+  /**
+   * Retourne la gigue applique aux latences de base de ce modle.
+   *
+   * @return la gigue de ce modle
+   */
+  Gigue getGigue();
+
+}
@@ -0,0 +1,74 @@
+package infrastructure;
+
+import java.util.Random;
+
+/**
+ * Modle de rseau  l'chelle terrestre : les {@link Calculateur}s sont
+ * placs uniformment sur une sphre, et la latence de base entre deux
+ * calculateurs est proportionnelle  leur distance sur la sphre. C'est le
+ * modle par dfaut du {@link Reseau}.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class ModeleSphere implements ModeleReseau {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final float demieCirconference;
+  private final Gigue gigue;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre le modle par dfaut : une demi-circonfrence de 1000 ms et une
+   * gigue uniforme de 50%.
+   */
+  public ModeleSphere() {
+    this(1000.0f, Gigues.uniforme(0.5f));
+  }
+
+  /**
+   * Cre un modle sphrique.
+   *
+   * @param d
+   *          latence entre deux points diamtralement opposs, en
+   *          millisecondes
+   * @param g
+   *          gigue applique aux latences de base
+   */
+  public ModeleSphere(float d, Gigue g) {
+    if (d < 0.0f || g == null) {
+      throw new IllegalArgumentException("d=" + d + ", g=" + g);
+    }
+    demieCirconference = d;
+    gigue = g;
+  }
+
+  @Override
+  public Gigue getGigue() {
+    return gigue;
+  }
+
+  @Override
+  public String toString() {
+    return "ModeleSphere [demieCirconference=" + demieCirconference
+            + ", gigue=" + gigue + "]";
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  @Override
+  public Position placer(String n, Random r) {
+    return new Position(r);
+  }
+
+  @Override
+  public float latenceBase(Position p1, Position p2) {
+    return demieCirconference * (p1.distance(p2) / (float) Math.PI);
+  }
+
+}
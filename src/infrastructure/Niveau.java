@@ -0,0 +1,25 @@
+package infrastructure;
+
+/**
+ * Niveau de dtail des affichages des {@link Calculateur}s (voir
+ * {@link Trace}), du moins au plus dtaill :
+ * <ul>
+ * <li>AUCUN : aucun affichage ;
+ * <li>ERREUR : erreurs dtectes par le simulateur ;
+ * <li>INFO : affichages des programmes, par
+ * {@link Calculateur#afficher(String)}, et vnements de la vie des
+ * calculateurs (panne, reprise, interruption) ;
+ * <li>TRACE : en plus, chaque envoi, diffusion, perte et rception de
+ * message.
+ * </ul>
+ * Un affichage est produit si son niveau est infrieur ou gal au niveau
+ * courant.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public enum Niveau {
+
+  AUCUN, ERREUR, INFO, TRACE
+
+}
@@ -0,0 +1,103 @@
+package infrastructure;
+
+/**
+ * Ordonnanceur des livraisons de messages du simulateur. Un ordonnanceur
+ * excute en diffr les tches de livraison cres par
+ * {@link Calculateur#envoyer(String, Message)}.
+ * <p>
+ * Les tches planifies pour un mme destinataire avec le mme dlai doivent
+ * tre excutes dans leur ordre de planification, et jamais de faon
+ * concurrente.
+ * <p>
+ * L'ordonnanceur dfinit aussi le temps de la simulation : temps rel (voir
+ * {@link OrdonnanceurTempsReel}) ou temps virtuel (voir
+ * {@link OrdonnanceurVirtuel}). C'est pourquoi les programmes des calculateurs
+ * doivent se suspendre par son intermdiaire, et non par les mthodes de la
+ * classe Thread.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public interface Ordonnanceur {
+
+  /**
+   * Planifie l'excution diffre d'une tche de livraison.
+   *
+   * @param s
+   *          calculateur  l'origine de la tche : un ordonnanceur
+   *          dterministe excute les tches de mme date dans l'ordre de leur
+   *          calculateur d'origine, puis de leur planification par celui-ci
+   * @param d
+   *          nom du calculateur destinataire de la livraison
+   * @param t
+   *          tche  excuter
+   * @param delai
+   *          dlai avant excution, en millisecondes
+   */
+  void planifier(Calculateur s, String d, Runnable t, long delai);
+
+  /**
+   * Planifie en un seul lot l'excution diffre de plusieurs tches de
+   * livraison, typiquement celles d'une diffusion  un groupe.
+   *
+   * @param s
+   *          calculateur  l'origine des tches
+   * @param d
+   *          noms des calculateurs destinataires des livraisons
+   * @param t
+   *          tches  excuter, dans le mme ordre
+   * @param delais
+   *          dlais avant excution, en millisecondes, dans le mme ordre
+   */
+  void planifier(Calculateur s, String[] d, Runnable[] t, long[] delais);
+
+  /**
+   * Retourne la date courante de la simulation.
+   *
+   * @return le nombre de millisecondes coules depuis le dbut de la
+   *         simulation
+   */
+  long maintenant();
+
+  /**
+   * Suspend le thread appelant jusqu' ce qu'il soit rveill par
+   * {@link #reveiller(Thread)} ou que le dlai spcifi soit coul. Comme
+   * pour {@link java.util.concurrent.locks.LockSupport#park()}, le thread
+   * peut aussi tre rveill sans raison : l'appelant doit revrifier la
+   * condition qu'il attend.
+   *
+   * @param c
+   *          calculateur dont le programme se suspend
+   * @param delai
+   *          dlai maximal de suspension en millisecondes, 0 pour suspendre
+   *          sans dlai
+   * @throws InterruptedException
+   *           si le thread appelant est interrompu
+   */
+  void suspendre(Calculateur c, long delai) throws InterruptedException;
+
+  /**
+   * Rveille un thread suspendu par {@link #suspendre(Calculateur, long)}.
+   *
+   * @param t
+   *          thread  rveiller
+   */
+  void reveiller(Thread t);
+
+  /**
+   * Signale qu'un programme de calculateur devient actif. Un programme est
+   * actif de son lancement  sa fin, hors priodes de suspension.
+   */
+  void activer();
+
+  /**
+   * Signale qu'un programme de calculateur se termine.
+   */
+  void desactiver();
+
+  /**
+   * Arrte l'ordonnanceur. Les tches non encore excutes sont abandonnes.
+   */
+  void arreter();
+
+}
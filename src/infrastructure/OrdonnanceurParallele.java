@@ -0,0 +1,98 @@
+package infrastructure;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordonnanceur parallle : les livraisons sont rparties sur plusieurs
+ * partitions, chacune servie par un unique thread. Un destinataire est
+ * toujours associ  la mme partition, ce qui prserve l'ordre des
+ * livraisons  destination d'un mme calculateur, tandis que les livraisons 
+ * des calculateurs diffrents progressent en parallle.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class OrdonnanceurParallele extends OrdonnanceurTempsReel {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final ScheduledThreadPoolExecutor[] partitions;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre un ordonnanceur ayant autant de partitions que de processeurs
+   * disponibles.
+   */
+  public OrdonnanceurParallele() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Cre un ordonnanceur ayant le nombre de partitions spcifi.
+   *
+   * @param n
+   *          nombre de partitions, et donc de threads de livraison
+   */
+  public OrdonnanceurParallele(int n) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("n=" + n);
+    }
+    partitions = new ScheduledThreadPoolExecutor[n];
+    for (int i = 0; i < n; i++) {
+      partitions[i] = new ScheduledThreadPoolExecutor(1, fabrique(i));
+    }
+  }
+
+  public int getNombre() {
+    return partitions.length;
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  @Override
+  public void planifier(Calculateur s, String d, Runnable t, long delai) {
+    partition(d).schedule(t, delai, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void planifier(Calculateur s, String[] d, Runnable[] t,
+          long[] delais) {
+    for (int i = 0; i < t.length; i++) {
+      partition(d[i]).schedule(t[i], delais[i], TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void arreter() {
+    for (ScheduledThreadPoolExecutor p : partitions) {
+      p.shutdownNow();
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  private ScheduledThreadPoolExecutor partition(String d) {
+    int h = d.hashCode();
+    h ^= (h >>> 16);
+    return partitions[(h & 0x7fffffff) % partitions.length];
+  }
+
+  private static ThreadFactory fabrique(final int i) {
+    return new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "ordonnanceur-" + i);
+        t.setDaemon(true);
+        return t;
+      }
+    };
+  }
+
+}
@@ -0,0 +1,62 @@
+package infrastructure;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Classe de base des ordonnanceurs fonctionnant en temps rel : les dlais de
+ * livraison et de suspension sont des dlais d'horloge murale, et l'activit
+ * des programmes n'a pas  tre suivie.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public abstract class OrdonnanceurTempsReel implements Ordonnanceur {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final long debut;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  protected OrdonnanceurTempsReel() {
+    debut = System.currentTimeMillis();
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  @Override
+  public long maintenant() {
+    return System.currentTimeMillis() - debut;
+  }
+
+  @Override
+  public void suspendre(Calculateur c, long delai)
+          throws InterruptedException {
+    if (delai > 0) {
+      LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(delai));
+    } else {
+      LockSupport.park(this);
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  @Override
+  public void reveiller(Thread t) {
+    LockSupport.unpark(t);
+  }
+
+  @Override
+  public void activer() {
+  }
+
+  @Override
+  public void desactiver() {
+  }
+
+}
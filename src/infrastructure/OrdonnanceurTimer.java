@@ -0,0 +1,53 @@
+package infrastructure;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Ordonnanceur historique du simulateur : un unique {@link Timer}, donc un
+ * unique thread, excute toutes les livraisons de tous les calculateurs.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class OrdonnanceurTimer extends OrdonnanceurTempsReel {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final Timer timer;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  public OrdonnanceurTimer() {
+    timer = new Timer(true);
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  @Override
+  public void planifier(Calculateur s, String d, final Runnable t, long delai) {
+    timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        t.run();
+      }
+    }, delai);
+  }
+
+  @Override
+  public void planifier(Calculateur s, String[] d, Runnable[] t,
+          long[] delais) {
+    for (int i = 0; i < t.length; i++) {
+      planifier(s, d[i], t[i], delais[i]);
+    }
+  }
+
+  @Override
+  public void arreter() {
+    timer.cancel();
+  }
+
+}
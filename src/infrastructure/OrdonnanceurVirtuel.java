@@ -0,0 +1,417 @@
+package infrastructure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ordonnanceur  vnements discrets, fonctionnant en temps virtuel. Les
+ * livraisons et les rveils des programmes sont des vnements rangs par
+ * date dans une file de priorit ; un moteur les excute un  un, en avanant
+ * l'horloge virtuelle directement  la date de l'vnement suivant.
+ * <p>
+ * L'horloge n'avance que lorsqu'aucun programme de calculateur n'est actif,
+ * c'est--dire lorsque tous sont termins ou suspendus (en attente d'un
+ * message, ou endormis). Le temps de calcul des programmes est donc nul en
+ * temps virtuel, et la dure d'une simulation ne dpend que de son nombre
+ * d'vnements.
+ * <p>
+ * L'excution est dterministe : les vnements de mme date sont dpartags
+ * par le numro de leur calculateur d'origine, puis par leur rang de
+ * planification chez celui-ci, et les programmes rveills par un vnement ne
+ * reprennent qu'une fois l'vnement termin. Avec une mme graine (voir
+ * {@link Aleatoire}), deux simulations excutent donc les mmes vnements
+ * dans le mme ordre. L'ordre d'excution peut en outre tre enregistr dans
+ * un journal binaire, puis impos  une autre simulation.
+ * <p>
+ * Les mthodes {@link Calculateur#recevoir(Message)} sont excutes par le
+ * moteur : elles ne doivent pas se suspendre.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class OrdonnanceurVirtuel implements Ordonnanceur, Runnable {
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class Evenement implements Comparable<Evenement> {
+
+    private final long date;
+    private final long cle; // calculateur d'origine, rang chez celui-ci
+    private final Runnable tache;
+    private boolean execute;
+    private boolean annule; // ni excut, ni journalis
+
+    Evenement(long d, long c, Runnable t) {
+      date = d;
+      cle = c;
+      tache = t;
+    }
+
+    @Override
+    public int compareTo(Evenement e) {
+      if (date != e.date) {
+        return date < e.date ? -1 : 1;
+      }
+      return cle < e.cle ? -1 : (cle == e.cle ? 0 : 1);
+    }
+  }
+
+  /**
+   * Suspension d'un thread par {@link #suspendre(Calculateur, long)}.
+   */
+  private final class Attente implements Runnable {
+
+    private final Thread thread;
+    private volatile boolean reveille;
+    private Evenement expiration; // null si sans dlai
+
+    Attente(Thread t) {
+      thread = t;
+    }
+
+    // rveil  expiration du dlai de suspension
+    @Override
+    public void run() {
+      reveiller(this);
+    }
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final int BITS_RANG = 40;
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final PriorityQueue<Evenement> evenements;
+  private final Map<Thread, Attente> attentes;
+  private final List<Thread> reveilles; // par l'vnement en cours
+  private final Thread moteur;
+  private volatile long horloge;
+  private long[] rangs; // par calculateur d'origine
+  private int actifs;
+  private boolean arrete;
+
+  // enregistrement et rejeu
+  private Sortie journal;
+  private long dateJournal;
+  private Entree rejeu;
+  private Map<Long, Evenement> parCle;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre un ordonnanceur en temps virtuel, et lance son moteur.
+   */
+  public OrdonnanceurVirtuel() {
+    evenements = new PriorityQueue<Evenement>();
+    attentes = new HashMap<Thread, Attente>();
+    reveilles = new ArrayList<Thread>();
+    horloge = 0;
+    rangs = new long[16];
+    actifs = 0;
+    arrete = false;
+    moteur = new Thread(this, "ordonnanceur-virtuel");
+    moteur.setDaemon(true);
+    moteur.start();
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Enregistre l'ordre d'excution des vnements dans le fichier spcifi.
+   * Cette mthode doit tre appele avant la cration des calculateurs ; le
+   * journal est ferm par {@link #arreter()}.
+   *
+   * @param f
+   *          nom du fichier journal
+   * @throws IOException
+   *           si le fichier ne peut pas tre cr
+   */
+  public synchronized void enregistrer(String f) throws IOException {
+    journal = new Sortie(new BufferedOutputStream(new FileOutputStream(f)));
+    dateJournal = 0;
+  }
+
+  /**
+   * Impose l'ordre d'excution des vnements enregistr dans le fichier
+   * spcifi. Cette mthode doit tre appele avant la cration des
+   * calculateurs. Si la simulation diverge du journal, le rejeu est abandonn
+   * et la simulation se poursuit dans l'ordre normal.
+   *
+   * @param f
+   *          nom du fichier journal
+   * @throws IOException
+   *           si le fichier ne peut pas tre lu
+   */
+  public synchronized void rejouer(String f) throws IOException {
+    rejeu = new Entree(new BufferedInputStream(new FileInputStream(f)));
+    parCle = new HashMap<Long, Evenement>();
+  }
+
+  @Override
+  public synchronized void planifier(Calculateur s, String d, Runnable t,
+          long delai) {
+    ajouter(s, horloge + delai, t);
+  }
+
+  @Override
+  public synchronized void planifier(Calculateur s, String[] d, Runnable[] t,
+          long[] delais) {
+    for (int i = 0; i < t.length; i++) {
+      ajouter(s, horloge + delais[i], t[i]);
+    }
+  }
+
+  @Override
+  public long maintenant() {
+    return horloge;
+  }
+
+  @Override
+  public void suspendre(Calculateur c, long delai)
+          throws InterruptedException {
+    Attente a = new Attente(Thread.currentThread());
+    synchronized (this) {
+      attentes.put(a.thread, a);
+      if (delai > 0) {
+        a.expiration = ajouter(c, horloge + delai, a);
+      }
+      desactiver();
+    }
+    while (!a.reveille) {
+      LockSupport.park(this);
+      if (Thread.interrupted()) {
+        synchronized (this) {
+          if (attentes.get(a.thread) == a) {
+            attentes.remove(a.thread);
+            annuler(a.expiration);
+            actifs++;
+          }
+        }
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  @Override
+  public void reveiller(Thread t) {
+    Attente a;
+    synchronized (this) {
+      a = attentes.get(t);
+    }
+    if (a != null) {
+      reveiller(a);
+    }
+  }
+
+  @Override
+  public synchronized void activer() {
+    actifs++;
+  }
+
+  @Override
+  public synchronized void desactiver() {
+    actifs--;
+    if (actifs == 0) {
+      notifyAll();
+    }
+  }
+
+  @Override
+  public synchronized void arreter() {
+    arrete = true;
+    notifyAll();
+    try {
+      if (journal != null) {
+        journal.fermer();
+      }
+      if (rejeu != null) {
+        rejeu.fermer();
+      }
+    } catch (IOException e) {
+      System.err.println("fermeture du journal impossible : " + e);
+    }
+  }
+
+  /**
+   * Boucle du moteur : attend que plus aucun programme ne soit actif, puis
+   * excute l'vnement suivant.
+   */
+  @Override
+  public void run() {
+    while (true) {
+      Evenement e;
+      synchronized (this) {
+        try {
+          e = suivant();
+        } catch (InterruptedException x) {
+          return;
+        }
+        if (e == null) {
+          return;
+        }
+        if (e.date > horloge) {
+          horloge = e.date;
+        }
+        journaliser(e);
+      }
+      try {
+        e.tache.run();
+      } catch (RuntimeException x) {
+        System.err.println("evenement en erreur a " + horloge + "ms : " + x);
+      }
+
+      // relancer les programmes rveills par l'vnement
+      List<Thread> r;
+      synchronized (this) {
+        r = new ArrayList<Thread>(reveilles);
+        reveilles.clear();
+      }
+      for (Thread t : r) {
+        LockSupport.unpark(t);
+      }
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Attend qu'aucun programme ne soit actif, puis retire l'vnement suivant,
+   * selon la date ou selon le journal rejou. Cette mthode est appele avec
+   * le verrou de l'ordonnanceur.
+   *
+   * @return l'vnement suivant, ou null si l'ordonnanceur est arrt
+   */
+  private Evenement suivant() throws InterruptedException {
+    Long cle = null;
+    while (true) {
+      while (!arrete && (actifs > 0 || evenements.isEmpty())) {
+        wait();
+      }
+      if (arrete) {
+        return null;
+      }
+      if (cle == null && rejeu != null) {
+        cle = lireCle();
+      }
+      if (cle != null) {
+        Evenement e = parCle.remove(cle);
+        if (e != null) {
+          e.execute = true;
+          return e;
+        }
+        System.err.println("divergence du rejeu a " + horloge + "ms");
+        cle = null;
+        rejeu = null;
+        parCle = null;
+      }
+      Evenement e = evenements.poll();
+      if (!e.execute && !e.annule) {
+        if (parCle != null) {
+          parCle.remove(e.cle);
+        }
+        return e;
+      }
+    }
+  }
+
+  private Long lireCle() {
+    try {
+      rejeu.lireLong(); // cart de date, utile seulement  l'analyse
+      return rejeu.lireLong();
+    } catch (EOFException x) {
+      rejeu = null;
+      parCle = null;
+      return null;
+    } catch (IOException x) {
+      System.err.println("lecture du journal impossible : " + x);
+      rejeu = null;
+      parCle = null;
+      return null;
+    }
+  }
+
+  private void journaliser(Evenement e) {
+    if (journal == null) {
+      return;
+    }
+    try {
+      journal.ecrireLong(e.date - dateJournal);
+      journal.ecrireLong(e.cle);
+      dateJournal = e.date;
+    } catch (IOException x) {
+      System.err.println("ecriture du journal impossible : " + x);
+      journal = null;
+    }
+  }
+
+  private Evenement ajouter(Calculateur s, long date, Runnable t) {
+    int n = s.getNumero();
+    if (n >= rangs.length) {
+      rangs = Arrays.copyOf(rangs, Math.max(n + 1, 2 * rangs.length));
+    }
+    Evenement e = new Evenement(date, ((long) n << BITS_RANG) | rangs[n]++, t);
+    evenements.add(e);
+    if (parCle != null) {
+      parCle.put(e.cle, e);
+    }
+    if (actifs == 0) {
+      notifyAll();
+    }
+    return e;
+  }
+
+  /*
+   * Un vnement annul reste dans la file, mais il est ignor  son tour :
+   * il n'avance pas l'horloge et n'est pas journalis. Il est retir des
+   * vnements  rejouer, o il ne peut pas figurer.
+   */
+  private void annuler(Evenement e) {
+    if (e == null) {
+      return;
+    }
+    e.annule = true;
+    if (parCle != null) {
+      parCle.remove(e.cle);
+    }
+  }
+
+  /*
+   * L'expiration du dlai de suspension est annule si le thread est
+   * rveill avant : elle est alors sans objet.
+   */
+  private void reveiller(Attente a) {
+    synchronized (this) {
+      if (attentes.get(a.thread) != a) {
+        return;
+      }
+      attentes.remove(a.thread);
+      annuler(a.expiration);
+      actifs++;
+      a.reveille = true;
+      if (Thread.currentThread() == moteur) {
+        reveilles.add(a.thread);
+        return;
+      }
+    }
+    LockSupport.unpark(a.thread);
+  }
+
+}
@@ -0,0 +1,445 @@
+package infrastructure;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Injection de pannes dans l'acheminement des messages entre
+ * {@link Calculateur}s :
+ * <ul>
+ * <li>perte et duplication de messages, avec une probabilit globale ou
+ * propre  chaque lien orient metteur-destinataire ;
+ * <li>partitions du rseau entre deux ensembles de calculateurs, pendant un
+ * intervalle de temps donn ;
+ * <li>pannes franches de calculateurs, immdiates ou planifies, avec
+ * reprise (voir {@link Calculateur#tomberEnPanne()}).
+ * </ul>
+ * Les pertes, les duplications et les coupures par partition sont dcides 
+ * l'envoi ; un message destin  un calculateur en panne est perdu  sa
+ * livraison. Les tirages sont faits dans le flux alatoire de l'metteur, ce
+ * qui prserve la reproductibilit des simulations. Le nombre de pannes
+ * injectes de chaque type est compt, au total et par lien orient.
+ * <p>
+ * La configuration des pannes et leurs compteurs sont propres  chaque
+ * {@link Simulation} : les mthodes statiques de cette classe s'appliquent
+ *  la simulation courante, et les noms de calculateurs qui leur sont passs
+ * sont ceux de cette simulation.
+ * <p>
+ * Sans panne configure, le cot de ce mcanisme  l'envoi se rduit  la
+ * lecture d'un indicateur.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Pannes {
+
+  //
+  // CLASSES INTERNES
+  //
+  private static final class Partition {
+
+    private final Set<String> a;
+    private final Set<String> b;
+    private final long debut;
+    private final long fin;
+
+    Partition(Set<String> a, Set<String> b, long d, long f) {
+      this.a = a;
+      this.b = b;
+      debut = d;
+      fin = f;
+    }
+
+    boolean coupe(String e, String d, long t) {
+      return t >= debut && t < fin
+              && (a.contains(e) && b.contains(d) || a.contains(d)
+                      && b.contains(e));
+    }
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final String SEPARATEUR = "\u0000";
+
+  // indices des compteurs par type de panne
+  private static final int PERDUS = 0;
+  private static final int DUPLIQUES = 1;
+  private static final int COUPES = 2;
+  private static final int REJETES = 3;
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private volatile boolean actives = false;
+  private volatile double perte = 0.0;
+  private volatile double duplication = 0.0;
+  private final Map<String, Double> pertes = new ConcurrentHashMap<String, Double>();
+  private final Map<String, Double> duplications = new ConcurrentHashMap<String, Double>();
+  private final List<Partition> partitions = new CopyOnWriteArrayList<Partition>();
+
+  private final AtomicLongArray totaux = new AtomicLongArray(4);
+  private final ConcurrentMap<String, AtomicLongArray> parLien = new ConcurrentHashMap<String, AtomicLongArray>();
+  private final AtomicLong arrets = new AtomicLong();
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre l'tat des pannes d'une simulation, sans panne configure.
+   */
+  Pannes() {
+  }
+
+  /**
+   * Fixe la probabilit de perte des messages sur les liens sans probabilit
+   * propre.
+   *
+   * @param p
+   *          probabilit de perte, entre 0 et 1
+   */
+  public static void setPerte(double p) {
+    Pannes s = courantes();
+    s.perte = probabilite(p);
+    s.actualiser();
+  }
+
+  /**
+   * Fixe la probabilit de perte des messages sur un lien orient.
+   *
+   * @param e
+   *          nom de l'metteur
+   * @param d
+   *          nom du destinataire
+   * @param p
+   *          probabilit de perte, entre 0 et 1
+   */
+  public static void setPerte(String e, String d, double p) {
+    Pannes s = courantes();
+    s.pertes.put(e + SEPARATEUR + d, probabilite(p));
+    s.actualiser();
+  }
+
+  /**
+   * Fixe la probabilit de duplication des messages sur les liens sans
+   * probabilit propre. Un message dupliqu est livr deux fois, avec deux
+   * latences tires indpendamment.
+   *
+   * @param p
+   *          probabilit de duplication, entre 0 et 1
+   */
+  public static void setDuplication(double p) {
+    Pannes s = courantes();
+    s.duplication = probabilite(p);
+    s.actualiser();
+  }
+
+  /**
+   * Fixe la probabilit de duplication des messages sur un lien orient.
+   *
+   * @param e
+   *          nom de l'metteur
+   * @param d
+   *          nom du destinataire
+   * @param p
+   *          probabilit de duplication, entre 0 et 1
+   */
+  public static void setDuplication(String e, String d, double p) {
+    Pannes s = courantes();
+    s.duplications.put(e + SEPARATEUR + d, probabilite(p));
+    s.actualiser();
+  }
+
+  public static long getPerdus() {
+    return courantes().totaux.get(PERDUS);
+  }
+
+  public static long getDupliques() {
+    return courantes().totaux.get(DUPLIQUES);
+  }
+
+  public static long getCoupes() {
+    return courantes().totaux.get(COUPES);
+  }
+
+  public static long getRejetes() {
+    return courantes().totaux.get(REJETES);
+  }
+
+  /**
+   * Retourne le nombre de messages perdus sur un lien orient.
+   *
+   * @param e
+   *          nom de l'metteur
+   * @param d
+   *          nom du destinataire
+   * @return le nombre de messages perdus de e vers d
+   */
+  public static long getPerdus(String e, String d) {
+    return courantes().lire(PERDUS, e, d);
+  }
+
+  /**
+   * Retourne le nombre de messages dupliqus sur un lien orient.
+   *
+   * @param e
+   *          nom de l'metteur
+   * @param d
+   *          nom du destinataire
+   * @return le nombre de messages dupliqus de e vers d
+   */
+  public static long getDupliques(String e, String d) {
+    return courantes().lire(DUPLIQUES, e, d);
+  }
+
+  /**
+   * Retourne le nombre de messages coups par une partition sur un lien
+   * orient.
+   *
+   * @param e
+   *          nom de l'metteur
+   * @param d
+   *          nom du destinataire
+   * @return le nombre de messages coups de e vers d
+   */
+  public static long getCoupes(String e, String d) {
+    return courantes().lire(COUPES, e, d);
+  }
+
+  /**
+   * Retourne le nombre de messages rejets sur un lien orient, parce que
+   * l'metteur ou le destinataire tait en panne.
+   *
+   * @param e
+   *          nom de l'metteur
+   * @param d
+   *          nom du destinataire
+   * @return le nombre de messages rejets de e vers d
+   */
+  public static long getRejetes(String e, String d) {
+    return courantes().lire(REJETES, e, d);
+  }
+
+  public static long getArrets() {
+    return courantes().arrets.get();
+  }
+
+  /**
+   * Retourne un rsum des pannes injectes depuis le dbut de la
+   * simulation courante.
+   *
+   * @return le rsum des compteurs de pannes
+   */
+  public static String bilan() {
+    return courantes().toString();
+  }
+
+  @Override
+  public String toString() {
+    return "Pannes [perdus=" + totaux.get(PERDUS) + ", dupliques="
+            + totaux.get(DUPLIQUES) + ", coupes=" + totaux.get(COUPES)
+            + ", rejetes=" + totaux.get(REJETES) + ", arrets=" + arrets + "]";
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Coupe le rseau entre deux ensembles de calculateurs pendant un
+   * intervalle de temps : les messages envoys d'un ensemble  l'autre
+   * pendant cet intervalle sont perdus. Les messages dj en transit au dbut
+   * de l'intervalle sont livrs.
+   *
+   * @param a
+   *          noms des calculateurs du premier ensemble
+   * @param b
+   *          noms des calculateurs du second ensemble
+   * @param debut
+   *          date de dbut de la partition, selon l'ordonnanceur courant
+   * @param duree
+   *          dure de la partition, en millisecondes
+   */
+  public static void partitionner(String[] a, String[] b, long debut,
+          long duree) {
+    if (duree < 0) {
+      throw new IllegalArgumentException("duree=" + duree);
+    }
+    Pannes s = courantes();
+    s.partitions.add(new Partition(new HashSet<String>(Arrays.asList(a)),
+            new HashSet<String>(Arrays.asList(b)), debut, debut + duree));
+    s.actualiser();
+  }
+
+  /**
+   * Planifie la panne franche d'un calculateur, suivie de sa reprise. En
+   * temps virtuel, cette mthode doit tre appele une fois les calculateurs
+   * dmarrs : un vnement planifi alors qu'aucun programme n'est actif est
+   * excut immdiatement, en avanant l'horloge.
+   *
+   * @param n
+   *          nom du calculateur, dans la {@link Simulation} courante
+   * @param delai
+   *          dlai avant la panne, en millisecondes
+   * @param duree
+   *          dure de la panne, en millisecondes
+   */
+  public static void planifierPanne(String n, long delai, long duree) {
+    final Calculateur c = Calculateur.toCalculateur(n);
+    Runnable panne = new Runnable() {
+      @Override
+      public void run() {
+        c.tomberEnPanne();
+      }
+    };
+    Runnable reprise = new Runnable() {
+      @Override
+      public void run() {
+        c.reprendre();
+      }
+    };
+    c.getSimulation().getOrdonnanceur().planifier(c, new String[] { n, n },
+            new Runnable[] { panne, reprise },
+            new long[] { delai, delai + duree });
+  }
+
+  /**
+   * Supprime toutes les pannes configures dans la simulation courante :
+   * probabilits de perte et de duplication, et partitions. Les calculateurs
+   * en panne le restent, et les compteurs sont conservs.
+   */
+  public static void retablir() {
+    Pannes s = courantes();
+    s.perte = 0.0;
+    s.duplication = 0.0;
+    s.pertes.clear();
+    s.duplications.clear();
+    s.partitions.clear();
+    s.actualiser();
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Retourne le nombre de copies d'un message  acheminer de l'metteur au
+   * destinataire spcifis : 0 si le message est perdu, 2 s'il est dupliqu,
+   * et 1 sinon.
+   *
+   * @param e
+   *          calculateur metteur
+   * @param d
+   *          calculateur destinataire
+   * @param t
+   *          date de l'envoi
+   * @return le nombre de copies  acheminer
+   */
+  static int copies(Calculateur e, Calculateur d, long t) {
+    return e.getSimulation().getPannes().tirer(e, d, t);
+  }
+
+  /**
+   * Indique si un message doit tre livr  son destinataire, c'est--dire
+   * si celui-ci n'est pas en panne.
+   *
+   * @param e
+   *          nom de l'metteur du message
+   * @param d
+   *          calculateur destinataire
+   * @return vrai si le message doit tre livr
+   */
+  static boolean livrable(String e, Calculateur d) {
+    if (d.estEnPanne()) {
+      d.getSimulation().getPannes().compter(REJETES, e, d.getNom());
+      return false;
+    }
+    return true;
+  }
+
+  static void compterArret(Calculateur c) {
+    c.getSimulation().getPannes().arrets.incrementAndGet();
+  }
+
+  private static Pannes courantes() {
+    return Simulation.courante().getPannes();
+  }
+
+  private int tirer(Calculateur e, Calculateur d, long t) {
+    if (e.estEnPanne()) {
+      compter(REJETES, e.getNom(), d.getNom());
+      return 0;
+    }
+    if (!actives || e == d) {
+      return 1;
+    }
+    for (Partition p : partitions) {
+      if (p.coupe(e.getNom(), d.getNom(), t)) {
+        compter(COUPES, e.getNom(), d.getNom());
+        return 0;
+      }
+    }
+    double pp = probabilite(pertes, perte, e, d);
+    if (pp > 0.0 && e.getAleatoire().nextDouble() < pp) {
+      compter(PERDUS, e.getNom(), d.getNom());
+      return 0;
+    }
+    double pd = probabilite(duplications, duplication, e, d);
+    if (pd > 0.0 && e.getAleatoire().nextDouble() < pd) {
+      compter(DUPLIQUES, e.getNom(), d.getNom());
+      return 2;
+    }
+    return 1;
+  }
+
+  /*
+   * Les compteurs d'un lien sont crs  sa premire panne : le cot du
+   * comptage par lien n'est pay que par les messages affects.
+   */
+  private void compter(int t, String e, String d) {
+    totaux.incrementAndGet(t);
+    String k = e + SEPARATEUR + d;
+    AtomicLongArray c = parLien.get(k);
+    if (c == null) {
+      c = new AtomicLongArray(4);
+      AtomicLongArray p = parLien.putIfAbsent(k, c);
+      if (p != null) {
+        c = p;
+      }
+    }
+    c.incrementAndGet(t);
+  }
+
+  private long lire(int t, String e, String d) {
+    AtomicLongArray c = parLien.get(e + SEPARATEUR + d);
+    return c == null ? 0 : c.get(t);
+  }
+
+  private static double probabilite(Map<String, Double> m, double defaut,
+          Calculateur e, Calculateur d) {
+    if (m.isEmpty()) {
+      return defaut;
+    }
+    Double p = m.get(e.getNom() + SEPARATEUR + d.getNom());
+    return p != null ? p : defaut;
+  }
+
+  private static double probabilite(double p) {
+    if (p < 0.0 || p > 1.0) {
+      throw new IllegalArgumentException("p=" + p);
+    }
+    return p;
+  }
+
+  private void actualiser() {
+    actives = perte > 0.0 || duplication > 0.0 || !pertes.isEmpty()
+            || !duplications.isEmpty() || !partitions.isEmpty();
+  }
+
+}
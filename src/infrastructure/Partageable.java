@@ -0,0 +1,21 @@
+package infrastructure;
+
+import java.io.Serializable;
+
+/**
+ * Interface marqueur des contenus de {@link Message} pouvant tre partags
+ * entre l'metteur et le destinataire sans tre copis. Un contenu partageable
+ * doit tre immuable, ou au moins ne plus tre modifi par son metteur aprs
+ * l'envoi.
+ * <p>
+ * Les messages dont le contenu est partageable sont livrs sans passer par la
+ * {@link Serialisation} : seule l'enveloppe du message est duplique. Les
+ * autres messages sont copis intgralement, ce qui isole compltement
+ * l'metteur du destinataire.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public interface Partageable extends Serializable {
+
+}
@@ -3,30 +3,59 @@ package infrastructure;
 import java.util.Random;
 
 /**
- * La position d'un {@link Calculateur} dans le {@link Reseau}.
+ * La position d'un {@link Calculateur} dans le {@link Reseau}. Une position
+ * est attribue par le {@link ModeleReseau} courant : elle comprend un point
+ * de la sphre terrestre et, selon le modle, une zone (rgion, ligne de
+ * matrice de latences).
+ * <p>
+ * En plus de ses coordonnes sphriques, la position mmorise le vecteur
+ * unitaire correspondant, ce qui ramne le calcul de la distance  un produit
+ * scalaire suivi d'un unique arc cosinus.
  *
  * @author Jean-Michel Busca
  *
  */
 public final class Position {
 
-  //
-  // ATTRIBUTS DE CLASSE
-  //
-  private static final Random random = new Random(System.currentTimeMillis());
-
   //
   // ATTRIBUTS D'OBJET
   //
   private final float theta;
   private final float phi;
+  private final double x;
+  private final double y;
+  private final double z;
+  private final int zone;
 
   //
   // CONSTRUCTEURS ET ACCESSEURS
   //
-  public Position() {
-    this.theta = (float) Math.asin(2.0 * random.nextFloat() - 1.0);
-    this.phi = (float) (2.0 * Math.PI * random.nextFloat());
+  /**
+   * Cre une position tire uniformment sur la sphre, hors de toute zone.
+   *
+   * @param r
+   *          flux alatoire dans lequel tirer la position
+   */
+  public Position(Random r) {
+    this(r, -1);
+  }
+
+  /**
+   * Cre une position tire uniformment sur la sphre, dans la zone
+   * spcifie.
+   *
+   * @param r
+   *          flux alatoire dans lequel tirer la position
+   * @param z
+   *          numro de zone, -1 si aucune
+   */
+  public Position(Random r, int z) {
+    this.theta = (float) Math.asin(2.0 * r.nextFloat() - 1.0);
+    this.phi = (float) (2.0 * Math.PI * r.nextFloat());
+    this.zone = z;
+    this.x = Math.cos(theta) * Math.cos(phi);
+    this.y = Math.cos(theta) * Math.sin(phi);
+    this.z = Math.sin(theta);
   }
 
   public float getTheta() {
@@ -37,18 +66,36 @@ public final class Position {
     return phi;
   }
 
+  public int getZone() {
+    return zone;
+  }
+
   @Override
   public String toString() {
-    return "Position [theta=" + theta + ", phi=" + phi + "]";
+    return "Position [theta=" + theta + ", phi=" + phi
+            + (zone < 0 ? "" : ", zone=" + zone) + "]";
   }
 
   //
   // DISTANCE
   //
+  /**
+   * Calcule la distance angulaire entre cette position et la position
+   * spcifie, en radians.
+   *
+   * @param p
+   *          la position dont calculer la distance
+   * @return la distance entre les deux positions, entre 0 et pi
+   */
   public final float distance(Position p) {
-    double d = Math.acos(Math.cos(phi - p.phi) * Math.cos(theta)
-            * Math.cos(p.theta) + Math.sin(theta) * Math.sin(p.theta));
-    return (float) d;
+    double c = x * p.x + y * p.y + z * p.z;
+    // les erreurs d'arrondi peuvent faire sortir c de [-1, 1]
+    if (c > 1.0) {
+      c = 1.0;
+    } else if (c < -1.0) {
+      c = -1.0;
+    }
+    return (float) Math.acos(c);
   }
 
 }
@@ -1,25 +1,25 @@
 package infrastructure;
 
+import java.io.IOException;
 import java.util.Random;
 
 /**
- * Modlise le rseau de communication entre {@link Calculateur}s. Le rseau est
- *  l'chelle terrestre : les {@link Calculateur} sont placs sur une sphre
- * pour calculer les latences de communication.
+ * Modlise le rseau de communication entre {@link Calculateur}s. La
+ * topologie et les latences sont donnes par le {@link ModeleReseau} de la
+ * {@link Simulation} courante, propre  chaque simulation. Par dfaut, le rseau est  l'chelle terrestre : les {@link Calculateur}
+ * sont placs sur une sphre pour calculer les latences de communication
+ * (voir {@link ModeleSphere}). Si la proprit systme
+ * <code>infrastructure.reseau.matrice</code> est dfinie, les latences sont
+ * lues dans le fichier qu'elle dsigne (voir {@link ModeleMatrice}).
+ * <p>
+ * Les tirages alatoires sont faits dans le flux fourni par l'appelant,
+ * typiquement celui du calculateur concern (voir {@link Aleatoire}).
  *
  * @author Jean-Michel Busca
  *
  */
 final class Reseau {
 
-  //
-  // ATTRIBUTS DE CLASSE
-  //
-  private static final Random random = new Random(System.currentTimeMillis());
-
-  private static final float DEMIE_CIRCONFERENCE = 1000.0f; // ms
-  private static final float POURCENT_GIGUE = 0.5f; // 50%
-
   //
   // CONSTRUCTEURS ET ACCESSEURS
   //
@@ -30,13 +30,16 @@ final class Reseau {
   // METHODES PUBLIQUES
   //
   /**
-   * Retourne une nouvelle position dans le rseau.
+   * Retourne la position d'un nouveau calculateur dans le rseau.
    *
-   * @return une nouvelle position dans le rseau
+   * @param n
+   *          nom du calculateur
+   * @param r
+   *          flux alatoire dans lequel tirer la position
+   * @return la position du calculateur dans le rseau
    */
-  public static Position newPosition() {
-    return new Position();
-
+  public static Position placer(String n, Random r) {
+    return modele().placer(n, r);
   }
 
   /**
@@ -47,24 +50,86 @@ final class Reseau {
    *          premire position dans le rseau
    * @param p2
    *          deuxime position dans le rseau
+   * @param r
+   *          flux alatoire dans lequel tirer la gigue
    * @return la latence entre les deux positions
    */
-  public static final long latence(Position p1, Position p2) {
-    float l = DEMIE_CIRCONFERENCE * (p1.distance(p2) / (float) Math.PI);
-    l *= (1 + ((random.nextFloat() - 0.5f) * 2.0f * POURCENT_GIGUE));
-    return (long) l;
+  public static final long latence(Position p1, Position p2, Random r) {
+    return latence(latenceBase(p1, p2), r);
+  }
+
+  /**
+   * Calcule la latence de base, c'est--dire sans gigue, entre deux
+   * positions. Cette latence ne dpendant que des positions, elle peut tre
+   * calcule une fois pour toutes et mmorise par l'appelant.
+   *
+   * @param p1
+   *          premire position dans le rseau
+   * @param p2
+   *          deuxime position dans le rseau
+   * @return la latence de base entre les deux positions
+   */
+  public static final float latenceBase(Position p1, Position p2) {
+    return modele().latenceBase(p1, p2);
+  }
+
+  /**
+   * Applique la gigue du modle courant  une latence de base.
+   *
+   * @param b
+   *          latence de base (voir {@link #latenceBase(Position, Position)})
+   * @param r
+   *          flux alatoire dans lequel tirer la gigue
+   * @return la latence incluant la gigue
+   */
+  public static final long latence(float b, Random r) {
+    return modele().getGigue().appliquer(b, r);
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Cre le modle de rseau initial d'une simulation, selon les proprits
+   * systme.
+   *
+   * @return le nouveau modle de rseau
+   */
+  static ModeleReseau nouveauModele() {
+    String f = System.getProperty("infrastructure.reseau.matrice");
+    if (f == null) {
+      return new ModeleSphere();
+    }
+    try {
+      return ModeleMatrice.charger(f, Gigues.uniforme(0.5f));
+    } catch (IOException e) {
+      throw new IllegalStateException("infrastructure.reseau.matrice : " + e);
+    }
+  }
+
+  private static ModeleReseau modele() {
+    return Simulation.courante().getModeleReseau();
   }
 
   //
   // TEST
   //
   public static void main(String[] args) throws InterruptedException {
-    Position p1 = newPosition();
-    System.out.println("p1 = " + p1);
-    Position p2 = newPosition();
-    System.out.println("p2 = " + p2);
-    for (int i = 0; i < 20; i++) {
-      System.out.println("latence = " + latence(p1, p2));
+    Random random = Aleatoire.flux("Reseau");
+    ModeleReseau[] modeles = {
+        new ModeleSphere(),
+        new ModeleSphere(1000.0f, Gigues.pareto(0.2f, 1.5)),
+        new ModeleRegions(3, 1.0f, 80.0f, Gigues.logNormale(0.5)) };
+    for (ModeleReseau m : modeles) {
+      System.out.println(m);
+      Position p1 = m.placer("p1", random);
+      System.out.println("p1 = " + p1);
+      Position p2 = m.placer("p2", random);
+      System.out.println("p2 = " + p2);
+      float b = m.latenceBase(p1, p2);
+      for (int i = 0; i < 10; i++) {
+        System.out.println("latence = " + m.getGigue().appliquer(b, random));
+      }
     }
   }
 
@@ -1,29 +1,37 @@
 package infrastructure;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 
 /**
- * Classe utilitaire permettant de serialiser et dserialiser un objet.
+ * Classe utilitaire permettant de serialiser et dserialiser un objet. Les
+ * objets sont encods au format binaire compact des {@link Codec}s ; les types
+ * sans codec enregistr sont encods par la srialisation Java standard.
  *
  * @author Jean-Michel Busca
  *
  */
 class Serialisation {
 
+  // flux d'octets sans destination, pour le calcul des tailles
+  private static final OutputStream NEANT = new OutputStream() {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int o, int n) {
+    }
+  };
+
   // object field
   private byte[] representation;
 
   // constructor
   Serialisation(Object object) {
     try {
-      ByteArrayOutputStream array = new ByteArrayOutputStream();
-      ObjectOutputStream stream = new ObjectOutputStream(array);
-      stream.writeObject(object);
-      stream.close();
-      representation = array.toByteArray();
+      Sortie sortie = new Sortie();
+      sortie.ecrireObjet(object);
+      representation = sortie.toByteArray();
     } catch (Exception exception) {
       throw new RuntimeException("could not serialize " + object + ": "
               + exception);
@@ -33,9 +41,7 @@ class Serialisation {
   // methods
   public Object copie() {
     try {
-      ByteArrayInputStream array = new ByteArrayInputStream(representation);
-      ObjectInputStream stream = new ObjectInputStream(array);
-      return stream.readObject();
+      return new Entree(representation).lireObjet();
     } catch (Exception exception) {
       throw new RuntimeException("could not deserialize object: " + exception);
     }
@@ -49,4 +55,24 @@ class Serialisation {
     return representation.length;
   }
 
+  /**
+   * Calcule la taille de l'encodage d'un objet sans le conserver, pour
+   * compter les octets d'un message livr sans copie : l'objet est encod
+   * dans un flux sans destination, qui ne fait que compter les octets.
+   *
+   * @param object
+   *          objet  mesurer
+   * @return la taille de l'encodage de l'objet, en octets
+   */
+  static int taille(Object object) {
+    try {
+      Sortie sortie = new Sortie(NEANT);
+      sortie.ecrireObjet(object);
+      return sortie.getTaille();
+    } catch (Exception exception) {
+      throw new RuntimeException("could not serialize " + object + ": "
+              + exception);
+    }
+  }
+
 }
@@ -0,0 +1,454 @@
+package infrastructure;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Une simulation : l'ensemble des {@link Calculateur}s et des {@link Groupe}s
+ * qui communiquent entre eux, avec leur {@link Ordonnanceur} et la graine de
+ * leurs flux alatoires. Plusieurs simulations indpendantes peuvent
+ * s'excuter en parallle dans la mme JVM, par exemple pour balayer les
+ * valeurs d'un paramtre sur tous les processeurs : les noms de calculateurs
+ * et de groupes ne sont uniques qu'au sein d'une simulation, et l'horloge de
+ * chaque simulation lui est propre.
+ * <p>
+ * Chaque thread a une simulation courante, dans laquelle sont crs les
+ * calculateurs et les groupes et sont rsolus les noms passs aux mthodes
+ * statiques de Calculateur, Groupe et {@link Pannes}. C'est la simulation
+ * par dfaut, sauf pendant {@link #executer(Callable)} ; elle est hrite
+ * par les threads crs, et c'est celle du calculateur dans son programme
+ * principal.
+ * <p>
+ * Les noms sont rsolus une fois pour toutes en numros : les calculateurs
+ * sont numrots  partir de 0 dans leur ordre de cration, et
+ * {@link #toCalculateur(int)} est une simple lecture de tableau. Les
+ * registres sont sans verrou en lecture, et peuvent tre consults par tous
+ * les threads de la simulation pendant la cration des calculateurs.
+ * <p>
+ * Chaque simulation a aussi son propre modle de {@link Reseau}, sa
+ * configuration et ses compteurs de {@link Pannes}, son annuaire d'objets
+ * publis par l'application (voir {@link #getAnnuaire(Class)}), et le
+ * registre des {@link Mesures} de ses calculateurs, que la
+ * {@link Supervision} parcourt. Restent communs  toutes les simulations :
+ * le mode d'excution des calculateurs, la {@link Trace} et la supervision.
+ * Dans la trace, les calculateurs d'une simulation autre que celle par
+ * dfaut sont prfixs par le nom de leur simulation.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Simulation {
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Simulation par dfaut, cre au premier besoin.
+   */
+  private static final class Defaut {
+    static final Simulation INSTANCE = new Simulation("defaut", null);
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final InheritableThreadLocal<Simulation> courante = new InheritableThreadLocal<Simulation>();
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final String nom;
+  private final Long graine; // null : graine commune (voir Aleatoire)
+  private volatile Ordonnanceur ordonnanceur;
+  private final ConcurrentMap<String, Calculateur> parNom;
+  private volatile Calculateur[] parNumero;
+  private int nombre;
+  private final ConcurrentMap<String, Groupe> groupes;
+  private volatile ModeleReseau modeleReseau;
+  private final Pannes pannes;
+  private final ConcurrentMap<Class<?>, ConcurrentMap<String, ?>> annuaires;
+  private final Queue<Mesures> mesures; // dans l'ordre de cration
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre une simulation dont les flux alatoires drivent de la graine
+   * commune (voir {@link Aleatoire}).
+   *
+   * @param n
+   *          nom de la simulation
+   */
+  public Simulation(String n) {
+    this(n, null);
+  }
+
+  /**
+   * Cre une simulation dont les flux alatoires drivent de la graine
+   * spcifie : deux simulations de mme graine et de mmes programmes
+   * donnent, en temps virtuel, les mmes rsultats.
+   *
+   * @param n
+   *          nom de la simulation
+   * @param g
+   *          graine de la simulation
+   */
+  public Simulation(String n, long g) {
+    this(n, Long.valueOf(g));
+  }
+
+  private Simulation(String n, Long g) {
+    if (n == null) {
+      throw new IllegalArgumentException("n");
+    }
+    nom = n;
+    graine = g;
+    parNom = new ConcurrentHashMap<String, Calculateur>();
+    parNumero = new Calculateur[16];
+    nombre = 0;
+    groupes = new ConcurrentHashMap<String, Groupe>();
+    modeleReseau = Reseau.nouveauModele();
+    pannes = new Pannes();
+    annuaires = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, ?>>();
+    mesures = new ConcurrentLinkedQueue<Mesures>();
+
+    // les threads de l'ordonnanceur hritent de cette simulation
+    Simulation p = courante.get();
+    courante.set(this);
+    try {
+      ordonnanceur = nouvelOrdonnanceur();
+    } finally {
+      courante.set(p);
+    }
+    Supervision.inscrire(this);
+  }
+
+  public String getNom() {
+    return nom;
+  }
+
+  /**
+   * Retourne la graine de cette simulation.
+   *
+   * @return la graine propre  cette simulation, ou  dfaut la graine
+   *         commune
+   */
+  public long getGraine() {
+    return graine != null ? graine : Aleatoire.getGraine();
+  }
+
+  /**
+   * Retourne l'ordonnanceur des livraisons de messages de cette simulation.
+   *
+   * @return l'ordonnanceur de cette simulation
+   */
+  public Ordonnanceur getOrdonnanceur() {
+    return ordonnanceur;
+  }
+
+  /**
+   * Remplace l'ordonnanceur de cette simulation, et arrte l'ancien. Pour que
+   * ses threads hritent de cette simulation, le nouvel ordonnanceur doit
+   * tre cr dans la simulation.
+   * <p>
+   * Par dfaut, l'ordonnanceur est un {@link OrdonnanceurParallele} dont le
+   * nombre de threads est donn par la proprit systme
+   * <code>infrastructure.ordonnanceur.threads</code> (nombre de processeurs
+   * si absente, {@link OrdonnanceurTimer} si nulle). Si la proprit systme
+   * <code>infrastructure.temps</code> vaut <code>virtuel</code>, c'est un
+   * {@link OrdonnanceurVirtuel}.
+   *
+   * @param o
+   *          le nouvel ordonnanceur
+   * @throws IllegalStateException
+   *           si des calculateurs ont dj t crs dans cette simulation
+   */
+  public synchronized void setOrdonnanceur(Ordonnanceur o) {
+    if (o == null) {
+      throw new IllegalArgumentException("o");
+    }
+    if (nombre > 0) {
+      throw new IllegalStateException("calculateurs deja crees");
+    }
+    Ordonnanceur ancien = ordonnanceur;
+    ordonnanceur = o;
+    ancien.arreter();
+  }
+
+  /**
+   * Retourne le modle de topologie et de latences du rseau de cette
+   * simulation.
+   *
+   * @return le modle de rseau de cette simulation
+   */
+  public ModeleReseau getModeleReseau() {
+    return modeleReseau;
+  }
+
+  /**
+   * Remplace le modle de topologie et de latences du rseau de cette
+   * simulation. Les calculateurs tant placs  leur cration, et leurs
+   * latences de base mmorises, cette mthode doit tre appele avant la
+   * cration des calculateurs.
+   *
+   * @param m
+   *          le nouveau modle de rseau
+   */
+  public void setModeleReseau(ModeleReseau m) {
+    if (m == null) {
+      throw new IllegalArgumentException("m");
+    }
+    modeleReseau = m;
+  }
+
+  /**
+   * Retourne le nombre de calculateurs crs dans cette simulation.
+   *
+   * @return le nombre de calculateurs
+   */
+  public synchronized int getNombre() {
+    return nombre;
+  }
+
+  /**
+   * Retourne la simulation courante du thread appelant.
+   *
+   * @return la simulation courante
+   */
+  public static Simulation courante() {
+    Simulation s = courante.get();
+    return s != null ? s : Defaut.INSTANCE;
+  }
+
+  @Override
+  public String toString() {
+    return nom;
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Excute une tche dans le thread appelant, avec cette simulation pour
+   * simulation courante : les calculateurs et les groupes que cre la tche
+   * appartiennent  cette simulation. La simulation courante prcdente est
+   * rtablie au retour.
+   *
+   * @param t
+   *          tche  excuter, typiquement le programme de lancement de la
+   *          simulation
+   * @return le rsultat de la tche
+   * @throws Exception
+   *           si la tche lance une exception
+   */
+  public <V> V executer(Callable<V> t) throws Exception {
+    Simulation p = courante.get();
+    courante.set(this);
+    try {
+      return t.call();
+    } finally {
+      courante.set(p);
+    }
+  }
+
+  /**
+   * Arrte cette simulation : interrompt les programmes des calculateurs,
+   * arrte l'ordonnanceur et retire les mesures des calculateurs de la
+   * {@link Supervision}.
+   */
+  public void arreter() {
+    for (Calculateur c : parNom.values()) {
+      c.interrompre();
+    }
+    ordonnanceur.arreter();
+    Supervision.desinscrire(this);
+  }
+
+  /**
+   * Rsout le nom d'un calculateur de cette simulation en son numro, 
+   * passer ensuite  {@link Calculateur#envoyer(int, Message)}.
+   *
+   * @param n
+   *          nom du calculateur
+   * @return le numro du calculateur
+   * @throws IllegalArgumentException
+   *           si aucun calculateur de ce nom n'existe
+   */
+  public int resoudre(String n) {
+    return toCalculateur(n).getNumero();
+  }
+
+  /**
+   * Retourne le calculateur de cette simulation ayant le nom spcifi.
+   *
+   * @param n
+   *          nom du calculateur
+   * @return le calculateur
+   * @throws IllegalArgumentException
+   *           si aucun calculateur de ce nom n'existe
+   */
+  public Calculateur toCalculateur(String n) {
+    Calculateur c = parNom.get(n);
+    if (c == null) {
+      throw new IllegalArgumentException("n=" + n);
+    }
+    return c;
+  }
+
+  /**
+   * Retourne le calculateur de cette simulation ayant le numro spcifi.
+   *
+   * @param i
+   *          numro du calculateur
+   * @return le calculateur
+   * @throws IllegalArgumentException
+   *           si aucun calculateur de ce numro n'existe
+   */
+  public Calculateur toCalculateur(int i) {
+    Calculateur[] t = parNumero;
+    if (i < 0 || i >= t.length || t[i] == null) {
+      throw new IllegalArgumentException("i=" + i);
+    }
+    return t[i];
+  }
+
+  /**
+   * Retourne le groupe de cette simulation ayant le nom spcifi.
+   *
+   * @param n
+   *          nom du groupe
+   * @return le groupe
+   * @throws IllegalArgumentException
+   *           si aucun groupe de ce nom n'existe
+   */
+  public Groupe toGroupe(String n) {
+    Groupe g = groupes.get(n);
+    if (g == null) {
+      throw new IllegalArgumentException("n=" + n);
+    }
+    return g;
+  }
+
+  /**
+   * Indique si un groupe de ce nom existe dans cette simulation.
+   *
+   * @param n
+   *          nom du groupe
+   * @return vrai si le groupe existe
+   */
+  public boolean existeGroupe(String n) {
+    return groupes.containsKey(n);
+  }
+
+  /**
+   * Retourne l'annuaire de cette simulation pour un type d'objets : une
+   * table, cre au premier besoin, o l'application publie des objets sous
+   * un nom, par exemple l'{@code Anneau} d'une partition de serveurs. Comme
+   * les noms de calculateurs, les noms publis ne sont uniques qu'au sein
+   * d'une simulation.
+   *
+   * @param t
+   *          type des objets de l'annuaire
+   * @return l'annuaire des objets de ce type
+   */
+  @SuppressWarnings("unchecked")
+  public <T> ConcurrentMap<String, T> getAnnuaire(Class<T> t) {
+    ConcurrentMap<String, ?> a = annuaires.get(t);
+    if (a == null) {
+      a = new ConcurrentHashMap<String, T>();
+      ConcurrentMap<String, ?> p = annuaires.putIfAbsent(t, a);
+      if (p != null) {
+        a = p;
+      }
+    }
+    return (ConcurrentMap<String, T>) a;
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  Pannes getPannes() {
+    return pannes;
+  }
+
+  Queue<Mesures> getMesures() {
+    return mesures;
+  }
+
+  /**
+   * Attribue le numro suivant  un calculateur en cours de cration.
+   *
+   * @return le numro du calculateur
+   */
+  synchronized int numeroter() {
+    return nombre++;
+  }
+
+  /*
+   * Le calculateur est inscrit une fois construit. Il est rang dans le
+   * tableau des numros avant d'tre publi dans la table des noms : un
+   * thread qui obtient son numro par son nom le trouve donc dans le
+   * tableau. Le tableau est remplac par un tableau double quand il est
+   * plein, et publi par une criture volatile. Le numro d'un calculateur
+   * refus reste inoccup.
+   */
+  synchronized void inscrire(Calculateur c) {
+    if (parNom.containsKey(c.getNom())) {
+      throw new IllegalArgumentException("n=" + c.getNom());
+    }
+    int i = c.getNumero();
+    Calculateur[] t = parNumero;
+    if (i >= t.length) {
+      t = Arrays.copyOf(t, Math.max(i + 1, 2 * t.length));
+    }
+    t[i] = c;
+    parNumero = t;
+    parNom.put(c.getNom(), c);
+  }
+
+  void inscrire(Groupe g) {
+    if (groupes.putIfAbsent(g.getNom(), g) != null) {
+      throw new IllegalArgumentException("n=" + g.getNom());
+    }
+  }
+
+  /**
+   * Prfixe le nom d'un calculateur par celui de cette simulation, pour la
+   * trace.
+   *
+   * @param n
+   *          nom du calculateur
+   * @return le nom prfix, ou le nom seul dans la simulation par dfaut
+   */
+  String prefixer(String n) {
+    return this == Defaut.INSTANCE ? n : nom + "/" + n;
+  }
+
+  /**
+   * Fixe la simulation courante du thread appelant, typiquement le thread
+   * du programme principal d'un calculateur.
+   *
+   * @param s
+   *          la simulation courante
+   */
+  static void fixer(Simulation s) {
+    courante.set(s);
+  }
+
+  private static Ordonnanceur nouvelOrdonnanceur() {
+    if ("virtuel".equals(System.getProperty("infrastructure.temps"))) {
+      return new OrdonnanceurVirtuel();
+    }
+    int n = Integer.getInteger("infrastructure.ordonnanceur.threads", Runtime
+            .getRuntime().availableProcessors());
+    if (n == 0) {
+      return new OrdonnanceurTimer();
+    }
+    return new OrdonnanceurParallele(n);
+  }
+
+}
@@ -0,0 +1,184 @@
+package infrastructure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Flux d'criture du format binaire compact des {@link Codec}s. Les entiers
+ * sont crits sur un nombre variable d'octets, et les noms de calculateurs
+ * sont remplacs par leur identifiant dans la table des noms de
+ * {@link Codecs}.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Sortie {
+
+  //
+  // ATTRIBUTS D'OBJET
+  //
+  private final ByteArrayOutputStream tampon;
+  private final DataOutputStream flux;
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  /**
+   * Cre un flux d'criture en mmoire.
+   */
+  public Sortie() {
+    tampon = new ByteArrayOutputStream(64);
+    flux = new DataOutputStream(tampon);
+  }
+
+  /**
+   * Cre un flux d'criture dans le flux d'octets spcifi, typiquement un
+   * fichier.
+   *
+   * @param o
+   *          flux d'octets dans lequel crire
+   */
+  public Sortie(OutputStream o) {
+    tampon = null;
+    flux = new DataOutputStream(o);
+  }
+
+  /**
+   * Retourne les octets crits dans ce flux, s'il a t cr en mmoire.
+   *
+   * @return les octets crits
+   */
+  public byte[] toByteArray() {
+    if (tampon == null) {
+      throw new IllegalStateException("flux externe");
+    }
+    return tampon.toByteArray();
+  }
+
+  /**
+   * Ferme ce flux, ainsi que le flux d'octets sous-jacent.
+   *
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  public void fermer() throws IOException {
+    flux.close();
+  }
+
+  /**
+   * Retourne le nombre d'octets crits dans ce flux.
+   *
+   * @return le nombre d'octets crits
+   */
+  public int getTaille() {
+    return flux.size();
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  public void ecrireBooleen(boolean b) throws IOException {
+    flux.writeBoolean(b);
+  }
+
+  public void ecrireFlottant(float f) throws IOException {
+    flux.writeFloat(f);
+  }
+
+  /**
+   * crit un entier positif ou nul, sur un  cinq octets.
+   *
+   * @param i
+   *          entier  crire
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  public void ecrireEntier(int i) throws IOException {
+    if (i < 0) {
+      throw new IllegalArgumentException("i=" + i);
+    }
+    while ((i & ~0x7f) != 0) {
+      flux.writeByte((i & 0x7f) | 0x80);
+      i >>>= 7;
+    }
+    flux.writeByte(i);
+  }
+
+  /**
+   * crit un entier long sign, sur un  dix octets.
+   *
+   * @param l
+   *          entier  crire
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  public void ecrireLong(long l) throws IOException {
+    l = (l << 1) ^ (l >> 63);
+    while ((l & ~0x7fL) != 0) {
+      flux.writeByte((int) ((l & 0x7f) | 0x80));
+      l >>>= 7;
+    }
+    flux.writeByte((int) l);
+  }
+
+  /**
+   * crit une chane de caractres quelconque, ventuellement nulle.
+   *
+   * @param c
+   *          chane  crire
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  public void ecrireChaine(String c) throws IOException {
+    flux.writeBoolean(c != null);
+    if (c != null) {
+      flux.writeUTF(c);
+    }
+  }
+
+  /**
+   * crit un nom de calculateur ou de groupe, ventuellement nul, sous la
+   * forme de son identifiant.
+   *
+   * @param n
+   *          nom  crire
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  public void ecrireNom(String n) throws IOException {
+    ecrireEntier(n == null ? 0 : Codecs.identifiant(n) + 1);
+  }
+
+  /**
+   * crit un objet quelconque, ventuellement nul, avec le codec enregistr
+   * pour son type, ou par srialisation Java  dfaut.
+   *
+   * @param o
+   *          objet  crire
+   * @throws IOException
+   *           en cas d'erreur d'criture
+   */
+  public void ecrireObjet(Object o) throws IOException {
+    if (o == null) {
+      ecrireEntier(Codecs.NUL);
+    } else {
+      Codecs.encoder(o, this);
+    }
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  void ecrireJava(Object o) throws IOException {
+    ByteArrayOutputStream t = new ByteArrayOutputStream();
+    ObjectOutputStream s = new ObjectOutputStream(t);
+    s.writeObject(o);
+    s.close();
+    ecrireEntier(t.size());
+    t.writeTo(flux);
+  }
+
+}
@@ -0,0 +1,355 @@
+package infrastructure;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Supervision des {@link Mesures} de tous les {@link Calculateur}s, par deux
+ * moyens :
+ * <ul>
+ * <li>JMX : les mesures de chaque calculateur sont inscrites sur le serveur
+ * de MBeans de la plate-forme, sous le nom
+ * <code>infrastructure:type=Mesures,simulation=</code><i>simulation</i>
+ * <code>,name=</code><i>calculateur</i>, et consultables par exemple avec
+ * jconsole ;
+ * <li>relevs priodiques : toutes les mesures sont crites dans un fichier
+ *  intervalle rgulier, au format JSON (un objet par relev et par ligne)
+ * si le nom du fichier se termine par <code>.json</code>, au format CSV
+ * (une ligne par calculateur et par relev) sinon. Un dernier relev est
+ * crit  l'arrt des relevs, ou  la fin de la JVM.
+ * </ul>
+ * Les calculateurs de toutes les {@link Simulation}s sont superviss ; chaque
+ * mesure est date par l'horloge de sa simulation, et les mesures d'une
+ * simulation sont retires  son arrt. Les mesures sont ranges dans leur
+ * simulation, sans verrou, et la supervision ne garde qu'une rfrence
+ * faible vers chaque simulation : une simulation abandonne sans avoir t
+ * arrte est collecte avec ses mesures, sauf si elles sont inscrites sur
+ * le serveur de MBeans.
+ * L'inscription JMX est active par la proprit systme
+ * <code>infrastructure.mesures.jmx</code>, ou par {@link #setJmx(boolean)}.
+ * Les relevs sont lancs par {@link #demarrer(File, long)}, ou au
+ * chargement de la classe si la proprit systme
+ * <code>infrastructure.mesures.fichier</code> est dfinie ; leur priode est
+ * alors donne par la proprit <code>infrastructure.mesures.periode</code>,
+ * en millisecondes (1000 si absente).
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Supervision {
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final String[] CHAMPS = { "messagesEnvoyes",
+      "octetsEnvoyes", "messagesRecus", "octetsRecus", "profondeur",
+      "profondeurMax", "retardNombre", "retardP50", "retardP99",
+      "retardP999", "retardMax", "serviceNombre", "serviceP50", "serviceP99",
+      "serviceP999", "serviceMax" };
+
+  private static final Queue<WeakReference<Simulation>> simulations = new ConcurrentLinkedQueue<WeakReference<Simulation>>();
+  private static volatile boolean jmx = Boolean
+          .getBoolean("infrastructure.mesures.jmx");
+  private static ScheduledExecutorService releveur;
+  private static Writer fichier;
+  private static boolean json;
+  private static Thread fin;
+
+  static {
+    String f = System.getProperty("infrastructure.mesures.fichier");
+    if (f != null) {
+      demarrer(new File(f), Long.getLong("infrastructure.mesures.periode",
+              1000));
+    }
+  }
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  private Supervision() {
+  }
+
+  /**
+   * Retourne les mesures de tous les calculateurs crs, simulation par
+   * simulation, dans leur ordre de cration.
+   *
+   * @return la liste des mesures
+   */
+  public static List<Mesures> getMesures() {
+    List<Mesures> l = new ArrayList<Mesures>();
+    Iterator<WeakReference<Simulation>> i = simulations.iterator();
+    while (i.hasNext()) {
+      Simulation s = i.next().get();
+      if (s == null) {
+        i.remove(); // simulation collecte
+      } else {
+        l.addAll(s.getMesures());
+      }
+    }
+    return l;
+  }
+
+  /**
+   * Active ou dsactive l'inscription JMX des mesures des calculateurs, dj
+   * crs ou  venir.
+   *
+   * @param a
+   *          vrai pour inscrire les mesures, faux pour les dsinscrire
+   */
+  public static synchronized void setJmx(boolean a) {
+    if (a != jmx) {
+      jmx = a;
+      for (Mesures m : getMesures()) {
+        exporter(m, a);
+      }
+    }
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Lance les relevs priodiques des mesures dans le fichier spcifi, qui
+   * est cras. Les relevs en cours sont arrts.
+   *
+   * @param f
+   *          fichier des relevs, au format JSON si son nom se termine par
+   *          <code>.json</code>, CSV sinon
+   * @param periode
+   *          priode des relevs, en millisecondes d'horloge murale
+   * @throws IllegalStateException
+   *           si le fichier ne peut pas tre cr
+   */
+  public static synchronized void demarrer(File f, long periode) {
+    if (periode <= 0) {
+      throw new IllegalArgumentException("periode=" + periode);
+    }
+    arreter();
+    try {
+      fichier = new BufferedWriter(new OutputStreamWriter(
+              new FileOutputStream(f), StandardCharsets.UTF_8));
+      json = f.getName().endsWith(".json");
+      if (!json) {
+        fichier.write("date,simulation,calculateur");
+        for (String c : CHAMPS) {
+          fichier.write("," + c);
+        }
+        fichier.write("\n");
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("releves impossibles : " + f, e);
+    }
+    releveur = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "supervision");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    releveur.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        relever();
+      }
+    }, periode, periode, TimeUnit.MILLISECONDS);
+    if (fin == null) {
+      fin = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          arreter();
+        }
+      }, "supervision-fin");
+      Runtime.getRuntime().addShutdownHook(fin);
+    }
+  }
+
+  /**
+   * Arrte les relevs priodiques, aprs un dernier relev. Sans effet si
+   * aucun relev n'est en cours.
+   */
+  public static synchronized void arreter() {
+    if (releveur == null) {
+      return;
+    }
+    releveur.shutdownNow();
+    releveur = null;
+    relever();
+    try {
+      fichier.close();
+    } catch (IOException e) {
+      System.err.println("supervision : " + e);
+    }
+    fichier = null;
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Inscrit une simulation nouvellement cre.
+   *
+   * @param s
+   *          simulation  inscrire
+   */
+  static void inscrire(Simulation s) {
+    simulations.add(new WeakReference<Simulation>(s));
+  }
+
+  /**
+   * Inscrit les mesures d'un calculateur nouvellement cr dans sa
+   * simulation. Seule l'inscription JMX prend le verrou de la supervision.
+   *
+   * @param s
+   *          simulation du calculateur
+   * @param m
+   *          mesures  inscrire
+   */
+  static void inscrire(Simulation s, Mesures m) {
+    s.getMesures().add(m);
+    if (jmx) {
+      synchronized (Supervision.class) {
+        if (jmx) {
+          exporter(m, true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Retire une simulation arrte, et les mesures de ses calculateurs.
+   *
+   * @param s
+   *          simulation arrte
+   */
+  static synchronized void desinscrire(Simulation s) {
+    Iterator<WeakReference<Simulation>> i = simulations.iterator();
+    while (i.hasNext()) {
+      Simulation r = i.next().get();
+      if (r == null || r == s) {
+        i.remove();
+      }
+    }
+    if (jmx) {
+      for (Mesures m : s.getMesures()) {
+        exporter(m, false);
+      }
+    }
+  }
+
+  /*
+   * Appele avec le verrou de la supervision. Un calculateur cr pendant
+   * l'activation de JMX peut tre export deux fois : l'exportation est
+   * idempotente.
+   */
+  private static void exporter(Mesures m, boolean a) {
+    try {
+      MBeanServer s = ManagementFactory.getPlatformMBeanServer();
+      ObjectName n = new ObjectName("infrastructure:type=Mesures,simulation="
+              + ObjectName.quote(m.getSimulation()) + ",name="
+              + ObjectName.quote(m.getNom()));
+      if (a && !s.isRegistered(n)) {
+        s.registerMBean(m, n);
+      } else if (!a && s.isRegistered(n)) {
+        s.unregisterMBean(n);
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException("inscription JMX impossible : "
+              + m.getNom(), e);
+    }
+  }
+
+  /*
+   * Un relev est crit d'un bloc puis vid, pour que le fichier reste
+   * exploitable si la JVM s'arrte brutalement. Une erreur d'criture est
+   * signale sans arrter les relevs suivants.
+   */
+  private static synchronized void relever() {
+    if (fichier == null) {
+      return;
+    }
+    StringBuilder b = new StringBuilder();
+    if (json) {
+      b.append("{\"calculateurs\":[");
+    }
+    boolean premier = true;
+    for (Mesures m : getMesures()) {
+      long d = m.maintenant();
+      long[] v = valeurs(m);
+      if (json) {
+        b.append(premier ? "" : ",").append("{\"date\":").append(d);
+        b.append(",\"simulation\":\"");
+        echapper(m.getSimulation(), b);
+        b.append("\",\"nom\":\"");
+        echapper(m.getNom(), b);
+        b.append('"');
+        for (int i = 0; i < CHAMPS.length; i++) {
+          b.append(",\"").append(CHAMPS[i]).append("\":").append(v[i]);
+        }
+        b.append('}');
+      } else {
+        b.append(d).append(',').append(m.getSimulation()).append(',')
+                .append(m.getNom());
+        for (int i = 0; i < CHAMPS.length; i++) {
+          b.append(',').append(v[i]);
+        }
+        b.append('\n');
+      }
+      premier = false;
+    }
+    if (json) {
+      b.append("]}\n");
+    }
+    try {
+      fichier.write(b.toString());
+      fichier.flush();
+    } catch (IOException e) {
+      System.err.println("supervision : " + e);
+    }
+  }
+
+  private static long[] valeurs(Mesures m) {
+    Histogramme r = m.getRetard();
+    Histogramme s = m.getService();
+    return new long[] { m.getMessagesEnvoyes(), m.getOctetsEnvoyes(),
+        m.getMessagesRecus(), m.getOctetsRecus(), m.getProfondeur(),
+        m.getProfondeurMax(), r.getNombre(), r.getCentile(50.0),
+        r.getCentile(99.0), r.getCentile(99.9), r.getMax(), s.getNombre(),
+        s.getCentile(50.0), s.getCentile(99.0), s.getCentile(99.9),
+        s.getMax() };
+  }
+
+  private static void echapper(String s, StringBuilder b) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        b.append('\\').append(c);
+      } else if (c < 0x20) {
+        b.append(String.format("\\u%04x", (int) c));
+      } else {
+        b.append(c);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,337 @@
+package infrastructure;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Trace des affichages des {@link Calculateur}s. Les affichages sont dposs
+ * sans verrou dans un tampon circulaire, puis crits par un thread ddi sur
+ * la sortie standard ou dans un fichier : les calculateurs n'attendent pas
+ * les entres-sorties, et ne se disputent pas un flux de sortie
+ * synchronis. Les affichages sont crits dans leur ordre de dpt ; si le
+ * tampon est plein, les calculateurs attendent qu'il se vide, aucun
+ * affichage n'est perdu.
+ * <p>
+ * Seuls les affichages de niveau infrieur ou gal au niveau courant sont
+ * produits (voir {@link Niveau}). Le niveau est consult par
+ * {@link #estActif(Niveau)} avant la construction du texte  afficher : un
+ * niveau dsactiv ne cote que la lecture d'un indicateur.
+ * <p>
+ * Chaque ligne est prcde de la date de la simulation  laquelle
+ * l'affichage a t demand. Le texte de la date n'est format qu'une fois
+ * par milliseconde.
+ * <p>
+ * Le niveau initial est donn par la proprit systme
+ * <code>infrastructure.trace.niveau</code> (TRACE si absente), et la
+ * destination par la proprit <code>infrastructure.trace.fichier</code>
+ * (sortie standard si absente). La trace est vide  la fin de la JVM ;
+ * {@link #vider()} permet d'attendre son criture avant d'afficher d'autres
+ * rsultats sur la sortie standard.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public final class Trace {
+
+  //
+  // CLASSES INTERNES
+  //
+  /**
+   * Tampon circulaire  producteurs multiples et consommateur unique, et son
+   * thread d'criture, crs au premier affichage. Chaque case porte un
+   * numro de squence : la case d'indice i est libre pour le dpt de rang
+   * s si son numro vaut s, et prte  tre crite si son numro vaut s + 1.
+   */
+  private static final class Tampon implements Runnable {
+
+    private static final int CAPACITE = 1 << 16; // puissance de 2
+    private static final int MASQUE = CAPACITE - 1;
+    private static final int TAILLE_SORTIE = 64 * 1024;
+    private static final long ATTENTE = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final Tampon instance = new Tampon();
+
+    private final AtomicLong queue; // rang du prochain dpt
+    private final AtomicLongArray sequences;
+    private final long[] dates;
+    private final String[] noms;
+    private final String[] textes;
+    private volatile long ecrits; // rang du premier dpt non crit
+    private final Thread ecrivain;
+
+    // tat du thread d'criture
+    private final StringBuilder ligne;
+    private final ByteBuffer sortie;
+    private long date;
+    private String prefixe;
+
+    private Tampon() {
+      queue = new AtomicLong();
+      sequences = new AtomicLongArray(CAPACITE);
+      for (int i = 0; i < CAPACITE; i++) {
+        sequences.set(i, i);
+      }
+      dates = new long[CAPACITE];
+      noms = new String[CAPACITE];
+      textes = new String[CAPACITE];
+      ligne = new StringBuilder();
+      sortie = ByteBuffer.allocateDirect(TAILLE_SORTIE);
+      date = -1;
+      ecrivain = new Thread(this, "trace");
+      ecrivain.setDaemon(true);
+      ecrivain.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          vider();
+        }
+      }, "trace-fin"));
+    }
+
+    void deposer(long d, String n, String t) {
+      long s = queue.getAndIncrement();
+      int i = (int) s & MASQUE;
+      while (sequences.get(i) != s) {
+        Thread.yield(); // tampon plein
+      }
+      dates[i] = d;
+      noms[i] = n;
+      textes[i] = t;
+      sequences.set(i, s + 1);
+    }
+
+    void vider() {
+      long s = queue.get();
+      while (ecrits < s && ecrivain.isAlive()) {
+        LockSupport.unpark(ecrivain);
+        LockSupport.parkNanos(ATTENTE);
+      }
+    }
+
+    @Override
+    public void run() {
+      long s = 0;
+      while (true) {
+        int i = (int) s & MASQUE;
+        if (sequences.get(i) == s + 1) {
+          formater(dates[i], noms[i], textes[i], s);
+          noms[i] = null;
+          textes[i] = null;
+          sequences.set(i, s + CAPACITE);
+          s++;
+        } else {
+          ecrire(s);
+          LockSupport.parkNanos(ATTENTE);
+        }
+      }
+    }
+
+    /*
+     * Une ligne est encode d'un bloc dans le tampon de sortie, vid avant
+     * s'il risque de dborder : les lignes ne sont pas coupes entre deux
+     * critures, sauf si elles dpassent la taille du tampon.
+     */
+    private void formater(long d, String n, String t, long s) {
+      if (d != date) {
+        date = d;
+        prefixe = dater(d);
+      }
+      ligne.setLength(0);
+      ligne.append(prefixe).append(n).append(" : ").append(t).append(
+              FIN_LIGNE);
+      CharsetEncoder e = encodeur;
+      if (sortie.remaining() < ligne.length() * e.maxBytesPerChar()) {
+        ecrire(s);
+      }
+      CharBuffer c = CharBuffer.wrap(ligne);
+      e.reset();
+      while (true) {
+        CoderResult r = e.encode(c, sortie, true);
+        if (r.isOverflow()) {
+          ecrire(s);
+        } else {
+          break;
+        }
+      }
+    }
+
+    private void ecrire(long s) {
+      sortie.flip();
+      synchronized (Trace.class) {
+        try {
+          while (sortie.hasRemaining()) {
+            canal.write(sortie);
+          }
+        } catch (IOException e) {
+          System.err.println("trace : " + e);
+        }
+      }
+      sortie.clear();
+      ecrits = s;
+    }
+  }
+
+  //
+  // ATTRIBUTS DE CLASSE
+  //
+  private static final String FIN_LIGNE = System.lineSeparator();
+  // jamais ferm : fermer le canal ferait perdre les System.out suivants
+  private static final FileChannel SORTIE = new FileOutputStream(
+          FileDescriptor.out).getChannel();
+
+  private static volatile Niveau niveau = Niveau.valueOf(System.getProperty(
+          "infrastructure.trace.niveau", "TRACE").toUpperCase());
+  private static volatile FileChannel canal;
+  private static volatile CharsetEncoder encodeur;
+
+  static {
+    String f = System.getProperty("infrastructure.trace.fichier");
+    setFichier(f == null ? null : new File(f));
+  }
+
+  //
+  // CONSTRUCTEURS ET ACCESSEURS
+  //
+  private Trace() {
+  }
+
+  /**
+   * Retourne le niveau courant de la trace.
+   *
+   * @return le niveau courant
+   */
+  public static Niveau getNiveau() {
+    return niveau;
+  }
+
+  /**
+   * Fixe le niveau de la trace.
+   *
+   * @param n
+   *          le nouveau niveau, AUCUN pour dsactiver la trace
+   */
+  public static void setNiveau(Niveau n) {
+    if (n == null) {
+      throw new IllegalArgumentException("n");
+    }
+    niveau = n;
+  }
+
+  /**
+   * Indique si les affichages du niveau spcifi sont produits. Les
+   * appelants doivent consulter cette mthode avant de construire un texte
+   * coteux  afficher.
+   *
+   * @param n
+   *          niveau de l'affichage
+   * @return vrai si l'affichage est produit
+   */
+  public static boolean estActif(Niveau n) {
+    return n != Niveau.AUCUN && n.compareTo(niveau) <= 0;
+  }
+
+  /**
+   * Dirige la trace vers un fichier, qui est cras, ou vers la sortie
+   * standard. Les affichages dj dposs sont crits avant le changement
+   * de destination. Le fichier prcdent est ferm, mais jamais la sortie
+   * standard.
+   *
+   * @param f
+   *          fichier de la trace, encod en UTF-8, ou null pour la sortie
+   *          standard, encode dans le jeu de caractres par dfaut
+   * @throws IllegalStateException
+   *           si le fichier ne peut pas tre cr
+   */
+  public static void setFichier(File f) {
+    FileChannel c;
+    Charset j;
+    try {
+      if (f == null) {
+        c = SORTIE;
+        j = Charset.defaultCharset();
+      } else {
+        c = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        j = StandardCharsets.UTF_8;
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("trace impossible : " + f, e);
+    }
+    if (canal != null) {
+      vider();
+    }
+    FileChannel ancien;
+    synchronized (Trace.class) {
+      ancien = canal;
+      canal = c;
+      encodeur = j.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+    if (ancien != null && ancien != SORTIE) {
+      try {
+        ancien.close();
+      } catch (IOException e) {
+        System.err.println("trace : " + e);
+      }
+    }
+  }
+
+  //
+  // METHODES PUBLIQUES
+  //
+  /**
+   * Attend que tous les affichages dj dposs soient crits.
+   */
+  public static void vider() {
+    Tampon.instance.vider();
+  }
+
+  //
+  // METHODES INTERNES
+  //
+  /**
+   * Dpose un affichage dans la trace, sans vrifier son niveau.
+   *
+   * @param d
+   *          date de la simulation
+   * @param n
+   *          nom du calculateur
+   * @param t
+   *          texte  afficher
+   */
+  static void ecrire(long d, String n, String t) {
+    Tampon.instance.deposer(d, n, t);
+  }
+
+  private static String dater(long d) {
+    char[] c = { '0', '0', '.', '0', '0', '0', ' ', '-', ' ' };
+    long s = d / 1000;
+    long m = d % 1000;
+    c[5] = (char) ('0' + m % 10);
+    c[4] = (char) ('0' + m / 10 % 10);
+    c[3] = (char) ('0' + m / 100);
+    String r = new String(c);
+    if (s < 100) {
+      c[1] = (char) ('0' + s % 10);
+      c[0] = (char) ('0' + s / 10);
+      return new String(c);
+    }
+    return s + r.substring(2);
+  }
+
+}
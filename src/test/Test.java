@@ -1,10 +1,30 @@
 package test;
 
-import application.Client;
+import application.Bilan;
+import application.Charge;
 import application.Serveur;
+import application.ServiceBanquaire;
+import infrastructure.Niveau;
+import infrastructure.Trace;
 
 /**
- * Programme de test.
+ * Programme de test : applique une {@link Charge}  un serveur, et affiche
+ * le bilan de la phase de mesure.
+ * <p>
+ * Usage : Test [clients] [debit] [loi] [comptes] [echauffement] [mesure]
+ * <ul>
+ * <li>clients : nombre de clients (4 par dfaut) ;
+ * <li>debit : dbit d'arrive des requtes en requtes/s, en boucle ouverte,
+ * ou 0 pour une boucle ferme  une requte en cours par client (100 par
+ * dfaut) ;
+ * <li>loi : uniforme, zipf (exposant 0.99) ou chaud (90% des requtes sur
+ * 1% des comptes), zipf par dfaut ;
+ * <li>comptes : nombre de comptes (10000 par dfaut) ;
+ * <li>echauffement, mesure : dures des phases en ms (1000 et 5000 par
+ * dfaut).
+ * </ul>
+ * Sauf si la proprit systme <code>infrastructure.trace.niveau</code> est
+ * fixe, seules les erreurs sont traces.
  *
  * @author Jean-Michel Busca
  *
@@ -13,15 +33,42 @@ public class Test {
 
   public static void main(String[] args) throws InterruptedException {
 
-    // crer et lancer le/les serveurs du systme rparti
-    // et leur laisser le temps de s'initialiser
-    Serveur s1 = new Serveur("S1");
-    Thread.sleep(100);
+    // dcrire la charge
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    double d = args.length > 1 ? Double.parseDouble(args[1]) : 100;
+    String l = args.length > 2 ? args[2] : "zipf";
+    int k = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+    long e = args.length > 4 ? Long.parseLong(args[4]) : 1000;
+    long m = args.length > 5 ? Long.parseLong(args[5]) : 5000;
+    Charge c = new Charge(n, k);
+    if (d > 0) {
+      c.setBoucleOuverte(d);
+    }
+    if ("zipf".equals(l)) {
+      c.setZipf(0.99);
+    } else if ("chaud".equals(l)) {
+      c.setPointChaud(0.01, 0.9);
+    } else if (!"uniforme".equals(l)) {
+      throw new IllegalArgumentException("loi=" + l);
+    }
+    c.setPhases(e, m);
+    if (System.getProperty("infrastructure.trace.niveau") == null) {
+      Trace.setNiveau(Niveau.ERREUR);
+    }
 
-    // crer et lancer le/les clients du systme rparti
-    // en leur demandant de communiquer avec le/les serveurs
-    Client c1 = new Client("C1", "S1");
+    // crer et lancer le serveur, avec les comptes de la charge, et lui
+    // laisser le temps de s'initialiser
+    ServiceBanquaire s = new ServiceBanquaire(false);
+    c.ouvrirComptes(s);
+    Serveur s1 = new Serveur("S1", s);
+    s1.demarrer();
+    Thread.sleep(100);
 
+    // appliquer la charge, et afficher le bilan aprs la trace
+    Bilan b = c.executer("S1");
+    Trace.vider();
+    System.out.println(b);
+    System.out.println("S1 : " + s1.getMesures());
   }
 
 }
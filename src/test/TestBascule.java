@@ -0,0 +1,133 @@
+package test;
+
+import application.ClientAsynchrone;
+import application.Reponse;
+import application.Requete;
+import application.ServeurReplique;
+import infrastructure.Groupe;
+import infrastructure.Niveau;
+import infrastructure.Pannes;
+import infrastructure.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Programme de test de la bascule d'un groupe de {@link ServeurReplique}s :
+ * des clients crditent un compte pendant que le primaire du groupe tombe en
+ * panne dfinitivement, par {@link Pannes#planifierPanne(String, long, long)},
+ * et que le rseau perd des messages. Le secondaire suivant doit devenir le
+ * primaire, les clients rmettre leurs requtes sans rponse, et aucun
+ * crdit acquitt ne doit tre perdu ni appliqu deux fois : le programme
+ * vrifie  la fin que chaque serveur du groupe a le solde attendu.
+ * <p>
+ * Usage : TestBascule [nombre de serveurs], 3 par dfaut. Le programme est 
+ * lancer en temps virtuel (-Dinfrastructure.temps=virtuel).
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class TestBascule {
+
+  private static final String COMPTE = "Martin";
+  private static final float SOLDE = 100.0f; // solde initial du compte
+  private static final int CLIENTS = 4;
+  private static final int CREDITS = 200; // par client
+  private static final int EN_COURS = 8; // par client
+  private static final long PAUSE = 20; // ms, entre deux crdits
+  private static final long PANNE = 1000; // ms, date de la panne
+  private static final long DUREE = 3600000; // ms, dure de la panne
+  private static final double PERTE = 0.02;
+
+  private static final AtomicInteger reussis = new AtomicInteger();
+  private static final AtomicInteger echoues = new AtomicInteger();
+
+  /**
+   * Client mettant des crdits de 1 sur le mme compte.
+   */
+  private static class Crediteur extends ClientAsynchrone {
+
+    Crediteur(String n) {
+      super(n, "G", EN_COURS);
+    }
+
+    @Override
+    public void programme() throws InterruptedException {
+      List<CompletableFuture<Reponse>> l;
+      l = new ArrayList<CompletableFuture<Reponse>>(CREDITS);
+      for (int i = 0; i < CREDITS; i++) {
+        l.add(soumettre(new Requete(COMPTE, 1.0f)));
+        dormir(PAUSE);
+      }
+      while (getNombreEnCours() > 0) {
+        patienter(0);
+      }
+      for (CompletableFuture<Reponse> f : l) {
+        if (f.getNow(null).getException() == null) {
+          reussis.incrementAndGet();
+        } else {
+          echoues.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int k = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+    if (System.getProperty("infrastructure.trace.niveau") == null) {
+      Trace.setNiveau(Niveau.ERREUR);
+    }
+
+    // crer et lancer les serveurs du groupe
+    Groupe g = new Groupe("G");
+    List<ServeurReplique> serveurs = new ArrayList<ServeurReplique>(k);
+    for (int i = 1; i <= k; i++) {
+      ServeurReplique s = new ServeurReplique("S" + i, "G");
+      g.ajouter(s.getNom());
+      serveurs.add(s);
+    }
+    for (ServeurReplique s : serveurs) {
+      s.demarrer();
+    }
+    Thread.sleep(100);
+
+    // crer et lancer les clients, planifier la panne du primaire, puis
+    // attendre la fin des clients
+    List<Crediteur> clients = new ArrayList<Crediteur>(CLIENTS);
+    for (int i = 1; i <= CLIENTS; i++) {
+      Crediteur c = new Crediteur("C" + i);
+      c.demarrer();
+      clients.add(c);
+    }
+    Pannes.setPerte(PERTE);
+    Pannes.planifierPanne("S1", PANNE, DUREE);
+    for (Crediteur c : clients) {
+      c.joindre();
+    }
+
+    // laisser les derniers lots arriver, puis faire le bilan, aprs la trace
+    Thread.sleep(1000);
+    Trace.vider();
+    float attendu = SOLDE + reussis.get();
+    System.out.println(CLIENTS * CREDITS + " credits : " + reussis.get()
+            + " reussis, " + echoues.get() + " echoues ; groupe : "
+            + g.getMembres());
+    System.out.println(Pannes.bilan());
+    boolean correct = echoues.get() == 0 && !g.getMembres().contains("S1");
+    for (ServeurReplique s : serveurs) {
+      if (!s.estMembre()) {
+        System.out.println(s.getNom() + " : exclu, version " + s.getVersion());
+        continue;
+      }
+      float solde = s.consulterSolde(COMPTE);
+      System.out.println(s.getNom() + " : version " + s.getVersion()
+              + ", solde " + solde + ", attendu " + attendu);
+      correct &= solde == attendu;
+    }
+    System.out.println(correct ? "bascule correcte" : "ECHEC");
+    System.exit(correct ? 0 : 1);
+  }
+
+}
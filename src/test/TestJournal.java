@@ -0,0 +1,118 @@
+package test;
+
+import application.ServiceBanquaire;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Programme de test du {@link ServiceBanquaire} durable. Il mesure le dbit
+ * de crdits durables selon le nombre de threads, chaque thread
+ * synchronisant le service aprs chaque crdit : grce  la validation
+ * groupe, le dbit crot avec le nombre de threads au lieu d'tre born par
+ * le dbit de forages du disque. Il vrifie ensuite que la rcupration,
+ * aprs fermeture puis aprs ajout d'une fin de journal corrompue (taille
+ * hors du segment, puis taille ngative), restitue les soldes, et mesure sa
+ * dure.
+ * <p>
+ * Usage : TestJournal [rpertoire], le rpertoire devant tre vide ou
+ * inexistant.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class TestJournal {
+
+  private static final int COMPTES = 100000;
+  private static final long PERIODE = 4 * 1024 * 1024; // octets
+  private static final long DUREE = 2000; // ms, par mesure
+
+  public static void main(String[] args) throws Exception {
+    File r = new File(args.length > 0 ? args[0] : "journal-test");
+
+    // ouvrir le service et ses comptes
+    ServiceBanquaire sb = ServiceBanquaire.ouvrir(r, PERIODE);
+    for (int i = 0; i < COMPTES; i++) {
+      sb.ouvrirCompte("C" + i, 0.0f);
+    }
+    sb.synchroniser();
+
+    // mesurer le dbit durable selon le nombre de threads
+    for (int n = 1; n <= 64; n *= 4) {
+      mesurer(sb, n);
+    }
+    float[] soldes = soldes(sb);
+    sb.fermer();
+
+    // rcuprer l'tat, puis le rcuprer  nouveau aprs corruption
+    verifier(r, soldes);
+    long dernier = -1;
+    for (String s : r.list()) {
+      if (s.startsWith("journal.")) {
+        dernier = Math.max(dernier, Long.parseLong(s.substring(8)));
+      }
+    }
+    FileOutputStream o = new FileOutputStream(new File(r, "journal."
+            + dernier), true);
+    o.write(new byte[] { 0, 0, 0, 42, 1, 2, 3 });
+    o.close();
+    verifier(r, soldes);
+    o = new FileOutputStream(new File(r, "journal." + dernier), true);
+    o.write(new byte[] { (byte) 0x80, 0, 0, 6, 0, 0, 0, 0, 0, 1, 'x', 0, 0,
+        0, 0 });
+    o.close();
+    verifier(r, soldes);
+  }
+
+  private static void mesurer(final ServiceBanquaire sb, int n)
+          throws InterruptedException {
+    final AtomicLong operations = new AtomicLong();
+    final long fin = System.currentTimeMillis() + DUREE;
+    Thread[] t = new Thread[n];
+    for (int i = 0; i < n; i++) {
+      final Random r = new Random(i);
+      t[i] = new Thread() {
+        @Override
+        public void run() {
+          while (System.currentTimeMillis() < fin) {
+            sb.crediterDebiter("C" + r.nextInt(COMPTES), 1.0f);
+            sb.synchroniser();
+            operations.incrementAndGet();
+          }
+        }
+      };
+      t[i].start();
+    }
+    for (int i = 0; i < n; i++) {
+      t[i].join();
+    }
+    System.out.println(n + " thread(s) : " + (operations.get() * 1000 / DUREE)
+            + " credits durables/s");
+  }
+
+  private static void verifier(File r, float[] soldes) throws IOException {
+    long debut = System.nanoTime();
+    ServiceBanquaire sb = ServiceBanquaire.ouvrir(r, PERIODE);
+    long duree = (System.nanoTime() - debut) / 1000000;
+    float[] s = soldes(sb);
+    sb.fermer();
+    boolean egaux = Arrays.equals(s, soldes);
+    System.out.println("recuperation en " + duree + " ms : "
+            + (egaux ? "soldes identiques" : "SOLDES DIFFERENTS"));
+  }
+
+  private static float[] soldes(ServiceBanquaire sb) {
+    List<String> l = sb.listerComptes();
+    float[] s = new float[l.size()];
+    for (int i = 0; i < s.length; i++) {
+      s[i] = sb.consulterSolde(l.get(i));
+    }
+    return s;
+  }
+
+}
@@ -0,0 +1,91 @@
+package test;
+
+import application.Client;
+import application.Serveur;
+import application.ServiceBanquaire;
+import infrastructure.Niveau;
+import infrastructure.Trace;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Programme de test du regroupement des requtes en lots par les
+ * {@link Client}s, en temps rel : de nombreux clients regroupent leurs
+ * requtes par lots de 2 avec une fentre de 500 ms, si bien que les lots
+ * partent tantt par le programme du client, tantt par la minuterie de leur
+ * fentre, excute par l'ordonnanceur. Le programme vrifie pendant
+ * l'excution qu'aucun thread n'est interbloqu, et que tous les clients se
+ * terminent.
+ * <p>
+ * Usage : TestLots [nombre de clients], 300 par dfaut. Le programme est 
+ * lancer en temps rel (ordonnanceur par dfaut).
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class TestLots {
+
+  private static final int TAILLE_LOT = 2;
+  private static final long FENETRE = 500; // ms
+  private static final long DUREE_MAX = 60000; // ms
+
+  public static void main(String[] args) throws InterruptedException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+    if (System.getProperty("infrastructure.trace.niveau") == null) {
+      Trace.setNiveau(Niveau.ERREUR);
+    }
+
+    // crer et lancer le serveur et les clients
+    new Serveur("S1", new ServiceBanquaire(false)).demarrer();
+    List<Client> clients = new ArrayList<Client>(n);
+    for (int i = 1; i <= n; i++) {
+      Client c = new Client("C" + i, "S1", TAILLE_LOT, FENETRE);
+      c.demarrer();
+      clients.add(c);
+    }
+
+    // attendre la fin des clients dans un thread  part, et surveiller les
+    // interblocages pendant ce temps
+    final List<Client> l = clients;
+    Thread attente = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (Client c : l) {
+            c.joindre();
+          }
+        } catch (InterruptedException e) {
+          // fin du programme
+        }
+      }
+    });
+    attente.start();
+    ThreadMXBean t = ManagementFactory.getThreadMXBean();
+    long fin = System.currentTimeMillis() + DUREE_MAX;
+    while (attente.isAlive()) {
+      long[] b = t.findDeadlockedThreads();
+      if (b != null) {
+        Trace.vider();
+        System.out.println("INTERBLOCAGE :");
+        for (ThreadInfo i : t.getThreadInfo(b, true, true)) {
+          System.out.print(i);
+        }
+        System.exit(1);
+      }
+      if (System.currentTimeMillis() > fin) {
+        Trace.vider();
+        System.out.println("ECHEC : clients non termines");
+        System.exit(1);
+      }
+      attente.join(100);
+    }
+    Trace.vider();
+    System.out.println(n + " clients termines, sans interblocage");
+    System.exit(0);
+  }
+
+}
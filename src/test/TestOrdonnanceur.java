@@ -0,0 +1,59 @@
+package test;
+
+import infrastructure.Ordonnanceur;
+import infrastructure.OrdonnanceurParallele;
+import infrastructure.OrdonnanceurTimer;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Programme de comparaison du dbit des ordonnanceurs de livraison. Chaque
+ * livraison simule un traitement de rception cotant quelques microsecondes
+ * de calcul ; les livraisons sont rparties sur un grand nombre de
+ * destinataires.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class TestOrdonnanceur {
+
+  private static final int DESTINATAIRES = 1000;
+  private static final int LIVRAISONS = 200000;
+  private static final long COUT_RECEPTION = 20000; // ns
+
+  public static void main(String[] args) throws InterruptedException {
+
+    // chauffer la JVM, puis mesurer
+    mesurer("timer", new OrdonnanceurTimer());
+    mesurer("timer", new OrdonnanceurTimer());
+    int p = Runtime.getRuntime().availableProcessors();
+    for (int n = 1; n <= 2 * p; n *= 2) {
+      mesurer("parallele(" + n + ")", new OrdonnanceurParallele(n));
+    }
+  }
+
+  private static void mesurer(String nom, Ordonnanceur o)
+          throws InterruptedException {
+    final CountDownLatch fin = new CountDownLatch(LIVRAISONS);
+    Runnable reception = new Runnable() {
+      @Override
+      public void run() {
+        long t = System.nanoTime() + COUT_RECEPTION;
+        while (System.nanoTime() < t) {
+          // simuler le traitement du message
+        }
+        fin.countDown();
+      }
+    };
+    long debut = System.nanoTime();
+    for (int i = 0; i < LIVRAISONS; i++) {
+      o.planifier(null, "N" + (i % DESTINATAIRES), reception, 0);
+    }
+    fin.await();
+    long duree = System.nanoTime() - debut;
+    o.arreter();
+    System.out.println(nom + " : " + (LIVRAISONS * 1000000000L / duree)
+            + " livraisons/s");
+  }
+
+}
@@ -0,0 +1,169 @@
+package test;
+
+import application.Anneau;
+import application.ClientAsynchrone;
+import application.Reponse;
+import application.Requete;
+import application.ServeurPartition;
+import infrastructure.Trace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Programme de mesure du dbit d'criture d'une partition de
+ * {@link ServeurPartition}s. Comme pour {@link TestReplication}, le dbit
+ * sortant de chaque serveur est limit, et le dbit de la partition doit
+ * crotre avec le nombre de serveurs.
+ * <p>
+ * Usage : TestPartition [nombre de serveurs] [virements] [rejoindre]. Avec
+ * l'option virements, les clients font des virements entre comptes tirs au
+ * hasard plutt que des crdits ; avec l'option rejoindre, un serveur
+ * supplmentaire rejoint la partition au milieu de la mesure. Le programme
+ * vrifie  la fin que la somme des soldes est celle attendue, et est 
+ * lancer en temps virtuel (-Dinfrastructure.temps=virtuel).
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class TestPartition {
+
+  private static final int COMPTES = 1000;
+  private static final float SOLDE = 100.0f;
+  private static final int CLIENTS = 8;
+  private static final int OPERATIONS = 500; // par client
+  private static final int EN_COURS = 64; // par client
+  private static final long DEBIT = 1000; // octets/s, par serveur
+
+  private static final AtomicInteger reussies = new AtomicInteger();
+
+  /**
+   * Client mettant des crdits ou des virements sur des comptes tirs au
+   * hasard.
+   */
+  private static class Ecrivain extends ClientAsynchrone {
+
+    private final boolean virements;
+    private final ServeurPartition nouveau; //  dmarrer  mi-parcours
+    private long debut;
+    private long fin;
+
+    Ecrivain(String n, boolean v, ServeurPartition s) {
+      super(n, "P", EN_COURS);
+      virements = v;
+      nouveau = s;
+    }
+
+    @Override
+    public void programme() throws InterruptedException {
+      Random r = getAleatoire();
+      List<CompletableFuture<Reponse>> l;
+      l = new ArrayList<CompletableFuture<Reponse>>(OPERATIONS);
+      debut = maintenant();
+      for (int i = 0; i < OPERATIONS; i++) {
+        if (i == OPERATIONS / 2 && nouveau != null) {
+          nouveau.demarrer();
+        }
+        String c = "C" + r.nextInt(COMPTES);
+        Requete rq;
+        if (virements) {
+          rq = new Requete(c, "C" + r.nextInt(COMPTES), 1 + r.nextInt(10));
+        } else {
+          rq = new Requete(c, 1.0f);
+        }
+        l.add(soumettre(rq));
+      }
+      while (getNombreEnCours() > 0) {
+        patienter(0);
+      }
+      fin = maintenant();
+      for (CompletableFuture<Reponse> f : l) {
+        if (f.getNow(null).getException() == null) {
+          reussies.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int k = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+    List<String> options = Arrays.asList(args);
+    boolean virements = options.contains("virements");
+    boolean rejoindre = options.contains("rejoindre");
+
+    // publier l'anneau, puis crer les serveurs et leurs comptes
+    String[] noms = new String[k];
+    for (int i = 0; i < k; i++) {
+      noms[i] = "S" + (i + 1);
+    }
+    Anneau.publier("P", new Anneau(noms));
+    List<ServeurPartition> serveurs = new ArrayList<ServeurPartition>();
+    for (String n : noms) {
+      ServeurPartition s = new ServeurPartition(n, "P");
+      s.getLien().setDebit(DEBIT);
+      serveurs.add(s);
+    }
+    Anneau a = Anneau.consulter("P");
+    for (int i = 0; i < COMPTES; i++) {
+      String c = "C" + i;
+      serveurs.get(Arrays.asList(noms).indexOf(a.proprietaire(c)))
+              .ouvrirCompte(c, SOLDE);
+    }
+    for (ServeurPartition s : serveurs) {
+      s.demarrer();
+    }
+    ServeurPartition nouveau = null;
+    if (rejoindre) {
+      nouveau = new ServeurPartition("S" + (k + 1), "P");
+      nouveau.getLien().setDebit(DEBIT);
+      serveurs.add(nouveau);
+    }
+    Thread.sleep(100);
+
+    // crer et lancer les clients, puis attendre leur fin
+    List<Ecrivain> clients = new ArrayList<Ecrivain>(CLIENTS);
+    for (int i = 1; i <= CLIENTS; i++) {
+      Ecrivain c = new Ecrivain("C" + i, virements, i == 1 ? nouveau : null);
+      c.demarrer();
+      clients.add(c);
+    }
+    long debut = Long.MAX_VALUE;
+    long fin = 0;
+    for (Ecrivain c : clients) {
+      c.joindre();
+      debut = Math.min(debut, c.debut);
+      fin = Math.max(fin, c.fin);
+    }
+
+    // laisser les dernires validations arriver, puis faire le bilan, aprs
+    // la trace
+    Thread.sleep(1000);
+    Trace.vider();
+    long n = (long) CLIENTS * OPERATIONS;
+    System.out.println(k + " serveur(s) : " + n + " operations ("
+            + reussies.get() + " reussies) en " + (fin - debut)
+            + " ms, soit " + (n * 1000 / (fin - debut)) + " operations/s");
+    a = Anneau.consulter("P");
+    System.out.println(a);
+    double somme = 0;
+    for (int i = 0; i < COMPTES; i++) {
+      String c = "C" + i;
+      for (ServeurPartition s : serveurs) {
+        if (s.getNom().equals(a.proprietaire(c))) {
+          somme += s.consulterSolde(c);
+        }
+      }
+    }
+    double attendue = COMPTES * SOLDE + (virements ? 0 : reussies.get());
+    System.out.println("somme des soldes : " + somme + ", attendue : "
+            + attendue);
+    for (ServeurPartition s : serveurs) {
+      System.out.println(s.getNom() + " : " + s.getLien());
+    }
+  }
+
+}
@@ -0,0 +1,108 @@
+package test;
+
+import application.ClientAsynchrone;
+import application.Coherence;
+import application.Reponse;
+import application.Requete;
+import application.ServeurReplique;
+import infrastructure.Groupe;
+import infrastructure.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Programme de mesure du dbit de consultation d'un groupe de
+ * {@link ServeurReplique}s. Le dbit sortant de chaque serveur est limit :
+ * c'est l'envoi des rponses qui borne le dbit d'un serveur, et le dbit du
+ * groupe doit crotre avec le nombre de serveurs.
+ * <p>
+ * Usage : TestReplication [nombre de serveurs]. Le programme est  lancer en
+ * temps virtuel (-Dinfrastructure.temps=virtuel).
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class TestReplication {
+
+  private static final int CLIENTS = 8;
+  private static final int CONSULTATIONS = 500; // par client
+  private static final int EN_COURS = 64; // par client
+  private static final long DEBIT = 1000; // octets/s, par serveur
+
+  /**
+   * Client mettant un crdit, puis des consultations en lecture de ses
+   * critures.
+   */
+  private static class Lecteur extends ClientAsynchrone {
+
+    private long debut;
+    private long fin;
+
+    Lecteur(String n, String d) {
+      super(n, d, EN_COURS);
+    }
+
+    @Override
+    public void programme() throws InterruptedException {
+      CompletableFuture<Reponse> f = soumettre(new Requete("Martin", 1.0f));
+      while (!f.isDone()) {
+        patienter(0);
+      }
+      debut = maintenant();
+      for (int i = 0; i < CONSULTATIONS; i++) {
+        soumettre(new Requete("Martin", Coherence.LECTURE_ECRITURES));
+      }
+      while (getNombreEnCours() > 0) {
+        patienter(0);
+      }
+      fin = maintenant();
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int k = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+
+    // crer et lancer les serveurs du groupe
+    Groupe g = new Groupe("G");
+    List<ServeurReplique> serveurs = new ArrayList<ServeurReplique>(k);
+    for (int i = 1; i <= k; i++) {
+      ServeurReplique s = new ServeurReplique("S" + i, "G");
+      s.getLien().setDebit(DEBIT);
+      g.ajouter(s.getNom());
+      serveurs.add(s);
+    }
+    for (ServeurReplique s : serveurs) {
+      s.demarrer();
+    }
+    Thread.sleep(100);
+
+    // crer et lancer les clients, puis attendre leur fin
+    List<Lecteur> clients = new ArrayList<Lecteur>(CLIENTS);
+    for (int i = 1; i <= CLIENTS; i++) {
+      Lecteur c = new Lecteur("C" + i, "G");
+      c.demarrer();
+      clients.add(c);
+    }
+    long debut = Long.MAX_VALUE;
+    long fin = 0;
+    for (Lecteur c : clients) {
+      c.joindre();
+      debut = Math.min(debut, c.debut);
+      fin = Math.max(fin, c.fin);
+    }
+
+    // afficher le dbit de consultation du groupe, aprs la trace
+    Trace.vider();
+    long n = (long) CLIENTS * CONSULTATIONS;
+    System.out.println(k + " serveur(s) : " + n + " consultations en "
+            + (fin - debut) + " ms, soit " + (n * 1000 / (fin - debut))
+            + " consultations/s");
+    for (ServeurReplique s : serveurs) {
+      System.out.println(s.getNom() + " : version " + s.getVersion() + ", "
+              + s.getLien());
+    }
+  }
+
+}
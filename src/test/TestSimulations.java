@@ -0,0 +1,108 @@
+package test;
+
+import application.Bilan;
+import application.Charge;
+import application.Serveur;
+import application.ServiceBanquaire;
+import infrastructure.Calculateur;
+import infrastructure.Niveau;
+import infrastructure.OrdonnanceurVirtuel;
+import infrastructure.Simulation;
+import infrastructure.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Programme de test des {@link Simulation}s parallles : applique la mme
+ * {@link Charge}  plusieurs simulations indpendantes, en temps virtuel,
+ * chacune dans son thread. Toutes les simulations nomment leurs calculateurs
+ * de la mme faon ; les graines sont attribues  tour de rle, et deux
+ * simulations de mme graine doivent donner le mme bilan.
+ * <p>
+ * Usage : TestSimulations [simulations] [graines], 4 simulations et 2
+ * graines par dfaut.
+ *
+ * @author Jean-Michel Busca
+ *
+ */
+public class TestSimulations {
+
+  private static final int CLIENTS = 4;
+  private static final int COMPTES = 1000;
+  private static final double DEBIT = 100; // requtes/s
+
+  /**
+   * Programme de lancement d'une simulation : un serveur et sa charge.
+   */
+  private static class Lancement implements Callable<Bilan> {
+
+    @Override
+    public Bilan call() throws Exception {
+      Calculateur.setOrdonnanceur(new OrdonnanceurVirtuel());
+      Charge c = new Charge(CLIENTS, COMPTES);
+      c.setBoucleOuverte(DEBIT);
+      c.setZipf(0.99);
+      c.setPhases(1000, 5000);
+      ServiceBanquaire s = new ServiceBanquaire(false);
+      c.ouvrirComptes(s);
+      new Serveur("S1", s).demarrer();
+      return c.executer("S1");
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int g = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+    if (System.getProperty("infrastructure.trace.niveau") == null) {
+      Trace.setNiveau(Niveau.ERREUR);
+    }
+
+    // lancer les simulations, chacune dans son thread
+    ExecutorService e = Executors.newFixedThreadPool(n);
+    List<Future<Bilan>> l = new ArrayList<Future<Bilan>>(n);
+    long debut = System.currentTimeMillis();
+    for (int i = 0; i < n; i++) {
+      final Simulation s = new Simulation("P" + i, i % g);
+      l.add(e.submit(new Callable<Bilan>() {
+        @Override
+        public Bilan call() throws Exception {
+          try {
+            return s.executer(new Lancement());
+          } finally {
+            s.arreter();
+          }
+        }
+      }));
+    }
+
+    // comparer chaque bilan  celui de la premire simulation de mme
+    // graine
+    List<String> bilans = new ArrayList<String>(n);
+    for (int i = 0; i < n; i++) {
+      Bilan b = l.get(i).get();
+      bilans.add(b.toString());
+      System.out.printf("P%d (graine %d) : debit=%.1f requetes/s, p50=%dms, "
+              + "p99=%dms%n", i, i % g, b.getDebit(), b.getLatences()
+              .getCentile(50.0), b.getLatences().getCentile(99.0));
+    }
+    long duree = System.currentTimeMillis() - debut;
+    e.shutdown();
+    Trace.vider();
+    int ecarts = 0;
+    for (int i = g; i < n; i++) {
+      if (!bilans.get(i).equals(bilans.get(i % g))) {
+        System.out.println("ECART P" + i + " / P" + i % g + " :\n"
+                + bilans.get(i) + "\n" + bilans.get(i % g));
+        ecarts++;
+      }
+    }
+    System.out.println(n + " simulations en " + duree + " ms, " + ecarts
+            + " ecart(s)");
+  }
+
+}